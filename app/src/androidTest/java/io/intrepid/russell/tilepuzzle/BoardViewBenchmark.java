@@ -0,0 +1,108 @@
+package io.intrepid.russell.tilepuzzle;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.test.AndroidTestCase;
+import android.util.Log;
+import android.view.View;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import io.intrepid.russell.tilepuzzle.core.Board;
+import io.intrepid.russell.tilepuzzle.core.BoardGenerator;
+
+/**
+ * Measures layout, full draw and per-move draw time for {@link BoardView} at 4x4, 8x8 and 16x16, plus the
+ * heap the view adds on top of its image. Results go to logcat under this tag.
+ */
+public class BoardViewBenchmark extends AndroidTestCase {
+    private static final String TAG = BoardViewBenchmark.class.getSimpleName();
+
+    private static final int VIEW_SIDE = 1080;
+    private static final int ITERATIONS = 200;
+    private static final long SEED = 20151110;
+
+    public void test4x4() throws Exception {
+        run(4);
+    }
+
+    public void test8x8() throws Exception {
+        run(8);
+    }
+
+    public void test16x16() throws Exception {
+        run(16);
+    }
+
+    public void testPositionAt_matchesTileCenters() throws Exception {
+        BoardView view = layOut(new BoardGenerator(SEED).generate(4, 5), 4, 5);
+        int side = VIEW_SIDE / 5;
+        int left = (VIEW_SIDE - side * 4) / 2;
+        for (int position = 0; position < 20; position++) {
+            float x = left + (position % 4) * side + side / 2f;
+            float y = (position / 4) * side + side / 2f;
+            assertEquals(position, view.positionAt(x, y));
+        }
+        assertEquals(-1, view.positionAt(left - 1, 10));
+        assertEquals(-1, view.positionAt(10, VIEW_SIDE + 1));
+    }
+
+    private void run(int size) {
+        Board board = new BoardGenerator(SEED).generate(size, size);
+
+        Runtime runtime = Runtime.getRuntime();
+        runtime.gc();
+        long heapBefore = runtime.totalMemory() - runtime.freeMemory();
+        long start = System.nanoTime();
+        BoardView view = layOut(board, size, size);
+        long layoutNanos = System.nanoTime() - start;
+        runtime.gc();
+        long heapAfter = runtime.totalMemory() - runtime.freeMemory();
+
+        Bitmap target = Bitmap.createBitmap(VIEW_SIDE, VIEW_SIDE, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(target);
+        long[] drawNanos = new long[ITERATIONS];
+        for (int i = 0; i < ITERATIONS; i++) {
+            start = System.nanoTime();
+            view.draw(canvas);
+            drawNanos[i] = System.nanoTime() - start;
+        }
+
+        // A move: slide a random tile in the blank's row or column, then draw the first frame of it
+        Random random = new Random(SEED);
+        long[] moveNanos = new long[ITERATIONS];
+        for (int i = 0; i < ITERATIONS; i++) {
+            int blank = board.getBlankPosition();
+            int position = random.nextBoolean()
+                    ? (blank / size) * size + random.nextInt(size)
+                    : random.nextInt(size) * size + blank % size;
+            start = System.nanoTime();
+            board.slide(position);
+            view.onSlid(blank);
+            view.draw(canvas);
+            moveNanos[i] = System.nanoTime() - start;
+        }
+
+        Arrays.sort(drawNanos);
+        Arrays.sort(moveNanos);
+        Log.i(TAG, size + "x" + size + ": layout " + layoutNanos / 1000 + " us, draw median "
+                + drawNanos[ITERATIONS / 2] / 1000 + " us (95th " + drawNanos[ITERATIONS * 95 / 100] / 1000
+                + " us), move median " + moveNanos[ITERATIONS / 2] / 1000 + " us (95th "
+                + moveNanos[ITERATIONS * 95 / 100] / 1000 + " us), view heap "
+                + (heapAfter - heapBefore) / 1024 + " KB");
+        target.recycle();
+    }
+
+    private BoardView layOut(Board board, int width, int height) {
+        int tile = VIEW_SIDE / Math.max(width, height);
+        Bitmap image = Bitmap.createBitmap(tile * width, tile * height, Bitmap.Config.ARGB_8888);
+        BoardView view = new BoardView(getContext());
+        view.setBoard(board, image);
+        view.setPlaying(true);
+        view.measure(View.MeasureSpec.makeMeasureSpec(VIEW_SIDE, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(VIEW_SIDE, View.MeasureSpec.EXACTLY));
+        view.layout(0, 0, VIEW_SIDE, VIEW_SIDE);
+        return view;
+    }
+}
@@ -0,0 +1,155 @@
+package io.intrepid.russell.tilepuzzle;
+
+import android.app.Instrumentation;
+import android.content.Intent;
+import android.graphics.Rect;
+import android.os.Build;
+import android.os.SystemClock;
+import android.test.ActivityInstrumentationTestCase2;
+import android.util.Log;
+import android.view.Choreographer;
+import android.view.MotionEvent;
+import android.view.ViewTreeObserver;
+
+import java.util.Arrays;
+
+import io.intrepid.russell.tilepuzzle.core.Board;
+
+/**
+ * Drags a tile back and forth on a 5x5 game for a few seconds and measures the frame intervals while
+ * it follows the finger. A drag must never cause a layout pass. Results go to logcat under this tag.
+ */
+public class DragJankBenchmark extends ActivityInstrumentationTestCase2<TileActivity> {
+    private static final String TAG = DragJankBenchmark.class.getSimpleName();
+
+    private static final int SIZE = 5;
+    private static final int MOVES = 300;
+    private static final long MOVE_MILLIS = 8; // Faster than frames, like a real touch screen
+    private static final long FRAME_NANOS = 16666667;
+    private static final long START_TIMEOUT_MILLIS = 10000;
+
+    private final long[] mFrameTimes = new long[MOVES * 2];
+    private int mFrames;
+    private volatile boolean mRecording;
+    private int mLayouts;
+
+    public DragJankBenchmark() {
+        super(TileActivity.class);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        TileActivity.clearSaveData(getInstrumentation().getTargetContext());
+        Intent intent = new Intent(Intent.ACTION_MAIN);
+        intent.putExtra(TileActivity.KEY_WIDTH, SIZE);
+        intent.putExtra(TileActivity.KEY_HEIGHT, SIZE);
+        setActivityIntent(intent);
+    }
+
+    public void testDrag5x5() throws Exception {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            return; // Frame times come from Choreographer
+        }
+        final BoardView view = (BoardView) getActivity().findViewById(R.id.board);
+        waitForPlaying(view);
+        Instrumentation instrumentation = getInstrumentation();
+
+        // A tile next to the blank, dragged toward it and back
+        Board board = view.getBoard();
+        int blank = board.getBlankPosition();
+        int column = blank % SIZE;
+        int tile = column > 0 ? blank - 1 : blank + 1;
+        Rect bounds = new Rect();
+        view.getTileBounds(tile, bounds);
+        int[] location = new int[2];
+        view.getLocationOnScreen(location);
+        float x = location[0] + bounds.exactCenterX();
+        float y = location[1] + bounds.exactCenterY();
+        float toward = column > 0 ? 1 : -1;
+        float travel = bounds.width() * 0.9f;
+
+        final ViewTreeObserver.OnGlobalLayoutListener layoutListener = new ViewTreeObserver.OnGlobalLayoutListener() {
+            @Override
+            public void onGlobalLayout() {
+                if (mRecording) {
+                    mLayouts++;
+                }
+            }
+        };
+        final Choreographer.FrameCallback frameCallback = new Choreographer.FrameCallback() {
+            @Override
+            public void doFrame(long frameTimeNanos) {
+                if (mRecording && mFrames < mFrameTimes.length) {
+                    mFrameTimes[mFrames++] = frameTimeNanos;
+                    Choreographer.getInstance().postFrameCallback(this);
+                }
+            }
+        };
+
+        long downTime = SystemClock.uptimeMillis();
+        instrumentation.sendPointerSync(MotionEvent.obtain(downTime, downTime, MotionEvent.ACTION_DOWN, x, y, 0));
+        // Past the touch slop first, so every recorded move is part of the drag
+        instrumentation.sendPointerSync(MotionEvent.obtain(downTime, SystemClock.uptimeMillis(),
+                MotionEvent.ACTION_MOVE, x + toward * bounds.width() / 4f, y, 0));
+        instrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                view.getViewTreeObserver().addOnGlobalLayoutListener(layoutListener);
+                mRecording = true;
+                Choreographer.getInstance().postFrameCallback(frameCallback);
+            }
+        });
+        for (int i = 0; i < MOVES; i++) {
+            double phase = 2 * Math.PI * i / 60; // One round trip every 60 moves
+            float offset = (float) (travel * (1 - Math.cos(phase)) / 2);
+            instrumentation.sendPointerSync(MotionEvent.obtain(downTime, SystemClock.uptimeMillis(),
+                    MotionEvent.ACTION_MOVE, x + toward * offset, y, 0));
+            SystemClock.sleep(MOVE_MILLIS);
+        }
+        instrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mRecording = false;
+                view.getViewTreeObserver().removeGlobalOnLayoutListener(layoutListener);
+            }
+        });
+        // Let go where it started, so the drag snaps back without a move
+        instrumentation.sendPointerSync(MotionEvent.obtain(downTime, SystemClock.uptimeMillis(),
+                MotionEvent.ACTION_UP, x, y, 0));
+        instrumentation.waitForIdleSync();
+
+        assertEquals("Layout passes during the drag", 0, mLayouts);
+        assertTrue("Too few frames: " + mFrames, mFrames > 10);
+        long[] intervals = new long[mFrames - 1];
+        int janky = 0;
+        for (int i = 0; i < intervals.length; i++) {
+            intervals[i] = mFrameTimes[i + 1] - mFrameTimes[i];
+            if (intervals[i] > FRAME_NANOS * 3 / 2) {
+                janky++;
+            }
+        }
+        Arrays.sort(intervals);
+        Log.i(TAG, SIZE + "x" + SIZE + " drag: " + intervals.length + " frames, median "
+                + intervals[intervals.length / 2] / 1000 + " us (95th " + intervals[intervals.length * 95 / 100] / 1000
+                + " us), " + janky + " janky");
+    }
+
+    private void waitForPlaying(final BoardView view) throws InterruptedException {
+        final boolean[] playing = new boolean[1];
+        long deadline = SystemClock.uptimeMillis() + START_TIMEOUT_MILLIS;
+        while (SystemClock.uptimeMillis() < deadline) {
+            getInstrumentation().runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    playing[0] = view.getBoard() != null && view.isPlaying();
+                }
+            });
+            if (playing[0]) {
+                return;
+            }
+            Thread.sleep(50);
+        }
+        fail("The game never started");
+    }
+}
@@ -0,0 +1,84 @@
+package io.intrepid.russell.tilepuzzle;
+
+import android.app.Activity;
+import android.app.Instrumentation;
+import android.content.Intent;
+import android.os.SystemClock;
+import android.test.InstrumentationTestCase;
+import android.util.Log;
+
+import io.intrepid.russell.tilepuzzle.core.BoardGenerator;
+import io.intrepid.russell.tilepuzzle.core.GameSnapshot;
+import io.intrepid.russell.tilepuzzle.core.Metrics;
+
+/**
+ * Launches the app the way the launcher does, with and without a saved game, and reports the time to
+ * the first frame of the screen each path ends on. Resuming must not inflate the menu on the way.
+ * Results go to logcat under this tag.
+ */
+public class LaunchBenchmark extends InstrumentationTestCase {
+    private static final String TAG = LaunchBenchmark.class.getSimpleName();
+
+    private static final int LAUNCHES = 5;
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    public void testMenu() throws Exception {
+        Instrumentation instrumentation = getInstrumentation();
+        Metrics.Histogram firstFrame = Metrics.histogram("launch.menu_first_frame");
+        for (int i = 0; i < LAUNCHES; i++) {
+            TileActivity.clearSaveData(instrumentation.getTargetContext());
+            long before = firstFrame.getCount();
+            Activity main = instrumentation.startActivitySync(launchIntent());
+            waitForCount(firstFrame, before + 1);
+            assertFalse(main.isFinishing());
+            main.finish();
+            instrumentation.waitForIdleSync();
+        }
+        log("menu", firstFrame);
+    }
+
+    public void testResume() throws Exception {
+        Instrumentation instrumentation = getInstrumentation();
+        Metrics.Histogram firstFrame = Metrics.histogram("launch.resume_first_frame");
+        for (int i = 0; i < LAUNCHES; i++) {
+            SaveStore.get(instrumentation.getTargetContext()).save(SaveStore.AUTOSAVE_SLOT,
+                    new GameSnapshot(new BoardGenerator(i).generate(4, 4), R.raw.bruce, null, new int[0]));
+            long before = firstFrame.getCount();
+            Instrumentation.ActivityMonitor monitor = instrumentation.addMonitor(TileActivity.class.getName(), null,
+                    false);
+            Activity main = instrumentation.startActivitySync(launchIntent());
+            Activity tile = instrumentation.waitForMonitorWithTimeout(monitor, TIMEOUT_MILLIS);
+            instrumentation.removeMonitor(monitor);
+            assertNotNull("Didn't resume the game", tile);
+            assertTrue(main.isFinishing());
+            assertNull("The menu was inflated on the way", main.findViewById(R.id.image_grid));
+            waitForCount(firstFrame, before + 1);
+            tile.finish();
+            instrumentation.waitForIdleSync();
+        }
+        TileActivity.clearSaveData(instrumentation.getTargetContext());
+        log("resume", firstFrame);
+    }
+
+    private Intent launchIntent() {
+        return new Intent(Intent.ACTION_MAIN)
+                .addCategory(Intent.CATEGORY_LAUNCHER)
+                .setClassName(getInstrumentation().getTargetContext(), MainActivity.class.getName())
+                .addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
+    }
+
+    private void waitForCount(Metrics.Histogram histogram, long count) throws InterruptedException {
+        long deadline = SystemClock.uptimeMillis() + TIMEOUT_MILLIS;
+        while (histogram.getCount() < count) {
+            if (SystemClock.uptimeMillis() > deadline) {
+                fail("No first frame");
+            }
+            Thread.sleep(20);
+        }
+    }
+
+    private static void log(String path, Metrics.Histogram firstFrame) {
+        Log.i(TAG, path + ": first frame median " + firstFrame.getPercentileNanos(50) / 1000000 + " ms, 95th "
+                + firstFrame.getPercentileNanos(95) / 1000000 + " ms over " + firstFrame.getCount() + " launches");
+    }
+}
@@ -0,0 +1,84 @@
+package io.intrepid.russell.tilepuzzle;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+
+import io.intrepid.russell.tilepuzzle.core.Board;
+import io.intrepid.russell.tilepuzzle.core.Heuristic;
+import io.intrepid.russell.tilepuzzle.core.ManhattanHeuristic;
+import io.intrepid.russell.tilepuzzle.core.PatternDatabase;
+import io.intrepid.russell.tilepuzzle.core.PatternDatabaseHeuristic;
+import io.intrepid.russell.tilepuzzle.core.Solution;
+import io.intrepid.russell.tilepuzzle.core.Solver;
+
+/**
+ * Times the optimal solver on random 4x4 boards on the device, once per heuristic on the same boards.
+ * Results go to logcat under this tag. The target is a median under one second on a mid-range device.
+ */
+public class SolverBenchmark extends AndroidTestCase {
+    private static final String TAG = SolverBenchmark.class.getSimpleName();
+
+    private static final int BOARDS = 25;
+    private static final long SEED = 20151021;
+
+    public void testManhattan4x4() throws Exception {
+        run("manhattan", null);
+    }
+
+    public void testPatternDatabase4x4() throws Exception {
+        long start = System.nanoTime();
+        PatternDatabase[] databases = PatternDatabase.load(new File(getContext().getCacheDir(), "benchmark_pdb"),
+                4, 4, PatternDatabase.defaultPartition(4, 4), Runtime.getRuntime().availableProcessors());
+        Log.i(TAG, "pattern databases ready in " + (System.nanoTime() - start) / 1000000 + " ms");
+        run("pattern database", databases);
+    }
+
+    private void run(String name, PatternDatabase[] databases) {
+        Random random = new Random(SEED);
+        long[] millis = new long[BOARDS];
+        long nodes = 0;
+        for (int i = 0; i < BOARDS; i++) {
+            Board board = randomSolvableBoard(4, random);
+            Heuristic heuristic = databases != null
+                    ? new PatternDatabaseHeuristic(databases)
+                    : new ManhattanHeuristic(4, 4);
+            Solution solution = new Solver(board, heuristic).solve();
+            millis[i] = solution.getElapsedNanos() / 1000000;
+            nodes += solution.getNodesExpanded();
+            Log.i(TAG, name + " board " + i + ": " + solution.length() + " moves, "
+                    + solution.getNodesExpanded() + " nodes, " + millis[i] + " ms");
+        }
+        long total = 0;
+        for (long m : millis) {
+            total += m;
+        }
+        Arrays.sort(millis);
+        Log.i(TAG, name + " 4x4 median " + millis[BOARDS / 2] + " ms, mean " + total / BOARDS + " ms, max "
+                + millis[BOARDS - 1] + " ms, mean " + nodes / BOARDS + " nodes");
+    }
+
+    private static Board randomSolvableBoard(int size, Random random) {
+        int[] values = new int[size * size];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i;
+        }
+        for (int i = values.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int value = values[i];
+            values[i] = values[j];
+            values[j] = value;
+        }
+        Board board = Board.create(size, size, values);
+        if (!board.isSolvable()) {
+            // Swapping any two tiles (not the blank) flips the parity
+            int first = board.get(0) == board.getMissingValue() ? 2 : 0;
+            int second = board.get(1) == board.getMissingValue() ? 2 : 1;
+            board.swapTiles(first, second);
+        }
+        return board;
+    }
+}
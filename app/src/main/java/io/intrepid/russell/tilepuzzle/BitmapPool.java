@@ -0,0 +1,210 @@
+package io.intrepid.russell.tilepuzzle;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.TreeMap;
+
+import io.intrepid.russell.tilepuzzle.core.Metrics;
+
+/**
+ * Mutable bitmaps that nobody uses any more, kept to be decoded or drawn into again instead of
+ * allocating new ones, which is what causes GC pauses on a new game. Bitmaps are bucketed by the bytes
+ * they hold and evicted oldest first beyond a byte budget.
+ * <p/>
+ * From KitKat any bitmap at least as large as needed can be reconfigured to fit. Before that, reuse for
+ * drawing needs the exact size and format, and reuse for decoding also needs {@code inSampleSize} 1.
+ * <p/>
+ * Only put bitmaps here that nothing will touch again; thread safe.
+ */
+class BitmapPool {
+    // A larger bitmap is only reconfigured for a request this many times smaller, to not waste memory
+    private static final int MAX_OVERSIZE = 4;
+
+    private static final Metrics.Counter HITS = Metrics.counter("bitmap_pool.hits");
+    private static final Metrics.Counter MISSES = Metrics.counter("bitmap_pool.misses");
+    private static final Metrics.Counter BYTES_REUSED = Metrics.counter("bitmap_pool.bytes_reused");
+
+    private final long mMaxBytes;
+    private final TreeMap<Integer, LinkedList<Bitmap>> mBuckets = new TreeMap<Integer, LinkedList<Bitmap>>();
+    private final LinkedList<Bitmap> mOrder = new LinkedList<Bitmap>(); // Oldest first
+    private long mBytes;
+
+    BitmapPool(long maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Takes {@code bitmap} for reuse, or recycles it if it can't be reused or doesn't fit.
+     */
+    synchronized void put(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) {
+            return;
+        }
+        int bytes = sizeOf(bitmap);
+        if (!bitmap.isMutable() || bytes > mMaxBytes / 2) {
+            bitmap.recycle();
+            return;
+        }
+        LinkedList<Bitmap> bucket = mBuckets.get(bytes);
+        if (bucket == null) {
+            bucket = new LinkedList<Bitmap>();
+            mBuckets.put(bytes, bucket);
+        }
+        bucket.add(bitmap);
+        mOrder.add(bitmap);
+        mBytes += bytes;
+        trimTo(mMaxBytes);
+    }
+
+    /**
+     * @return a mutable bitmap of the given size and format, cleared to transparent, reused if possible
+     */
+    Bitmap get(int width, int height, Bitmap.Config config) {
+        Bitmap bitmap = take(width, height, config, true);
+        if (bitmap != null) {
+            bitmap.eraseColor(0);
+            return bitmap;
+        }
+        return Bitmap.createBitmap(width, height, config);
+    }
+
+    /**
+     * Sets {@code options.inBitmap} to a pooled bitmap the decode can write into, if there is one. The
+     * options must hold the bounds from an {@code inJustDecodeBounds} pass and the final sample size.
+     *
+     * @return the bitmap chosen, for {@link #decodeFailed} if the decoder rejects it
+     */
+    Bitmap prepareDecode(BitmapFactory.Options options) {
+        options.inMutable = true; // So the result can come back here too
+        int sample = Math.max(1, options.inSampleSize);
+        boolean kitKat = Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
+        if (!kitKat && sample != 1) {
+            return null;
+        }
+        // Decoders round sampled sizes differently, so allow for rounding up
+        int width = (options.outWidth + sample - 1) / sample;
+        int height = (options.outHeight + sample - 1) / sample;
+        Bitmap.Config config = options.inPreferredConfig != null ? options.inPreferredConfig : Bitmap.Config.ARGB_8888;
+        Bitmap bitmap = take(width, height, config, false);
+        options.inBitmap = bitmap;
+        return bitmap;
+    }
+
+    /**
+     * Undoes {@link #prepareDecode} after a decode that threw because it couldn't use the bitmap.
+     */
+    void decodeFailed(BitmapFactory.Options options, Bitmap candidate) {
+        options.inBitmap = null;
+        if (candidate != null) {
+            put(candidate);
+        }
+    }
+
+    /**
+     * Recycles the oldest bitmaps until the pool holds at most {@code maxBytes}.
+     */
+    synchronized void trimTo(long maxBytes) {
+        while (mBytes > maxBytes && !mOrder.isEmpty()) {
+            Bitmap oldest = mOrder.removeFirst();
+            int bytes = sizeOf(oldest);
+            removeFromBucket(bytes, oldest);
+            mBytes -= bytes;
+            oldest.recycle();
+        }
+    }
+
+    synchronized void clear() {
+        trimTo(0);
+    }
+
+    long getMaxBytes() {
+        return mMaxBytes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        long hits = HITS.get();
+        long total = hits + MISSES.get();
+        return "bitmap pool: " + mOrder.size() + " bitmaps, " + mBytes / 1024 + " of " + mMaxBytes / 1024
+                + " KB, hit rate " + (total > 0 ? hits * 100 / total : 0) + "%, " + BYTES_REUSED.get() / 1024
+                + " KB reused";
+    }
+
+    /**
+     * @param reconfigure whether to make the bitmap exactly this size; a decode does that itself
+     */
+    private synchronized Bitmap take(int width, int height, Bitmap.Config config, boolean reconfigure) {
+        int needed = width * height * bytesPerPixel(config);
+        Bitmap found = null;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            Map.Entry<Integer, LinkedList<Bitmap>> entry = mBuckets.ceilingEntry(needed);
+            if (entry != null && entry.getKey() <= (long) needed * MAX_OVERSIZE) {
+                found = entry.getValue().getFirst();
+            }
+        } else {
+            LinkedList<Bitmap> bucket = mBuckets.get(needed);
+            if (bucket != null) {
+                for (Bitmap bitmap : bucket) {
+                    if (bitmap.getWidth() == width && bitmap.getHeight() == height && bitmap.getConfig() == config) {
+                        found = bitmap;
+                        break;
+                    }
+                }
+            }
+        }
+        if (found == null) {
+            MISSES.increment();
+            return null;
+        }
+        int bytes = sizeOf(found);
+        removeFromBucket(bytes, found);
+        mOrder.remove(found);
+        mBytes -= bytes;
+        HITS.increment();
+        BYTES_REUSED.add(needed);
+        if (reconfigure && (found.getWidth() != width || found.getHeight() != height || found.getConfig() != config)) {
+            found.reconfigure(width, height, config);
+        }
+        return found;
+    }
+
+    private void removeFromBucket(int bytes, Bitmap bitmap) {
+        LinkedList<Bitmap> bucket = mBuckets.get(bytes);
+        if (bucket == null) {
+            return;
+        }
+        for (Iterator<Bitmap> i = bucket.iterator(); i.hasNext(); ) {
+            if (i.next() == bitmap) {
+                i.remove();
+                break;
+            }
+        }
+        if (bucket.isEmpty()) {
+            mBuckets.remove(bytes);
+        }
+    }
+
+    /**
+     * @return the memory behind {@code bitmap}, which from KitKat can be more than its current size uses
+     */
+    static int sizeOf(Bitmap bitmap) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            return bitmap.getAllocationByteCount();
+        }
+        return bitmap.getByteCount();
+    }
+
+    private static int bytesPerPixel(Bitmap.Config config) {
+        if (config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444) {
+            return 2;
+        } else if (config == Bitmap.Config.ALPHA_8) {
+            return 1;
+        }
+        return 4;
+    }
+}
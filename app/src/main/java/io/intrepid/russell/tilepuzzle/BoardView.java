@@ -0,0 +1,609 @@
+package io.intrepid.russell.tilepuzzle;
+
+import android.animation.ValueAnimator;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.os.Build;
+import android.util.AttributeSet;
+import android.view.Choreographer;
+import android.view.MotionEvent;
+import android.view.VelocityTracker;
+import android.view.View;
+import android.view.ViewConfiguration;
+import android.view.animation.DecelerateInterpolator;
+
+import io.intrepid.russell.tilepuzzle.core.Board;
+import io.intrepid.russell.tilepuzzle.core.Metrics;
+
+/**
+ * Draws a whole {@link Board} from one source image in a single pass, with square tiles and any number
+ * of rows and columns. Taps are mapped to tile positions arithmetically. After a move only the tiles
+ * that slid are animated, and only their strip of the board is invalidated.
+ * <p/>
+ * Tiles in the blank's row or column can also be dragged, together with every tile between them and
+ * the blank. Touch events only record where the finger is; once per frame a frame callback moves the
+ * run to match and invalidates its strip, so there is one draw per frame however fast events come, and
+ * never a layout. On release the run snaps into the blank or back by distance and velocity, and a
+ * completed drag is reported as one tap on the tile that was grabbed.
+ * <p/>
+ * The board is shared with the caller, who changes it and then tells the view what happened through
+ * {@link #onSlid(int)} or {@link #onBoardChanged()}.
+ */
+public class BoardView extends View {
+    private static final long SLIDE_MILLIS = 120;
+    private static final long LEGACY_FRAME_MILLIS = 16; // Before Choreographer, assume 60 fps
+
+    private static final Metrics.Histogram DRAW = Metrics.histogram("board.draw");
+    private static final Metrics.Histogram TAP_TO_DRAW = Metrics.histogram("board.tap_to_draw");
+    private static final Metrics.Counter TILES_DRAWN = Metrics.counter("board.tiles_drawn");
+
+    public interface OnTileClickListener {
+        /**
+         * @param position row-major position of the tile tapped, or dragged all the way into the blank
+         */
+        void onTileClick(int position);
+    }
+
+    private final Paint mTilePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Paint mBorderPaint = new Paint();
+    private final Paint mHintPaint = new Paint();
+    private final int mBorderWidth;
+    private final Rect mSource = new Rect();
+    private final Rect mDestination = new Rect();
+    private final Rect mDirty = new Rect();
+    private final Rect mClip = new Rect();
+
+    private Board mBoard;
+    private Bitmap mImage;
+    private boolean mPlaying;
+    private OnTileClickListener mListener;
+    private int mHint = -1; // Position of the tile to highlight, or -1
+
+    // Laid out size of one tile and where the board starts, in view pixels
+    private int mTileSide;
+    private int mBoardLeft;
+    private int mBoardTop;
+
+    // The slide being animated: tiles from the current blank up to mSlideFrom, exclusive, moved one step
+    private final ValueAnimator mSlideAnimator = ValueAnimator.ofFloat(0, 1);
+    private int mSlideFrom = -1;
+    private int mSlideStep;
+    private float mSlideProgress = 1;
+
+    private long mTapNanos; // When the last tap not yet drawn was handled, or 0
+
+    // The drag: tiles from mDragFrom up to the blank, exclusive, mDragOffset pixels of the way into it
+    private final int mTouchSlop;
+    private final int mMinFlingVelocity;
+    private final Rect mDragDirty = new Rect();
+    private VelocityTracker mVelocityTracker;
+    private int mDownPosition = -1;
+    private float mDownX;
+    private float mDownY;
+    private boolean mTapCancelled;
+    private int mDragFrom = -1;
+    private int mDragStep; // Board step from mDragFrom toward the blank
+    private int mDragAxisX; // Unit vector of that step on screen
+    private int mDragAxisY;
+    private float mTouchX;
+    private float mTouchY;
+    private float mDragOffset;
+    private boolean mDragging; // Following the finger
+    private boolean mSettling; // Snapping after release
+    private boolean mSettleCommits;
+    private float mSettleFrom;
+    private long mSettleStartNanos;
+    private long mSettleNanos;
+    private boolean mCommitting; // Reporting a finished drag, whose tiles are already in place
+    private boolean mFrameScheduled;
+    private Object mFrameCallback; // Choreographer.FrameCallback, which API 15 doesn't have
+    private final Runnable mLegacyFrame = new Runnable() {
+        @Override
+        public void run() {
+            doFrame(System.nanoTime());
+        }
+    };
+
+    public BoardView(Context context) {
+        this(context, null);
+    }
+
+    public BoardView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        mBorderWidth = getResources().getDimensionPixelSize(R.dimen.tile_border_width);
+        ViewConfiguration configuration = ViewConfiguration.get(context);
+        mTouchSlop = configuration.getScaledTouchSlop();
+        mMinFlingVelocity = configuration.getScaledMinimumFlingVelocity();
+        mBorderPaint.setColor(getResources().getColor(R.color.tile_border));
+        mHintPaint.setColor(getResources().getColor(R.color.tile_hint));
+        mSlideAnimator.setDuration(SLIDE_MILLIS);
+        mSlideAnimator.setInterpolator(new DecelerateInterpolator());
+        mSlideAnimator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
+            @Override
+            public void onAnimationUpdate(ValueAnimator animation) {
+                mSlideProgress = animation.getAnimatedFraction();
+                if (mSlideProgress >= 1) {
+                    mSlideFrom = -1;
+                }
+                invalidate(mDirty);
+            }
+        });
+    }
+
+    /**
+     * @param image picture for the whole board, with square tiles of equal size
+     */
+    public void setBoard(Board board, Bitmap image) {
+        boolean resized = mBoard == null || board.getWidth() != mBoard.getWidth()
+                || board.getHeight() != mBoard.getHeight();
+        mBoard = board;
+        mImage = image;
+        mHint = -1;
+        endSlide();
+        cancelDrag();
+        if (resized) {
+            requestLayout();
+        }
+        invalidate();
+    }
+
+    public Board getBoard() {
+        return mBoard;
+    }
+
+    /**
+     * @param playing draw borders and leave the blank empty; otherwise show the finished picture
+     */
+    public void setPlaying(boolean playing) {
+        if (mPlaying != playing) {
+            mPlaying = playing;
+            cancelDrag();
+            invalidate();
+        }
+    }
+
+    boolean isPlaying() {
+        return mPlaying;
+    }
+
+    public void setOnTileClickListener(OnTileClickListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Highlights the tile at {@code position} until the board next changes; -1 for none.
+     */
+    public void setHint(int position) {
+        if (mHint == position) {
+            return;
+        }
+        if (mHint >= 0) {
+            positionRect(mHint, mDestination);
+            invalidate(mDestination);
+        }
+        mHint = position;
+        if (position >= 0) {
+            positionRect(position, mDestination);
+            invalidate(mDestination);
+        }
+    }
+
+    /**
+     * Animates the tiles that slid when the blank moved in a straight line from {@code previousBlank} to
+     * where it is now.
+     */
+    public void onSlid(int previousBlank) {
+        setHint(-1);
+        endSlide();
+        int blank = mBoard.getBlankPosition();
+        if (blank == previousBlank) {
+            return;
+        }
+        if (mCommitting) {
+            // The drag already carried the tiles all the way
+            invalidate(mDragDirty);
+            return;
+        }
+        cancelDrag();
+        int width = mBoard.getWidth();
+        boolean sameRow = blank / width == previousBlank / width;
+        int distance = blank - previousBlank;
+        mSlideStep = sameRow ? Integer.signum(distance) : Integer.signum(distance) * width;
+        mSlideFrom = previousBlank;
+
+        positionRect(Math.min(blank, previousBlank), mDirty);
+        positionRect(Math.max(blank, previousBlank), mDestination);
+        mDirty.union(mDestination);
+        mSlideProgress = 0;
+        mSlideAnimator.start();
+        invalidate(mDirty);
+    }
+
+    /**
+     * Redraws everything without animating, after the board changed all at once.
+     */
+    public void onBoardChanged() {
+        mHint = -1;
+        endSlide();
+        cancelDrag();
+        invalidate();
+    }
+
+    private void endSlide() {
+        if (mSlideAnimator.isRunning()) {
+            mSlideAnimator.end();
+        }
+        mSlideFrom = -1;
+        mSlideProgress = 1;
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int availableWidth = MeasureSpec.getSize(widthMeasureSpec) - getPaddingLeft() - getPaddingRight();
+        int availableHeight = MeasureSpec.getSize(heightMeasureSpec) - getPaddingTop() - getPaddingBottom();
+        if (mBoard == null) {
+            setMeasuredDimension(getDefaultSize(getSuggestedMinimumWidth(), widthMeasureSpec),
+                    getDefaultSize(getSuggestedMinimumHeight(), heightMeasureSpec));
+            return;
+        }
+        int columns = mBoard.getWidth();
+        int rows = mBoard.getHeight();
+        int side;
+        if (MeasureSpec.getMode(heightMeasureSpec) == MeasureSpec.UNSPECIFIED) {
+            side = availableWidth / columns;
+        } else if (MeasureSpec.getMode(widthMeasureSpec) == MeasureSpec.UNSPECIFIED) {
+            side = availableHeight / rows;
+        } else {
+            side = Math.min(availableWidth / columns, availableHeight / rows);
+        }
+        int width = side * columns + getPaddingLeft() + getPaddingRight();
+        int height = side * rows + getPaddingTop() + getPaddingBottom();
+        setMeasuredDimension(resolveSize(width, widthMeasureSpec), resolveSize(height, heightMeasureSpec));
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+        super.onLayout(changed, left, top, right, bottom);
+        if (mBoard == null) {
+            return;
+        }
+        int availableWidth = getWidth() - getPaddingLeft() - getPaddingRight();
+        int availableHeight = getHeight() - getPaddingTop() - getPaddingBottom();
+        mTileSide = Math.min(availableWidth / mBoard.getWidth(), availableHeight / mBoard.getHeight());
+        // Center the board in whatever space we got
+        mBoardLeft = getPaddingLeft() + (availableWidth - mTileSide * mBoard.getWidth()) / 2;
+        mBoardTop = getPaddingTop() + (availableHeight - mTileSide * mBoard.getHeight()) / 2;
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        if (mBoard == null || mImage == null || mTileSide == 0) {
+            return;
+        }
+        long start = System.nanoTime();
+        drawBoard(canvas);
+        DRAW.recordSince(start);
+        if (mTapNanos != 0) {
+            TAP_TO_DRAW.recordSince(mTapNanos);
+            mTapNanos = 0;
+        }
+    }
+
+    private void drawBoard(Canvas canvas) {
+        int columns = mBoard.getWidth();
+        if (!mPlaying) {
+            mDestination.set(mBoardLeft, mBoardTop, mBoardLeft + mTileSide * columns,
+                    mBoardTop + mTileSide * mBoard.getHeight());
+            canvas.drawBitmap(mImage, null, mDestination, mTilePaint);
+            return;
+        }
+
+        int imageSide = mImage.getWidth() / columns;
+        int blank = mBoard.getBlankPosition();
+        int missing = mBoard.getMissingValue();
+        // Tiles between the blank and mSlideFrom are drawn partway back toward where they came from
+        int slideFirst = -1;
+        int slideLast = -1;
+        int offsetX = 0;
+        int offsetY = 0;
+        int step = 0;
+        if (mSlideFrom >= 0) {
+            step = mSlideStep;
+            slideFirst = Math.min(mSlideFrom, blank - step);
+            slideLast = Math.max(mSlideFrom, blank - step);
+            float back = 1 - mSlideProgress;
+            boolean horizontal = Math.abs(step) == 1;
+            offsetX = horizontal ? Math.round(back * mTileSide * step) : 0;
+            offsetY = horizontal ? 0 : Math.round(back * mTileSide * Integer.signum(step));
+        } else if (mDragFrom >= 0) {
+            // Before the move: the run is drawn partway into the blank
+            step = mDragStep;
+            slideFirst = Math.min(mDragFrom, blank - step);
+            slideLast = Math.max(mDragFrom, blank - step);
+            offsetX = Math.round(mDragOffset * mDragAxisX);
+            offsetY = Math.round(mDragOffset * mDragAxisY);
+        }
+        canvas.getClipBounds(mClip);
+        int drawn = 0; // Tiles inside the clip, so a move that redraws a strip counts only that strip
+        for (int position = 0; position < mBoard.getTileCount(); position++) {
+            int value = mBoard.get(position);
+            if (value == missing) {
+                continue;
+            }
+            positionRect(position, mDestination);
+            if (Rect.intersects(mClip, mDestination)) {
+                drawn++;
+            }
+            if (position >= slideFirst && position <= slideLast && inRun(position, blank, step)) {
+                mDestination.offset(offsetX, offsetY);
+            }
+            canvas.drawRect(mDestination, mBorderPaint);
+            mDestination.inset(mBorderWidth, mBorderWidth);
+            int sourceLeft = (value % columns) * imageSide;
+            int sourceTop = (value / columns) * imageSide;
+            mSource.set(sourceLeft, sourceTop, sourceLeft + imageSide, sourceTop + imageSide);
+            canvas.drawBitmap(mImage, mSource, mDestination, mTilePaint);
+            if (position == mHint) {
+                canvas.drawRect(mDestination, mHintPaint);
+            }
+        }
+        TILES_DRAWN.add(drawn);
+    }
+
+    /**
+     * @return true if {@code position} is one of the tiles in the run being slid or dragged
+     */
+    private boolean inRun(int position, int blank, int step) {
+        // The range check covers rows; a column run also has to be in the blank's column
+        return Math.abs(step) == 1 || (position - blank) % step == 0;
+    }
+
+    private void positionRect(int position, Rect out) {
+        int columns = mBoard.getWidth();
+        int left = mBoardLeft + (position % columns) * mTileSide;
+        int top = mBoardTop + (position / columns) * mTileSide;
+        out.set(left, top, left + mTileSide, top + mTileSide);
+    }
+
+    /**
+     * @return the position under the given view coordinates, or -1 if they're off the board
+     */
+    public int positionAt(float x, float y) {
+        if (mBoard == null || mTileSide == 0 || x < mBoardLeft || y < mBoardTop) {
+            return -1;
+        }
+        int column = (int) (x - mBoardLeft) / mTileSide;
+        int row = (int) (y - mBoardTop) / mTileSide;
+        if (column >= mBoard.getWidth() || row >= mBoard.getHeight()) {
+            return -1;
+        }
+        return row * mBoard.getWidth() + column;
+    }
+
+    /**
+     * Where the tile at {@code position} is drawn when nothing is moving, in view coordinates
+     */
+    void getTileBounds(int position, Rect out) {
+        positionRect(position, out);
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        if (!mPlaying || mListener == null) {
+            return false;
+        }
+        if (mVelocityTracker == null) {
+            mVelocityTracker = VelocityTracker.obtain();
+        }
+        mVelocityTracker.addMovement(event);
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                finishSettle();
+                mVelocityTracker.clear();
+                mVelocityTracker.addMovement(event);
+                mDownPosition = positionAt(event.getX(), event.getY());
+                mDownX = event.getX();
+                mDownY = event.getY();
+                mTapCancelled = false;
+                return mDownPosition >= 0;
+            case MotionEvent.ACTION_MOVE:
+                if (mDragging) {
+                    mTouchX = event.getX();
+                    mTouchY = event.getY();
+                    scheduleFrame();
+                } else if (!mTapCancelled && Math.hypot(event.getX() - mDownX, event.getY() - mDownY) > mTouchSlop) {
+                    mTapCancelled = true;
+                    startDrag(event.getX(), event.getY());
+                }
+                return true;
+            case MotionEvent.ACTION_UP:
+                if (mDragging) {
+                    mVelocityTracker.computeCurrentVelocity(1000);
+                    float velocity = mVelocityTracker.getXVelocity() * mDragAxisX
+                            + mVelocityTracker.getYVelocity() * mDragAxisY;
+                    // Commit past halfway unless flung back, or on any fling toward the blank
+                    boolean commit = velocity > mMinFlingVelocity
+                            || (mDragOffset >= mTileSide / 2f && velocity > -mMinFlingVelocity);
+                    settle(commit, Math.abs(velocity));
+                } else if (!mTapCancelled) {
+                    int position = positionAt(event.getX(), event.getY());
+                    if (position >= 0) {
+                        mTapNanos = System.nanoTime();
+                        performClick();
+                        mListener.onTileClick(position);
+                    }
+                }
+                recycleVelocityTracker();
+                return true;
+            case MotionEvent.ACTION_CANCEL:
+                if (mDragging) {
+                    settle(false, 0);
+                }
+                recycleVelocityTracker();
+                return true;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Starts following the finger if the tile it went down on can slide toward the blank
+     */
+    private void startDrag(float x, float y) {
+        int position = mDownPosition;
+        int blank = mBoard.getBlankPosition();
+        if (position < 0 || mBoard.directionToward(position) < 0) {
+            return; // Not in line with the blank; the gesture is just dropped
+        }
+        endSlide();
+        int columns = mBoard.getWidth();
+        int sign = Integer.signum(blank - position);
+        boolean horizontal = position / columns == blank / columns;
+        mDragFrom = position;
+        mDragStep = horizontal ? sign : sign * columns;
+        mDragAxisX = horizontal ? sign : 0;
+        mDragAxisY = horizontal ? 0 : sign;
+        // Follow from here rather than from the down point, so the run doesn't jump by the slop
+        mDownX = x;
+        mDownY = y;
+        mTouchX = x;
+        mTouchY = y;
+        mDragOffset = 0;
+        mDragging = true;
+        positionRect(Math.min(position, blank), mDragDirty);
+        positionRect(Math.max(position, blank), mDestination);
+        mDragDirty.union(mDestination);
+    }
+
+    /**
+     * Animates the run from where it was let go into the blank, or back where it was
+     *
+     * @param speed of the finger on release along the drag, in pixels per second
+     */
+    private void settle(boolean commit, float speed) {
+        mDragging = false;
+        mSettling = true;
+        mSettleCommits = commit;
+        mSettleFrom = mDragOffset;
+        float distance = Math.abs((commit ? mTileSide : 0) - mDragOffset);
+        // No slower than a tap's slide, and no slower than the finger was going
+        long nanos = (long) (SLIDE_MILLIS * 1000000L * distance / Math.max(1, mTileSide));
+        if (speed > 0) {
+            nanos = Math.min(nanos, (long) (distance / speed * 1e9f));
+        }
+        mSettleNanos = Math.max(nanos, 1);
+        mSettleStartNanos = System.nanoTime();
+        scheduleFrame();
+    }
+
+    /**
+     * Applies the latest finger position, or the next step of a settle, once per frame
+     */
+    private void doFrame(long frameTimeNanos) {
+        mFrameScheduled = false;
+        if (mDragging) {
+            float along = (mTouchX - mDownX) * mDragAxisX + (mTouchY - mDownY) * mDragAxisY;
+            float offset = Math.max(0, Math.min(mTileSide, along));
+            if (offset != mDragOffset) {
+                mDragOffset = offset;
+                invalidate(mDragDirty);
+            }
+        } else if (mSettling) {
+            float t = Math.min(1, Math.max(0, (frameTimeNanos - mSettleStartNanos) / (float) mSettleNanos));
+            float eased = 1 - (1 - t) * (1 - t); // Decelerate, like a tap's slide
+            float target = mSettleCommits ? mTileSide : 0;
+            mDragOffset = mSettleFrom + (target - mSettleFrom) * eased;
+            invalidate(mDragDirty);
+            if (t >= 1) {
+                finishSettle();
+            } else {
+                scheduleFrame();
+            }
+        }
+    }
+
+    /**
+     * Ends a settle in progress at once, making its move if it was going to
+     */
+    private void finishSettle() {
+        if (!mSettling) {
+            return;
+        }
+        mSettling = false;
+        int from = mDragFrom;
+        boolean commit = mSettleCommits;
+        if (commit) {
+            mDragOffset = mTileSide;
+            mCommitting = true;
+            try {
+                mListener.onTileClick(from);
+            } finally {
+                mCommitting = false;
+            }
+        }
+        cancelDrag();
+    }
+
+    /**
+     * Drops any drag without a move, drawing its tiles back in place
+     */
+    private void cancelDrag() {
+        if (mDragFrom >= 0) {
+            invalidate(mDragDirty);
+        }
+        mDragging = false;
+        mSettling = false;
+        mDragFrom = -1;
+        mDragOffset = 0;
+    }
+
+    private void scheduleFrame() {
+        if (mFrameScheduled) {
+            return;
+        }
+        mFrameScheduled = true;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            if (mFrameCallback == null) {
+                mFrameCallback = new Choreographer.FrameCallback() {
+                    @Override
+                    public void doFrame(long frameTimeNanos) {
+                        BoardView.this.doFrame(frameTimeNanos);
+                    }
+                };
+            }
+            Choreographer.getInstance().postFrameCallback((Choreographer.FrameCallback) mFrameCallback);
+        } else {
+            postDelayed(mLegacyFrame, LEGACY_FRAME_MILLIS);
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        cancelDrag();
+        recycleVelocityTracker();
+        if (mFrameScheduled) {
+            mFrameScheduled = false;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+                Choreographer.getInstance().removeFrameCallback((Choreographer.FrameCallback) mFrameCallback);
+            } else {
+                removeCallbacks(mLegacyFrame);
+            }
+        }
+    }
+
+    private void recycleVelocityTracker() {
+        if (mVelocityTracker != null) {
+            mVelocityTracker.recycle();
+            mVelocityTracker = null;
+        }
+    }
+
+    @Override
+    public boolean performClick() {
+        return super.performClick(); // Lets accessibility services see the tap
+    }
+}
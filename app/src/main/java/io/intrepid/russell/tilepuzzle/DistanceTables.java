@@ -0,0 +1,92 @@
+package io.intrepid.russell.tilepuzzle;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import io.intrepid.russell.tilepuzzle.core.DistanceTable;
+import io.intrepid.russell.tilepuzzle.core.Metrics;
+
+/**
+ * Exact distance tables for the small boards, shared by every game. 2x2 and 3x3 ship as raw resources
+ * that are read straight into the lookup array; any other size small enough gets a table searched on
+ * first use.
+ */
+final class DistanceTables {
+    private static final String TAG = DistanceTables.class.getSimpleName();
+
+    private static final Metrics.Histogram LOAD = Metrics.histogram("distance_table.load");
+
+    private static final Map<Integer, DistanceTable> sTables = new HashMap<Integer, DistanceTable>();
+
+    private DistanceTables() {
+    }
+
+    /**
+     * @return the table for {@code width} by {@code height} boards if it's loaded, otherwise null
+     */
+    static synchronized DistanceTable peek(int width, int height) {
+        return sTables.get(key(width, height));
+    }
+
+    /**
+     * Loads the table for {@code width} by {@code height} boards if it isn't already. Blocks, so call it
+     * off the main thread.
+     *
+     * @return the table, or null if the board is too large to have one
+     */
+    static DistanceTable load(Context context, int width, int height) {
+        if (!DistanceTable.isSupported(width, height)) {
+            return null;
+        }
+        DistanceTable table = peek(width, height);
+        if (table != null) {
+            return table;
+        }
+        long start = System.nanoTime();
+        table = read(context, width, height);
+        if (table == null) {
+            table = DistanceTable.generate(width, height);
+        }
+        LOAD.recordSince(start);
+        synchronized (DistanceTables.class) {
+            sTables.put(key(width, height), table);
+        }
+        return table;
+    }
+
+    private static DistanceTable read(Context context, int width, int height) {
+        int resource = resourceFor(width, height);
+        if (resource == 0) {
+            return null;
+        }
+        try {
+            InputStream in = context.getResources().openRawResource(resource);
+            try {
+                return DistanceTable.read(in);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Couldn't read the " + width + "x" + height + " table, searching instead", e);
+            return null;
+        }
+    }
+
+    private static int resourceFor(int width, int height) {
+        if (width == 2 && height == 2) {
+            return R.raw.distances_2x2;
+        } else if (width == 3 && height == 3) {
+            return R.raw.distances_3x3;
+        }
+        return 0;
+    }
+
+    private static int key(int width, int height) {
+        return width << 16 | height;
+    }
+}
@@ -1,33 +1,45 @@
 package io.intrepid.russell.tilepuzzle;
 
 import android.content.Intent;
+import android.net.Uri;
 import android.os.Bundle;
 import android.preference.PreferenceManager;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.GridLayoutManager;
 import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.AdapterView;
 import android.widget.ImageView;
 import android.widget.Spinner;
 
-import com.squareup.picasso.Picasso;
+import io.intrepid.russell.tilepuzzle.core.Metrics;
 
 public class MainActivity extends AppCompatActivity {
+    private static final Metrics.Histogram CREATE = Metrics.histogram("main.create");
+    private static final Metrics.Histogram MENU_FIRST_FRAME = Metrics.histogram("launch.menu_first_frame");
+    private static final int REQUEST_PHOTO = 1;
 
     Spinner mDifficultyPicker;
 
     public void onCreate(Bundle savedInstanceState) {
+        long start = System.nanoTime();
         super.onCreate(savedInstanceState);
         if (TileActivity.hasSaveData(this)) {
-            // If we have saved data, launch immediately into TileActivity
-            startActivity(new Intent(this, TileActivity.class));
+            // A game to resume: hand straight over, before inflating anything. The check is a file
+            // existence test, so this costs no more than the activity itself.
+            startActivity(new Intent(this, TileActivity.class).putExtra(TileActivity.KEY_LAUNCH_NANOS, start));
             finish();
+            overridePendingTransition(0, 0);
+            return;
         }
 
         setContentView(R.layout.activity_main);
+        Utils.recordFirstFrame(this, MENU_FIRST_FRAME, start);
 
         mDifficultyPicker = (Spinner) findViewById(R.id.difficulty);
         mDifficultyPicker.setSelection(PreferenceManager.getDefaultSharedPreferences(this).getInt(Utils.PREF_DIFFICULTY, 1));
@@ -35,6 +47,7 @@ public class MainActivity extends AppCompatActivity {
             @Override
             public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
                 PreferenceManager.getDefaultSharedPreferences(MainActivity.this).edit().putInt(Utils.PREF_DIFFICULTY, position).apply();
+                prefetch(PreferenceManager.getDefaultSharedPreferences(MainActivity.this).getInt(Utils.PREF_LAST_IMAGE, 0));
             }
 
             @Override
@@ -46,16 +59,79 @@ public class MainActivity extends AppCompatActivity {
         RecyclerView imageGrid = (RecyclerView) findViewById(R.id.image_grid);
         imageGrid.setLayoutManager(new GridLayoutManager(this, 2));
         imageGrid.setAdapter(new ImageAdapter(this));
+        CREATE.recordSince(start);
     }
 
-    public void onImageSelected(int imageId) {
-        int[] sizes = getResources().getIntArray(R.array.difficulty_values);
-        int size = sizes[mDifficultyPicker.getSelectedItemPosition()];
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.main_activity, menu);
+        return true;
+    }
 
-        startActivity(new Intent(this, TileActivity.class)
-                        .putExtra(TileActivity.KEY_SIZE, size)
-                        .putExtra(TileActivity.KEY_IMAGE_RESOURCE, imageId)
-        );
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() == R.id.menu_pick_photo) {
+            Intent pick = new Intent(Intent.ACTION_GET_CONTENT).setType("image/*")
+                    .addCategory(Intent.CATEGORY_OPENABLE);
+            startActivityForResult(Intent.createChooser(pick, getString(R.string.pick_photo)), REQUEST_PHOTO);
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        if (requestCode == REQUEST_PHOTO) {
+            if (resultCode == RESULT_OK && data != null && data.getData() != null) {
+                onPhotoSelected(data.getData());
+            }
+            return;
+        }
+        super.onActivityResult(requestCode, resultCode, data);
+    }
+
+    /**
+     * Starts preparing the board for the image at {@code position} at the chosen difficulty, so that if
+     * it's the one picked, the game opens on it straight away.
+     */
+    void prefetch(int position) {
+        if (position < 0 || position >= ImageAdapter.IMAGE_IDS.length) {
+            return;
+        }
+        int difficulty = mDifficultyPicker.getSelectedItemPosition();
+        PuzzleImageCache.get(this).prefetch(ImageAdapter.IMAGE_IDS[position],
+                getResources().getIntArray(R.array.difficulty_widths)[difficulty],
+                getResources().getIntArray(R.array.difficulty_heights)[difficulty],
+                Utils.getBoardSide(this));
+    }
+
+    public void onImageSelected(int position) {
+        PreferenceManager.getDefaultSharedPreferences(this).edit().putInt(Utils.PREF_LAST_IMAGE, position).apply();
+        startGame(newGameIntent().putExtra(TileActivity.KEY_IMAGE_RESOURCE, ImageAdapter.IMAGE_IDS[position]));
+    }
+
+    /**
+     * Starts a game on a photo the player picked, passing on our permission to read it
+     */
+    private void onPhotoSelected(Uri photo) {
+        startGame(newGameIntent()
+                .putExtra(TileActivity.KEY_IMAGE_URI, photo.toString())
+                .setData(photo)
+                .addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION));
+    }
+
+    private Intent newGameIntent() {
+        int difficulty = mDifficultyPicker.getSelectedItemPosition();
+        int width = getResources().getIntArray(R.array.difficulty_widths)[difficulty];
+        int height = getResources().getIntArray(R.array.difficulty_heights)[difficulty];
+
+        return new Intent(this, TileActivity.class)
+                .putExtra(TileActivity.KEY_WIDTH, width)
+                .putExtra(TileActivity.KEY_HEIGHT, height);
+    }
+
+    private void startGame(Intent intent) {
+        startActivity(intent);
         TileActivity.clearSaveData(this);
         finish();
     }
@@ -64,13 +140,14 @@ public class MainActivity extends AppCompatActivity {
 }
 
 class ImageAdapter extends RecyclerView.Adapter<ImageAdapter.ViewHolder> {
-    final int[] IMAGE_IDS = {
+    static final int[] IMAGE_IDS = {
             R.raw.bruce,
             R.raw.skiing,
             R.raw.cartoon,
     };
 
     MainActivity mContext;
+    private final int mThumbnailSide;
 
     static class ViewHolder extends RecyclerView.ViewHolder {
         ImageView image;
@@ -85,11 +162,22 @@ class ImageAdapter extends RecyclerView.Adapter<ImageAdapter.ViewHolder> {
                     adapter.onItemClicked(getAdapterPosition());
                 }
             });
+            itemView.setOnTouchListener(new View.OnTouchListener() {
+                @Override
+                public boolean onTouch(View v, MotionEvent event) {
+                    if (event.getActionMasked() == MotionEvent.ACTION_DOWN) {
+                        // A tap is on its way; get a head start on the board
+                        adapter.mContext.prefetch(getAdapterPosition());
+                    }
+                    return false;
+                }
+            });
         }
     }
 
     ImageAdapter(MainActivity context) {
         mContext = context;
+        mThumbnailSide = Utils.getBoardSide(context) / 2; // Two columns across
     }
 
     @Override
@@ -100,7 +188,7 @@ class ImageAdapter extends RecyclerView.Adapter<ImageAdapter.ViewHolder> {
 
     @Override
     public void onBindViewHolder(ViewHolder holder, int position) {
-        Picasso.with(mContext).load(IMAGE_IDS[position]).centerCrop().fit().placeholder(android.R.color.transparent).into(holder.image);
+        PuzzleImageCache.get(mContext).loadThumbnail(holder.image, IMAGE_IDS[position], mThumbnailSide);
     }
 
     @Override
@@ -109,6 +197,8 @@ class ImageAdapter extends RecyclerView.Adapter<ImageAdapter.ViewHolder> {
     }
 
     public void onItemClicked(int position) {
-        mContext.onImageSelected(IMAGE_IDS[position]);
+        if (position != RecyclerView.NO_POSITION) {
+            mContext.onImageSelected(position);
+        }
     }
 }
\ No newline at end of file
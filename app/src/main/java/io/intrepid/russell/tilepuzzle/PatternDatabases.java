@@ -0,0 +1,93 @@
+package io.intrepid.russell.tilepuzzle;
+
+import android.os.Process;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import io.intrepid.russell.tilepuzzle.core.PatternDatabase;
+
+/**
+ * Pattern databases for each board size, shared by solving and hints. They are loaded, and generated
+ * if missing, on a thread of their own that lives as long as the process, once per size. Callers only
+ * wait for that, so cancelling a job that needs them abandons its wait but never the generation, and
+ * the next caller picks up where it is.
+ */
+final class PatternDatabases {
+    private static final ExecutorService sLoader = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, "PatternDatabases");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    // Key -> databases, loaded or on their way; guarded by itself
+    private static final Map<Integer, Future<PatternDatabase[]>> sDatabases =
+            new HashMap<Integer, Future<PatternDatabase[]>>();
+
+    private PatternDatabases() {
+    }
+
+    /**
+     * Waits for the databases for {@code width} by {@code height} boards, starting to map them from
+     * {@code directory} if nobody has yet, generating any that are missing. Blocks, possibly for a
+     * minute, so call it off the main thread. A failed load is retried by the next call.
+     *
+     * @throws InterruptedException if interrupted while waiting, which leaves the loading running
+     */
+    static PatternDatabase[] load(final File directory, final int width, final int height)
+            throws IOException, InterruptedException {
+        Future<PatternDatabase[]> databases;
+        synchronized (sDatabases) {
+            databases = sDatabases.get(key(width, height));
+            if (databases == null) {
+                databases = sLoader.submit(new Callable<PatternDatabase[]>() {
+                    @Override
+                    public PatternDatabase[] call() throws IOException, InterruptedException {
+                        return PatternDatabase.load(directory, width, height,
+                                PatternDatabase.defaultPartition(width, height),
+                                Runtime.getRuntime().availableProcessors());
+                    }
+                });
+                sDatabases.put(key(width, height), databases);
+            }
+        }
+        try {
+            return databases.get();
+        } catch (ExecutionException e) {
+            synchronized (sDatabases) {
+                if (sDatabases.get(key(width, height)) == databases) {
+                    sDatabases.remove(key(width, height));
+                }
+            }
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException("Loading pattern databases failed", cause);
+        }
+    }
+
+    private static int key(int width, int height) {
+        return width << 16 | height;
+    }
+}
@@ -0,0 +1,569 @@
+package io.intrepid.russell.tilepuzzle;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+import io.intrepid.russell.tilepuzzle.core.Metrics;
+
+/**
+ * Puzzle images, already cropped and scaled for the board, keyed by image, grid dimensions and
+ * target side in pixels. Lookups try an in-memory LRU bounded by bytes, then raw pixel dumps on disk,
+ * and only decode the original resource when both miss. A disk hit is a file map and a pixel copy,
+ * with no image decoding at all.
+ * <p/>
+ * This is the app's only image loader. Thumbnails are images for a 1x1 grid, which is a center crop,
+ * loaded into views by {@link #loadThumbnail}. {@link #prefetch} prepares a board image in the
+ * background before it's asked for, and a load of the same image meanwhile waits for it rather than
+ * decoding it twice.
+ * <p/>
+ * Decodes and copies go into bitmaps from a {@link BitmapPool} where they can. A board image goes back to
+ * the pool once its game {@link #release}s it and it has also left the memory tier; images that were
+ * never {@link #retain}ed, like thumbnails, are left to the garbage collector. JPEGs, which are opaque,
+ * are decoded as {@link #OPAQUE_CONFIG}. The pool and memory tier shrink on {@code onTrimMemory}.
+ * <p/>
+ * {@link #getBoardImage} blocks on disk and decoding, so call it off the main thread.
+ */
+class PuzzleImageCache {
+    private static final String TAG = PuzzleImageCache.class.getSimpleName();
+
+    private static final String DISK_DIR = "puzzle_images";
+    private static final long DISK_MAX_BYTES = 32 * 1024 * 1024;
+    private static final int MAGIC = 0x5450494d; // "TPIM"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 5 * 4;
+    private static final int CONFIG_ARGB_8888 = 0;
+    private static final int CONFIG_RGB_565 = 1;
+    /**
+     * Format for images without alpha: half the memory of ARGB_8888, and the dithering is hard to see
+     * on photos cut into tiles.
+     */
+    static final Bitmap.Config OPAQUE_CONFIG = Bitmap.Config.RGB_565;
+
+    private static final Metrics.Counter MEMORY_HITS = Metrics.counter("image_cache.memory_hits");
+    private static final Metrics.Histogram DISK_HITS = Metrics.histogram("image_cache.disk_read");
+    private static final Metrics.Histogram MISSES = Metrics.histogram("image_cache.miss");
+
+    private static PuzzleImageCache sInstance;
+
+    private final Context mContext;
+    private final LruCache<String, Bitmap> mMemory;
+    private final BitmapPool mPool;
+    // Guarded by itself, along with the next two
+    private final Map<Bitmap, Integer> mUsers = new IdentityHashMap<Bitmap, Integer>();
+    private final Set<Bitmap> mInMemory = Collections.newSetFromMap(new IdentityHashMap<Bitmap, Boolean>());
+    private final Set<Bitmap> mRetired = Collections.newSetFromMap(new IdentityHashMap<Bitmap, Boolean>());
+    private final File mDiskDir;
+    private final ExecutorService mDiskWriter = Executors.newSingleThreadExecutor();
+    private final ExecutorService mLoader = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, "PuzzleImageLoader");
+        }
+    });
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    // Key -> prefetch not yet finished
+    private final Map<String, Future<Bitmap>> mPending = new HashMap<String, Future<Bitmap>>();
+
+    static synchronized PuzzleImageCache get(Context context) {
+        if (sInstance == null) {
+            sInstance = new PuzzleImageCache(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private PuzzleImageCache(Context context) {
+        mContext = context;
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        // An eighth of the app's heap, as the Android bitmap caching guide suggests
+        int maxBytes = activityManager.getMemoryClass() * 1024 * 1024 / 8;
+        mMemory = new LruCache<String, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return value.getByteCount();
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, String key, Bitmap oldValue, Bitmap newValue) {
+                if (oldValue == newValue) {
+                    return;
+                }
+                boolean reusable;
+                synchronized (mUsers) {
+                    mInMemory.remove(oldValue);
+                    reusable = mRetired.remove(oldValue);
+                }
+                if (reusable) {
+                    mPool.put(oldValue);
+                }
+            }
+        };
+        // Half as much again for bitmaps waiting to be reused
+        mPool = new BitmapPool(maxBytes / 2);
+        mDiskDir = new File(context.getCacheDir(), DISK_DIR);
+        context.registerComponentCallbacks(new ComponentCallbacks2() {
+            @Override
+            public void onTrimMemory(int level) {
+                trimMemory(level);
+            }
+
+            @Override
+            public void onLowMemory() {
+                trimMemory(TRIM_MEMORY_COMPLETE);
+            }
+
+            @Override
+            public void onConfigurationChanged(Configuration newConfig) {
+            }
+        });
+    }
+
+    private void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            // We're on the list to be killed; the less we hold, the later we go
+            mPool.clear();
+            mMemory.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            mPool.clear();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) {
+            mPool.trimTo(mPool.getMaxBytes() / 2);
+        }
+        Log.d(TAG, "Trimmed for level " + level + ": " + mPool);
+    }
+
+    /**
+     * Marks {@code image} as in use, so it's never reused while it is. Call on the main thread.
+     */
+    void retain(Bitmap image) {
+        synchronized (mUsers) {
+            Integer users = mUsers.get(image);
+            mUsers.put(image, users != null ? users + 1 : 1);
+            mRetired.remove(image);
+        }
+    }
+
+    /**
+     * Undoes {@link #retain}. When nothing uses {@code image} any more, it's reused once it has also
+     * left the memory tier.
+     */
+    void release(Bitmap image) {
+        boolean reusable;
+        synchronized (mUsers) {
+            Integer users = mUsers.get(image);
+            if (users == null) {
+                return;
+            }
+            if (users > 1) {
+                mUsers.put(image, users - 1);
+                return;
+            }
+            mUsers.remove(image);
+            reusable = !mInMemory.contains(image);
+            if (!reusable) {
+                mRetired.add(image);
+            }
+        }
+        if (reusable) {
+            mPool.put(image);
+        }
+    }
+
+    /**
+     * @param imageResource raw or drawable resource holding the full image
+     * @param width         tiles across
+     * @param height        tiles down
+     * @param targetSide    longest side of the board on screen, in pixels
+     * @return an image of {@code width} by {@code height} square tiles, no larger than {@code targetSide}
+     */
+    Bitmap getBoardImage(int imageResource, int width, int height, int targetSide) {
+        String key = key(imageResource, width, height, targetSide);
+        Bitmap image = awaitPending(key);
+        if (image == null) {
+            image = load(key, imageResource, width, height, targetSide);
+        }
+        return image;
+    }
+
+    private Bitmap load(String key, int imageResource, int width, int height, int targetSide) {
+        Bitmap image = getCached(key);
+        if (image != null) {
+            return image;
+        }
+
+        long start = System.nanoTime();
+        Bitmap raw = Utils.decodeSampledBitmapFromResource(mContext.getResources(), imageResource,
+                targetSide, targetSide, OPAQUE_CONFIG, mPool);
+        return putDecoded(key, raw, width, height, targetSide, start);
+    }
+
+    /**
+     * Like {@link #getBoardImage(int, int, int, int)}, for an image outside the app such as a photo from
+     * the gallery. Only the part of it the board shows is decoded.
+     *
+     * @throws IOException if the image can't be read, for instance because permission to it lapsed
+     */
+    Bitmap getBoardImage(Uri image, int width, int height, int targetSide) throws IOException {
+        String key = key(image, width, height, targetSide);
+        Bitmap cached = getCached(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        long start = System.nanoTime();
+        Bitmap raw = Utils.decodeGridRegion(mContext.getContentResolver(), image, width, height, targetSide,
+                OPAQUE_CONFIG);
+        return putDecoded(key, raw, width, height, targetSide, start);
+    }
+
+    /**
+     * @return the board image if it's already in memory, otherwise null. Safe on the main thread.
+     */
+    Bitmap peek(int imageResource, int width, int height, int targetSide) {
+        Bitmap image = getMemory(key(imageResource, width, height, targetSide));
+        if (image != null) {
+            MEMORY_HITS.increment();
+        }
+        return image;
+    }
+
+    /**
+     * Starts preparing a board image in the background, so that it's in memory by the time it's asked for.
+     */
+    void prefetch(final int imageResource, final int width, final int height, final int targetSide) {
+        final String key = key(imageResource, width, height, targetSide);
+        synchronized (mPending) {
+            if (mMemory.get(key) != null || mPending.containsKey(key)) {
+                return;
+            }
+            FutureTask<Bitmap> task = new FutureTask<Bitmap>(new Callable<Bitmap>() {
+                @Override
+                public Bitmap call() {
+                    try {
+                        return load(key, imageResource, width, height, targetSide);
+                    } finally {
+                        synchronized (mPending) {
+                            mPending.remove(key);
+                        }
+                    }
+                }
+            });
+            mPending.put(key, task);
+            mLoader.execute(task);
+        }
+    }
+
+    /**
+     * Shows a square center crop of an image in {@code view}, from memory straight away or otherwise
+     * once it's loaded in the background. Views that are rebound in the meantime are left alone.
+     */
+    void loadThumbnail(final ImageView view, final int imageResource, final int side) {
+        final String key = key(imageResource, 1, 1, side);
+        Bitmap image = mMemory.get(key);
+        view.setTag(R.id.image, key);
+        if (image != null) {
+            MEMORY_HITS.increment();
+            view.setImageBitmap(image);
+            return;
+        }
+        view.setImageDrawable(null);
+        mLoader.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Bitmap image = load(key, imageResource, 1, 1, side);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (key.equals(view.getTag(R.id.image))) {
+                            view.setImageBitmap(image);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * @return the result of a prefetch of {@code key} in progress, or null if there is none
+     */
+    private Bitmap awaitPending(String key) {
+        Future<Bitmap> pending;
+        synchronized (mPending) {
+            pending = mPending.get(key);
+        }
+        if (pending == null) {
+            return null;
+        }
+        try {
+            return pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            Log.w(TAG, "Prefetch of " + key + " failed", e.getCause());
+            return null;
+        }
+    }
+
+    /**
+     * @return the image from memory or disk, or null if it has to be decoded
+     */
+    private Bitmap getCached(String key) {
+        Bitmap image = getMemory(key);
+        if (image != null) {
+            MEMORY_HITS.increment();
+            return image;
+        }
+
+        long start = System.nanoTime();
+        image = readDisk(new File(mDiskDir, key));
+        if (image != null) {
+            DISK_HITS.recordSince(start);
+            putMemory(key, image);
+        }
+        return image;
+    }
+
+    private Bitmap putDecoded(String key, Bitmap raw, int width, int height, int targetSide, long startNanos) {
+        Bitmap image = Utils.cropToGrid(raw, width, height, targetSide, mPool);
+        if (raw != image) {
+            mPool.put(raw);
+        }
+        MISSES.recordSince(startNanos);
+        putMemory(key, image);
+        writeDiskAsync(new File(mDiskDir, key), image);
+        return image;
+    }
+
+    private void putMemory(String key, Bitmap image) {
+        synchronized (mUsers) {
+            mInMemory.add(image);
+        }
+        mMemory.put(key, image);
+    }
+
+    /**
+     * An image handed out again mustn't be reused until it's released again, even if it's evicted first.
+     * Taking it out of the retired set in the same step as the lookup, under the lock
+     * {@code entryRemoved} takes, means an eviction either comes first and misses, or sees it in use.
+     */
+    private Bitmap getMemory(String key) {
+        synchronized (mUsers) {
+            Bitmap image = mMemory.get(key);
+            if (image != null) {
+                mRetired.remove(image);
+            }
+            return image;
+        }
+    }
+
+    long getMemoryHits() {
+        return MEMORY_HITS.get();
+    }
+
+    long getDiskHits() {
+        return DISK_HITS.getCount();
+    }
+
+    long getMisses() {
+        return MISSES.getCount();
+    }
+
+    /**
+     * @return total time spent decoding, cropping and scaling original images on misses
+     */
+    long getDecodeNanos() {
+        return MISSES.getTotalNanos();
+    }
+
+    /**
+     * @return total time spent loading images from the disk tier
+     */
+    long getDiskReadNanos() {
+        return DISK_HITS.getTotalNanos();
+    }
+
+    @Override
+    public String toString() {
+        return "memory hits " + getMemoryHits() + ", disk hits " + getDiskHits() + " (" + getDiskReadNanos() / 1000000
+                + " ms), misses " + getMisses() + " (" + getDecodeNanos() / 1000000 + " ms decoding), "
+                + mMemory.size() / 1024 + " KB in memory, " + mPool;
+    }
+
+    /**
+     * Resource ids can be reassigned between builds, so disk entries are also keyed by version.
+     */
+    private static String key(int imageResource, int width, int height, int targetSide) {
+        return "img_" + BuildConfig.VERSION_CODE + "_" + Integer.toHexString(imageResource) + "_" + width + "x"
+                + height + "_" + targetSide;
+    }
+
+    /**
+     * Photos are keyed by a 64-bit FNV-1a hash of their URI, which can be long and full of characters
+     * file names can't have.
+     */
+    private static String key(Uri image, int width, int height, int targetSide) {
+        String uri = image.toString();
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < uri.length(); i++) {
+            hash ^= uri.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return "uri_" + Long.toHexString(hash) + "_" + width + "x" + height + "_" + targetSide;
+    }
+
+    private Bitmap readDisk(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+        FileInputStream stream = null;
+        try {
+            stream = new FileInputStream(file);
+            DataInputStream in = new DataInputStream(stream);
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a puzzle image");
+            }
+            int width = in.readInt();
+            int height = in.readInt();
+            int config = in.readInt();
+            Bitmap image = mPool.get(width, height,
+                    config == CONFIG_RGB_565 ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888);
+            FileChannel channel = stream.getChannel();
+            if (channel.size() - HEADER_BYTES != image.getByteCount()) {
+                mPool.put(image);
+                throw new IOException("Truncated puzzle image");
+            }
+            MappedByteBuffer pixels = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES, image.getByteCount());
+            image.copyPixelsFromBuffer(pixels);
+            //noinspection ResultOfMethodCallIgnored
+            file.setLastModified(System.currentTimeMillis());
+            return image;
+        } catch (IOException e) {
+            Log.w(TAG, "Dropping unreadable " + file, e);
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+            return null;
+        } finally {
+            if (stream != null) {
+                try {
+                    stream.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private void writeDiskAsync(final File file, final Bitmap image) {
+        Bitmap.Config config = image.getConfig();
+        if (config != Bitmap.Config.ARGB_8888 && config != Bitmap.Config.RGB_565) {
+            return;
+        }
+        mDiskWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    writeDisk(file, image);
+                    trimDisk();
+                } catch (IOException e) {
+                    Log.w(TAG, "Couldn't cache " + file, e);
+                }
+            }
+        });
+    }
+
+    private void writeDisk(File file, Bitmap image) throws IOException {
+        if (!mDiskDir.isDirectory() && !mDiskDir.mkdirs()) {
+            throw new IOException("Couldn't create " + mDiskDir);
+        }
+        ByteBuffer pixels = ByteBuffer.allocate(image.getByteCount());
+        image.copyPixelsToBuffer(pixels);
+
+        // Write to a temporary file and rename so a reader never sees a partial image
+        File temp = new File(mDiskDir, file.getName() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(temp));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(image.getWidth());
+            out.writeInt(image.getHeight());
+            out.writeInt(image.getConfig() == Bitmap.Config.RGB_565 ? CONFIG_RGB_565 : CONFIG_ARGB_8888);
+            out.write(pixels.array(), 0, pixels.position());
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(file)) {
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+            throw new IOException("Couldn't rename " + temp);
+        }
+    }
+
+    /**
+     * Deletes the least recently used files until the disk tier fits its budget.
+     */
+    private void trimDisk() {
+        File[] files = mDiskDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= DISK_MAX_BYTES) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long lhs = a.lastModified();
+                long rhs = b.lastModified();
+                return lhs < rhs ? -1 : (lhs == rhs ? 0 : 1);
+            }
+        });
+        for (int i = 0; i < files.length && total > DISK_MAX_BYTES; i++) {
+            long length = files[i].length();
+            if (files[i].delete()) {
+                total -= length;
+            }
+        }
+    }
+}
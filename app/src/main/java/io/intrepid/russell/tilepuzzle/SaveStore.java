@@ -0,0 +1,176 @@
+package io.intrepid.russell.tilepuzzle;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+import android.util.SparseArray;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import io.intrepid.russell.tilepuzzle.core.GameSnapshot;
+import io.intrepid.russell.tilepuzzle.core.Metrics;
+
+/**
+ * Saved games, one {@link GameSnapshot} file per slot. Saves and clears take effect in memory right away
+ * and reach disk in order on a background thread, so the UI never waits on a write and never reads back
+ * stale data.
+ * <p/>
+ * Checking for a save is a file existence check. Older versions kept the game in SharedPreferences with
+ * one key per tile; that is converted to {@link #AUTOSAVE_SLOT} once, and the preferences file removed.
+ */
+class SaveStore {
+    private static final String TAG = SaveStore.class.getSimpleName();
+
+    /**
+     * Where the game in progress is kept when the app goes to the background.
+     */
+    static final int AUTOSAVE_SLOT = 0;
+
+    private static final String SAVE_DIR = "saves";
+    private static final GameSnapshot CLEARED = new GameSnapshot(2, 2, new int[]{0, 1, 2, 3}, 0, 0, new int[0]);
+
+    private static final Metrics.Histogram WRITE = Metrics.histogram("save.write");
+
+    private static SaveStore sInstance;
+
+    private final File mDir;
+    private final ExecutorService mWriter = Executors.newSingleThreadExecutor();
+    // Slot -> latest snapshot not yet known to be on disk, or CLEARED
+    private final SparseArray<GameSnapshot> mPending = new SparseArray<GameSnapshot>();
+
+    static synchronized SaveStore get(Context context) {
+        if (sInstance == null) {
+            sInstance = new SaveStore(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private SaveStore(Context context) {
+        mDir = new File(context.getFilesDir(), SAVE_DIR);
+        migrateLegacySave(context);
+    }
+
+    synchronized boolean hasSave(int slot) {
+        GameSnapshot pending = mPending.get(slot);
+        if (pending != null) {
+            return pending != CLEARED;
+        }
+        return file(slot).exists();
+    }
+
+    /**
+     * @return the game in {@code slot}, or null if there is none or it can't be read
+     */
+    synchronized GameSnapshot load(int slot) {
+        GameSnapshot pending = mPending.get(slot);
+        if (pending != null) {
+            return pending != CLEARED ? pending : null;
+        }
+        File file = file(slot);
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            return GameSnapshot.read(file);
+        } catch (IOException e) {
+            Log.w(TAG, "Discarding unreadable save " + file, e);
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+            return null;
+        }
+    }
+
+    void save(int slot, GameSnapshot snapshot) {
+        post(slot, snapshot);
+    }
+
+    void clear(int slot) {
+        post(slot, CLEARED);
+    }
+
+    private synchronized void post(final int slot, GameSnapshot snapshot) {
+        mPending.put(slot, snapshot);
+        mWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                flush(slot);
+            }
+        });
+    }
+
+    /**
+     * Writes whatever is latest for {@code slot}. Several queued saves to a slot collapse into one write.
+     */
+    private void flush(int slot) {
+        GameSnapshot snapshot;
+        synchronized (this) {
+            snapshot = mPending.get(slot);
+        }
+        if (snapshot == null) {
+            return; // An earlier flush already wrote the latest
+        }
+        File file = file(slot);
+        try {
+            if (snapshot == CLEARED) {
+                if (file.exists() && !file.delete()) {
+                    throw new IOException("Couldn't delete " + file);
+                }
+            } else {
+                if (!mDir.isDirectory() && !mDir.mkdirs()) {
+                    throw new IOException("Couldn't create " + mDir);
+                }
+                long start = System.nanoTime();
+                snapshot.write(file);
+                WRITE.recordSince(start);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Couldn't update save slot " + slot, e);
+        }
+        synchronized (this) {
+            // Keep it pending if a newer one came in while we were writing; its own flush will follow
+            if (mPending.get(slot) == snapshot) {
+                mPending.remove(slot);
+            }
+        }
+    }
+
+    private File file(int slot) {
+        return new File(mDir, "slot_" + slot + ".bin");
+    }
+
+    private void migrateLegacySave(Context context) {
+        // Look for the file first so we don't parse preferences on every cold start once migrated
+        File legacyFile = new File(new File(context.getApplicationInfo().dataDir, "shared_prefs"),
+                TileActivity.PREFS_GAME + ".xml");
+        if (!legacyFile.exists()) {
+            return;
+        }
+        SharedPreferences prefs = context.getSharedPreferences(TileActivity.PREFS_GAME, Context.MODE_PRIVATE);
+        if (prefs.contains(TileActivity.KEY_SIZE) && !file(AUTOSAVE_SLOT).exists()) {
+            int size = prefs.getInt(TileActivity.KEY_SIZE, 0);
+            int[] values = new int[prefs.getInt(TileActivity.KEY_VALUES_SIZE, 0)];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = prefs.getInt(TileActivity.KEY_VALUES + i, i);
+            }
+            try {
+                GameSnapshot snapshot = new GameSnapshot(size, size, values, prefs.getInt(TileActivity.KEY_MOVES, 0),
+                        prefs.getInt(TileActivity.KEY_IMAGE_RESOURCE, R.raw.bruce), new int[0]);
+                if (!mDir.isDirectory() && !mDir.mkdirs()) {
+                    throw new IOException("Couldn't create " + mDir);
+                }
+                snapshot.write(file(AUTOSAVE_SLOT));
+            } catch (IllegalArgumentException e) {
+                Log.w(TAG, "Dropping invalid legacy save", e);
+            } catch (IOException e) {
+                Log.e(TAG, "Couldn't migrate legacy save", e);
+                return; // Try again next time
+            }
+        }
+        prefs.edit().clear().commit();
+        //noinspection ResultOfMethodCallIgnored
+        legacyFile.delete();
+    }
+}
@@ -0,0 +1,263 @@
+package io.intrepid.russell.tilepuzzle;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+import android.util.SparseArray;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs an activity's background work on one small bounded pool, and hands results back on the main
+ * thread only while the activity is started.
+ * <p/>
+ * Work goes into numbered channels. Starting something on a channel supersedes whatever was there: the
+ * old job is cancelled, or dropped from the queue if it hadn't started, and its result is thrown away
+ * even if it was already on its way. Each submission bumps the channel's generation, and results are
+ * delivered only if their generation is still current, so the last request always wins regardless of
+ * which job finishes first.
+ * <p/>
+ * Call everything except {@link Job#isCancelled()} from the main thread.
+ */
+class TaskScheduler {
+    private static final String TAG = TaskScheduler.class.getSimpleName();
+
+    private static final int THREADS = 2;
+    private static final int QUEUE_CAPACITY = 8;
+
+    /**
+     * Background work with a result for the main thread.
+     */
+    abstract static class Job<T> {
+        private volatile boolean mCancelled;
+        private Future<?> mFuture;
+
+        /**
+         * Runs on a pool thread. Long jobs should check {@link #isCancelled()} now and then.
+         *
+         * @return the result for {@link #onResult}, or null to deliver nothing
+         */
+        protected abstract T run() throws Exception;
+
+        /**
+         * Runs on the main thread while the activity is started, if this job is still current.
+         */
+        protected abstract void onResult(T result);
+
+        /**
+         * Runs instead of {@link #onResult} if {@link #run()} threw, under the same conditions. The
+         * failure has already been logged; override this to undo whatever was waiting on the result.
+         */
+        protected void onFailure(Throwable error) {
+        }
+
+        /**
+         * Called once when the job is superseded or cancelled, on the main thread. Use it to stop work
+         * that doesn't poll {@link #isCancelled()}.
+         */
+        protected void onCancel() {
+        }
+
+        final boolean isCancelled() {
+            return mCancelled;
+        }
+    }
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final ThreadPoolExecutor mExecutor;
+    private final SparseArray<Object> mCurrent = new SparseArray<Object>(); // Channel -> Job or Runnable
+    private final SparseArray<Integer> mGenerations = new SparseArray<Integer>();
+    private final List<Runnable> mHeld = new ArrayList<Runnable>(); // Results that arrived while stopped
+    private boolean mStarted;
+    private boolean mShutDown;
+
+    TaskScheduler() {
+        mExecutor = new ThreadPoolExecutor(THREADS, THREADS, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(QUEUE_CAPACITY), new ThreadFactory() {
+            private int mCount;
+
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, TAG + " #" + ++mCount);
+            }
+        });
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Runs {@code job} in the background, superseding anything on {@code channel}.
+     */
+    <T> void submit(final int channel, final Job<T> job) {
+        if (mShutDown) {
+            return;
+        }
+        final int generation = supersede(channel);
+        mCurrent.put(channel, job);
+        try {
+            job.mFuture = mExecutor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    if (job.mCancelled) {
+                        return;
+                    }
+                    final T result;
+                    try {
+                        result = job.run();
+                    } catch (InterruptedException e) {
+                        return;
+                    } catch (final Throwable e) {
+                        // Errors too: an OutOfMemoryError would otherwise vanish into the Future
+                        Log.e(TAG, "Job on channel " + channel + " failed", e);
+                        if (!job.mCancelled) {
+                            post(channel, generation, new Runnable() {
+                                @Override
+                                public void run() {
+                                    job.onFailure(e);
+                                }
+                            });
+                        }
+                        return;
+                    }
+                    if (result == null || job.mCancelled) {
+                        return;
+                    }
+                    post(channel, generation, new Runnable() {
+                        @Override
+                        public void run() {
+                            job.onResult(result);
+                        }
+                    });
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            Log.e(TAG, "Dropped job on channel " + channel, e);
+            mCurrent.remove(channel);
+        }
+    }
+
+    /**
+     * Runs {@code action} on the main thread after {@code delayMillis}, superseding anything on
+     * {@code channel}. No thread waits in the meantime.
+     */
+    void postDelayed(final int channel, final Runnable action, long delayMillis) {
+        if (mShutDown) {
+            return;
+        }
+        final int generation = supersede(channel);
+        Runnable delayed = new Runnable() {
+            @Override
+            public void run() {
+                deliver(channel, generation, action);
+            }
+        };
+        mCurrent.put(channel, delayed);
+        mHandler.postDelayed(delayed, delayMillis);
+    }
+
+    /**
+     * Cancels whatever is on {@code channel}; its result will never be delivered.
+     */
+    void cancel(int channel) {
+        supersede(channel);
+    }
+
+    /**
+     * @return true if something on {@code channel} hasn't delivered yet
+     */
+    boolean isPending(int channel) {
+        return mCurrent.get(channel) != null;
+    }
+
+    void onStart() {
+        mStarted = true;
+        List<Runnable> held = new ArrayList<Runnable>(mHeld);
+        mHeld.clear();
+        for (Runnable runnable : held) {
+            runnable.run();
+        }
+    }
+
+    void onStop() {
+        mStarted = false;
+    }
+
+    /**
+     * Cancels everything and stops the pool; call from {@code onDestroy()}.
+     */
+    void shutdown() {
+        mShutDown = true;
+        for (int i = 0; i < mCurrent.size(); i++) {
+            supersede(mCurrent.keyAt(i));
+        }
+        mHeld.clear();
+        mExecutor.shutdownNow();
+    }
+
+    /**
+     * Bumps {@code channel}'s generation and cancels what was there.
+     *
+     * @return the new generation
+     */
+    private int supersede(int channel) {
+        Object current = mCurrent.get(channel);
+        mCurrent.remove(channel);
+        if (current instanceof Job) {
+            Job<?> job = (Job<?>) current;
+            job.mCancelled = true;
+            if (job.mFuture != null && job.mFuture.cancel(true)) {
+                // A cancelled job that hadn't started would hold its queue slot until a worker got to it,
+                // so enough quick supersedes while both threads are busy would fill the queue
+                mExecutor.purge();
+            }
+            job.onCancel();
+        } else if (current instanceof Runnable) {
+            mHandler.removeCallbacks((Runnable) current);
+        }
+        int generation = mGenerations.get(channel, 0) + 1;
+        mGenerations.put(channel, generation);
+        return generation;
+    }
+
+    /**
+     * Hands {@code action} to the main thread, to {@link #deliver} there.
+     */
+    private void post(final int channel, final int generation, final Runnable action) {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                deliver(channel, generation, action);
+            }
+        });
+    }
+
+    private void deliver(final int channel, final int generation, final Runnable action) {
+        if (mShutDown || mGenerations.get(channel, 0) != generation) {
+            return; // Superseded while in flight
+        }
+        if (!mStarted) {
+            mHeld.add(new Runnable() {
+                @Override
+                public void run() {
+                    deliver(channel, generation, action);
+                }
+            });
+            return;
+        }
+        mCurrent.remove(channel);
+        action.run();
+    }
+}
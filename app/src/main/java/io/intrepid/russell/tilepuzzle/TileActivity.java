@@ -3,54 +3,150 @@ package io.intrepid.russell.tilepuzzle;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.graphics.Bitmap;
-import android.os.AsyncTask;
+import android.net.Uri;
 import android.os.Bundle;
 import android.preference.PreferenceManager;
 import android.support.v7.app.AlertDialog;
 import android.support.v7.app.AppCompatActivity;
-import android.support.v7.widget.GridLayoutManager;
-import android.support.v7.widget.RecyclerView;
-import android.view.LayoutInflater;
+import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
-import android.view.ViewGroup;
-import android.widget.ImageView;
 import android.widget.TextView;
+import android.widget.Toast;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import io.intrepid.russell.tilepuzzle.core.Board;
+import io.intrepid.russell.tilepuzzle.core.BoardGenerator;
+import io.intrepid.russell.tilepuzzle.core.DistanceTable;
+import io.intrepid.russell.tilepuzzle.core.GameSnapshot;
+import io.intrepid.russell.tilepuzzle.core.Heuristic;
+import io.intrepid.russell.tilepuzzle.core.HintEngine;
+import io.intrepid.russell.tilepuzzle.core.ManhattanHeuristic;
+import io.intrepid.russell.tilepuzzle.core.Metrics;
+import io.intrepid.russell.tilepuzzle.core.MoveLog;
+import io.intrepid.russell.tilepuzzle.core.ParallelSolver;
+import io.intrepid.russell.tilepuzzle.core.PatternDatabase;
+import io.intrepid.russell.tilepuzzle.core.PatternDatabaseHeuristic;
+import io.intrepid.russell.tilepuzzle.core.ReductionSolver;
+import io.intrepid.russell.tilepuzzle.core.Solution;
 
 public class TileActivity extends AppCompatActivity {
     private static final String TAG = TileActivity.class.getSimpleName();
 
+    /**
+     * Only read when migrating games saved by older versions; see {@link SaveStore}.
+     */
     public static final String PREFS_GAME = "io.intrepid.russell.tilepuzzle.game";
     public static final String KEY_IMAGE_RESOURCE = "image_resource";
+    /**
+     * Image outside the app, such as a photo from the gallery; takes precedence over the resource
+     */
+    public static final String KEY_IMAGE_URI = "image_uri";
+    /**
+     * Board width when it was always square; only read when migrating old saves
+     */
     public static final String KEY_SIZE = "size";
+    public static final String KEY_WIDTH = "width";
+    public static final String KEY_HEIGHT = "height";
     public static final String KEY_VALUES = "values";
     public static final String KEY_VALUES_SIZE = "values_size";
     public static final String KEY_MOVES = "moves";
+    public static final String KEY_HISTORY = "history";
+    /**
+     * {@link System#nanoTime()} when the app launch that led here began, to time the first frame
+     */
+    public static final String KEY_LAUNCH_NANOS = "launch_nanos";
+
+    private static final long SOLUTION_STEP_MILLIS = 250;
+    // Long solutions from big boards play faster, down to a step per frame, to finish in about this long
+    private static final long SOLUTION_PLAY_MILLIS = 60000;
+    private static final long MIN_SOLUTION_STEP_MILLIS = 16;
+    private static final long REPLAY_STEP_MILLIS = 150;
+    private static final String PATTERN_DATABASE_DIR = "pattern_databases";
+    // Beyond 5x5 the pattern databases get too large for a phone, so bigger boards get a near-optimal
+    // solution instead
+    private static final int MAX_OPTIMAL_TILES = 25;
+    // Deep 4x5 and 5x5 positions can take the optimal search far longer than anyone will wait, so after
+    // this long they get a near-optimal answer too
+    private static final long OPTIMAL_BUDGET_MILLIS = 5000;
+    // How long a new game shows the finished picture before it is shuffled
+    private static final long BEGIN_DELAY_MILLIS = 2000;
+
+    // Channels on mScheduler; starting work on one supersedes what was there
+    private static final int CHANNEL_BOARD = 0;
+    private static final int CHANNEL_BEGIN = 1;
+    private static final int CHANNEL_SOLVE = 2;
+    private static final int CHANNEL_DUMP = 3;
+    private static final int CHANNEL_HINT = 4;
+    private static final int CHANNEL_DISTANCES = 5;
 
-    private RecyclerView mTileGrid;
-    private TileAdapter mTileAdapter;
+    private static final long OVERLAY_REFRESH_MILLIS = 500;
+
+    private static final Metrics.Histogram START_TO_BOARD = Metrics.histogram("tile.start_to_board");
+    private static final Metrics.Histogram RESUME_FIRST_FRAME = Metrics.histogram("launch.resume_first_frame");
+    private static final Metrics.Histogram PREPARE_BOARD = Metrics.histogram("tile.prepare_board");
+    private static final Metrics.Histogram SAVE = Metrics.histogram("tile.save_on_stop");
+    private static final Metrics.Histogram SOLVE = Metrics.histogram("tile.solve");
+    private static final Metrics.Histogram HINT = Metrics.histogram("tile.hint");
+    private static final Metrics.Counter MOVES = Metrics.counter("tile.moves");
+
+    private BoardView mBoardView;
+    private Game mGame;
     private TextView mStatusView;
-    private int mSize;
+    private TextView mOverlayView;
+    private long mCreateNanos; // Until the first board is shown, then 0
+    private final TaskScheduler mScheduler = new TaskScheduler();
+    private volatile HintEngine mHintEngine; // For the current board size, made on the first hint
+    private final BoardGenerator mBoardGenerator = new BoardGenerator();
+    private int mWidth;
+    private int mHeight;
     private int mImageResource;
+    private String mImageUri; // Null for bundled images
+    private int mMoveMetric;
     private boolean mLaunchWithSaveInstanceState;
     private boolean mLaunchWithSaveData;
+    private boolean mRestoring; // Started restoring in onCreate, so the first onStart needn't
+
+    private final Runnable mRefreshOverlay = new Runnable() {
+        @Override
+        public void run() {
+            mOverlayView.setText(Metrics.report().trim());
+            mOverlayView.postDelayed(this, OVERLAY_REFRESH_MILLIS);
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        setContentView(R.layout.activity_tile);
-
+        mCreateNanos = System.nanoTime();
         mImageResource = getIntent().getIntExtra(KEY_IMAGE_RESOURCE, R.raw.bruce);
-        mSize = getIntent().getIntExtra(KEY_SIZE, 4); // If we can't read anything, default is medium
-
-        mTileGrid = (RecyclerView) findViewById(R.id.tile_grid);
-        mStatusView = (TextView) findViewById(R.id.status);
-
+        mImageUri = getIntent().getStringExtra(KEY_IMAGE_URI);
+        mWidth = getIntent().getIntExtra(KEY_WIDTH, 4); // If we can't read anything, default is medium
+        mHeight = getIntent().getIntExtra(KEY_HEIGHT, mWidth);
         mLaunchWithSaveInstanceState = savedInstanceState != null;
         mLaunchWithSaveData = hasSaveData(this);
+        if (mLaunchWithSaveData && !mLaunchWithSaveInstanceState) {
+            // Read the save and decode its image while the layout inflates; the result waits for onStart
+            restoreAsync();
+            mRestoring = true;
+        }
+
+        setContentView(R.layout.activity_tile);
+        long launchNanos = getIntent().getLongExtra(KEY_LAUNCH_NANOS, 0);
+        if (launchNanos != 0 && !mLaunchWithSaveInstanceState) {
+            Utils.recordFirstFrame(this, RESUME_FIRST_FRAME, launchNanos);
+        }
+        mMoveMetric = PreferenceManager.getDefaultSharedPreferences(this)
+                .getInt(Utils.PREF_MOVE_METRIC, MoveLog.SINGLE_TILE_METRIC);
+
+        mBoardView = (BoardView) findViewById(R.id.board);
+        mStatusView = (TextView) findViewById(R.id.status);
+        mOverlayView = (TextView) findViewById(R.id.debug_overlay);
     }
 
     @Override
@@ -59,25 +155,82 @@ public class TileActivity extends AppCompatActivity {
         return true;
     }
 
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        Game game = mGame;
+        boolean playing = game != null && game.mStarted && !game.mSolved && !game.mAnimating;
+        menu.findItem(R.id.menu_undo).setEnabled(playing && game.mLog.canUndo());
+        menu.findItem(R.id.menu_redo).setEnabled(playing && game.mLog.canRedo());
+        menu.findItem(R.id.menu_replay).setVisible(game != null && game.mSolved && game.mLog.canUndo());
+        menu.findItem(R.id.menu_hint).setEnabled(playing);
+        menu.findItem(R.id.menu_debug_overlay).setVisible(BuildConfig.DEBUG).setChecked(isOverlayShown());
+        menu.findItem(R.id.menu_dump_metrics).setVisible(BuildConfig.DEBUG);
+        return super.onPrepareOptionsMenu(menu);
+    }
+
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
         switch (item.getItemId()) {
             case R.id.menu_reset:
                 initializeGridAsync();
                 break;
+            case R.id.menu_solve:
+                solveAsync();
+                break;
+            case R.id.menu_hint:
+                hintAsync();
+                break;
+            case R.id.menu_undo:
+                if (mGame != null) {
+                    mGame.undo();
+                }
+                break;
+            case R.id.menu_redo:
+                if (mGame != null) {
+                    mGame.redo();
+                }
+                break;
+            case R.id.menu_replay:
+                if (mGame != null) {
+                    mGame.replay();
+                }
+                break;
             case R.id.menu_difficulty:
                 new AlertDialog.Builder(this)
                         .setTitle(R.string.difficulty)
                         .setItems(R.array.difficulties, new DialogInterface.OnClickListener() {
                             @Override
                             public void onClick(DialogInterface dialog, int which) {
-                                int[] difficultyValues = getResources().getIntArray(R.array.difficulty_values);
-                                mSize = difficultyValues[which];
+                                mWidth = getResources().getIntArray(R.array.difficulty_widths)[which];
+                                mHeight = getResources().getIntArray(R.array.difficulty_heights)[which];
                                 PreferenceManager.getDefaultSharedPreferences(TileActivity.this).edit().putInt(Utils.PREF_DIFFICULTY, which).apply();
                                 initializeGridAsync();
                             }
                         }).create().show();
                 break;
+            case R.id.menu_move_metric:
+                new AlertDialog.Builder(this)
+                        .setTitle(R.string.menu_move_metric)
+                        .setSingleChoiceItems(R.array.move_metrics, mMoveMetric, new DialogInterface.OnClickListener() {
+                            @Override
+                            public void onClick(DialogInterface dialog, int which) {
+                                mMoveMetric = which;
+                                PreferenceManager.getDefaultSharedPreferences(TileActivity.this).edit().putInt(Utils.PREF_MOVE_METRIC, which).apply();
+                                if (mGame != null && mGame.mStarted) {
+                                    mGame.updateStatus();
+                                }
+                                dialog.dismiss();
+                            }
+                        }).create().show();
+                break;
+            case R.id.menu_debug_overlay:
+                boolean show = !isOverlayShown();
+                PreferenceManager.getDefaultSharedPreferences(this).edit().putBoolean(Utils.PREF_DEBUG_OVERLAY, show).apply();
+                showOverlay(show);
+                break;
+            case R.id.menu_dump_metrics:
+                dumpMetrics();
+                break;
             case android.R.id.home:
             case R.id.menu_exit:
                 clearSaveData(this);
@@ -91,36 +244,32 @@ public class TileActivity extends AppCompatActivity {
     @Override
     protected void onStop() {
         super.onStop();
-        SharedPreferences.Editor editor = getSaveData(this).edit().clear();
-        if (mTileAdapter != null && !mTileAdapter.mSolved) {
+        mScheduler.onStop();
+        showOverlay(false);
+        cancelSolve();
+        long start = System.nanoTime();
+        SaveStore store = SaveStore.get(this);
+        if (mGame != null && !mGame.mSolved) {
             // Only save if we have a puzzle in progress
-            editor.putInt(KEY_IMAGE_RESOURCE, mImageResource);
-            editor.putInt(KEY_SIZE, mSize);
-            if (mTileAdapter != null) {
-                editor.putInt(KEY_MOVES, mTileAdapter.mMoves);
-                editor.putInt(KEY_VALUES_SIZE, mTileAdapter.mValues.length);
-                for (int i = 0; i < mTileAdapter.mValues.length; i++) {
-                    editor.putInt(KEY_VALUES + i, mTileAdapter.mValues[i]);
-                }
-            }
+            store.save(SaveStore.AUTOSAVE_SLOT, new GameSnapshot(mGame.mBoard, mImageResource, mImageUri,
+                    mGame.mLog.toArray()));
+        } else {
+            store.clear(SaveStore.AUTOSAVE_SLOT);
         }
-        editor.apply();
+        SAVE.recordSince(start);
     }
 
     @Override
     protected void onStart() {
         super.onStart();
-        if (mLaunchWithSaveData && !mLaunchWithSaveInstanceState) {
-            // Something is saved, so read data
-            SharedPreferences prefs = getSaveData(this);
-            mImageResource = prefs.getInt(KEY_IMAGE_RESOURCE, mImageResource);
-            mSize = prefs.getInt(KEY_SIZE, mSize);
-            int moves = prefs.getInt(KEY_MOVES, 0);
-            int[] values = new int[prefs.getInt(KEY_VALUES_SIZE, 0)];
-            for (int i = 0; i < values.length; i++) {
-                values[i] = prefs.getInt(KEY_VALUES + i, i);
-            }
-            initializeGridAsync(moves, values);
+        mScheduler.onStart();
+        showOverlay(BuildConfig.DEBUG && PreferenceManager.getDefaultSharedPreferences(this)
+                .getBoolean(Utils.PREF_DEBUG_OVERLAY, false));
+        if (mRestoring) {
+            mRestoring = false; // Already on its way from onCreate
+        } else if (mLaunchWithSaveData && !mLaunchWithSaveInstanceState) {
+            // Back from the background: something is saved, so read it again
+            restoreAsync();
         }
     }
 
@@ -128,10 +277,13 @@ public class TileActivity extends AppCompatActivity {
     protected void onSaveInstanceState(Bundle outState) {
         super.onSaveInstanceState(outState);
         outState.putInt(KEY_IMAGE_RESOURCE, mImageResource);
-        outState.putInt(KEY_SIZE, mSize);
-        if (mTileAdapter != null) {
-            outState.putInt(KEY_MOVES, mTileAdapter.mMoves);
-            outState.putIntArray(KEY_VALUES, mTileAdapter.mValues);
+        outState.putString(KEY_IMAGE_URI, mImageUri);
+        outState.putInt(KEY_WIDTH, mWidth);
+        outState.putInt(KEY_HEIGHT, mHeight);
+        if (mGame != null) {
+            outState.putInt(KEY_MOVES, mGame.mBoard.getMoves());
+            outState.putIntArray(KEY_VALUES, mGame.mBoard.toArray());
+            outState.putIntArray(KEY_HISTORY, mGame.mLog.toArray());
         }
     }
 
@@ -139,11 +291,14 @@ public class TileActivity extends AppCompatActivity {
     protected void onRestoreInstanceState(Bundle savedInstanceState) {
         super.onRestoreInstanceState(savedInstanceState);
         mImageResource = savedInstanceState.getInt(KEY_IMAGE_RESOURCE, mImageResource);
-        mSize = savedInstanceState.getInt(KEY_SIZE, mSize);
+        mImageUri = savedInstanceState.getString(KEY_IMAGE_URI);
+        mWidth = savedInstanceState.getInt(KEY_WIDTH, mWidth);
+        mHeight = savedInstanceState.getInt(KEY_HEIGHT, mHeight);
         int moves = savedInstanceState.getInt(KEY_MOVES, 0);
         int[] values = savedInstanceState.getIntArray(KEY_VALUES);
+        int[] history = savedInstanceState.getIntArray(KEY_HISTORY);
         if (values != null) {
-            initializeGridAsync(moves, values);
+            initializeGridAsync(moves, values, history != null ? history : new int[0]);
         }
     }
 
@@ -155,295 +310,786 @@ public class TileActivity extends AppCompatActivity {
         }
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mScheduler.shutdown();
+        if (mGame != null) {
+            PuzzleImageCache.get(this).release(mGame.mImage);
+        }
+    }
+
     @Override
     public void onBackPressed() {
-        if (mTileAdapter != null && mTileAdapter.mSolved) {
+        if (mGame != null && mGame.mSolved) {
             // If we finished, we should return to the menu here instead of just exiting.
             startActivity(new Intent(this, MainActivity.class));
         }
         super.onBackPressed();
     }
 
-    private static SharedPreferences getSaveData(Context context) {
-        return context.getSharedPreferences(PREFS_GAME, MODE_PRIVATE);
-    }
-
     public static boolean hasSaveData(Context context) {
-        return getSaveData(context).contains(KEY_SIZE); // Pick an arbitrary key and check that it's there
+        return SaveStore.get(context).hasSave(SaveStore.AUTOSAVE_SLOT);
     }
 
     public static void clearSaveData(Context context) {
-        getSaveData(context).edit().clear().apply();
+        SaveStore.get(context).clear(SaveStore.AUTOSAVE_SLOT);
+    }
+
+    /**
+     * Visible for benchmarks
+     */
+    Game getGame() {
+        return mGame;
     }
 
-    private void animateInit() {
-        new AsyncTask<Integer, Void, Void>() {
+    private boolean isOverlayShown() {
+        return mOverlayView.getVisibility() == View.VISIBLE;
+    }
+
+    /**
+     * Shows or hides the metrics overlay, which refreshes itself while shown
+     */
+    private void showOverlay(boolean show) {
+        mOverlayView.removeCallbacks(mRefreshOverlay);
+        mOverlayView.setVisibility(show ? View.VISIBLE : View.GONE);
+        if (show) {
+            mRefreshOverlay.run();
+        }
+    }
+
+    /**
+     * Writes {@link Metrics#report()} to app-specific external storage, where it can be pulled without
+     * root, falling back to internal storage if there is none.
+     */
+    private void dumpMetrics() {
+        File dir = getExternalFilesDir(null);
+        if (dir == null) {
+            dir = getFilesDir();
+        }
+        final File file = new File(dir, "metrics-" + System.currentTimeMillis() + ".txt");
+        final String report = Metrics.report();
+        mScheduler.submit(CHANNEL_DUMP, new TaskScheduler.Job<File>() {
             @Override
-            protected Void doInBackground(Integer... params) {
-                int seconds = params[0];
+            protected File run() {
                 try {
-                    Thread.sleep(seconds * 1000);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
+                    FileOutputStream out = new FileOutputStream(file);
+                    try {
+                        out.write(report.getBytes("UTF-8"));
+                    } finally {
+                        out.close();
+                    }
+                    return file;
+                } catch (IOException e) {
+                    Log.e(TAG, "Couldn't write " + file, e);
+                    return null;
                 }
-                return null;
             }
 
             @Override
-            protected void onPostExecute(Void result) {
-                mTileAdapter.begin();
+            protected void onResult(File result) {
+                Toast.makeText(TileActivity.this, getString(R.string.metrics_dumped, result.getPath()),
+                        Toast.LENGTH_LONG).show();
             }
-        }.execute(2);
+        });
     }
 
     private void initializeGridAsync() {
-        initializeGridAsync(-1, null);
+        initializeGridAsync(-1, null, null);
     }
 
-    private void initializeGridAsync(final int moves, final int[] values) {
-        new AsyncTask<Integer, Void, Bitmap[]>() {
+    /**
+     * Prepares the board image in the background, then starts a game on it; or starts it right away if
+     * the image is already in memory. A newer call supersedes an older one still in flight, so only the
+     * last board asked for is ever shown.
+     */
+    private void initializeGridAsync(int moves, int[] values, int[] history) {
+        supersedeBoard();
+        BoardJob job = new BoardJob(moves, values, history);
+        Bitmap warm = mImageUri == null
+                ? PuzzleImageCache.get(this).peek(mImageResource, mWidth, mHeight, job.mSide) : null;
+        if (warm != null) {
+            // Usually prefetched while the player was choosing, so start now and never show "Initializing"
+            mScheduler.cancel(CHANNEL_BOARD);
+            job.onResult(warm);
+        } else {
+            mScheduler.submit(CHANNEL_BOARD, job);
+        }
+    }
 
+    /**
+     * Reads the saved game and prepares its image in the background, then resumes it, or starts a new
+     * game if the save can't be read. Called before the layout is inflated, so both happen at once.
+     */
+    private void restoreAsync() {
+        supersedeBoard();
+        final SaveStore store = SaveStore.get(this);
+        mScheduler.submit(CHANNEL_BOARD, new BoardJob(-1, null, null) {
             @Override
-            protected Bitmap[] doInBackground(Integer... params) {
-                int imageResource = params[0];
-                int size = params[1];
-
-                // TODO cache (picasso) as in MainActivity (This will fix arbitrary size problem)
-                Bitmap raw = Utils.decodeSampledBitmapFromResource(getResources(), imageResource, 500, 500);
-                Bitmap[] tiles = generateTiles(raw, size);
-                return tiles;
+            protected Bitmap run() {
+                GameSnapshot snapshot = store.load(SaveStore.AUTOSAVE_SLOT);
+                if (snapshot != null) {
+                    restore(snapshot);
+                }
+                return super.run();
             }
+        });
+    }
 
-            @Override
-            protected void onPostExecute(Bitmap[] tiles) {
-                TileAdapter adapter;
-                if (moves >= 0) {
-                    adapter = new TileAdapter(tiles, moves, values);
-                } else {
-                    adapter = new TileAdapter(tiles);
-                }
-                mTileGrid.setLayoutManager(new GridLayoutManager(TileActivity.this, mSize));
-                mTileGrid.setAdapter(mTileAdapter = adapter);
-                if (moves < 0) {
-                    animateInit();
+    private void supersedeBoard() {
+        cancelSolve();
+        mScheduler.cancel(CHANNEL_HINT);
+        mScheduler.cancel(CHANNEL_BEGIN); // Don't shuffle a board that is about to be replaced
+    }
+
+    /**
+     * Prepares the image for a board in the background, then starts a game on it: the given position, or
+     * a new game if {@code moves} is negative.
+     */
+    private class BoardJob extends TaskScheduler.Job<Bitmap> {
+        final int mSide = Utils.getBoardSide(TileActivity.this);
+        private final PuzzleImageCache mCache = PuzzleImageCache.get(TileActivity.this);
+        // Written by restore() on the pool thread before the result is handed over, if restoring
+        private int mJobImageResource = mImageResource;
+        private String mJobImageUri = mImageUri;
+        private int mJobWidth = mWidth;
+        private int mJobHeight = mHeight;
+        private int mMoves;
+        private int[] mValues;
+        private int[] mHistory;
+        private boolean mPhotoFailed;
+
+        BoardJob(int moves, int[] values, int[] history) {
+            mMoves = moves;
+            mValues = values;
+            mHistory = history;
+        }
+
+        /**
+         * Switches this job to the saved game
+         */
+        void restore(GameSnapshot snapshot) {
+            mJobImageResource = snapshot.getImageId();
+            mJobImageUri = snapshot.getImageUri();
+            mJobWidth = snapshot.getWidth();
+            mJobHeight = snapshot.getHeight();
+            mMoves = snapshot.getMoves();
+            mValues = snapshot.getValues();
+            mHistory = snapshot.getHistory();
+        }
+
+        @Override
+        protected Bitmap run() {
+            long start = System.nanoTime();
+            Bitmap image = null;
+            if (mJobImageUri != null) {
+                try {
+                    image = mCache.getBoardImage(Uri.parse(mJobImageUri), mJobWidth, mJobHeight, mSide);
+                } catch (IOException e) {
+                    Log.w(TAG, "Couldn't load " + mJobImageUri, e);
+                } catch (SecurityException e) {
+                    // A restored game whose permission to the photo has lapsed
+                    Log.w(TAG, "No longer allowed to read " + mJobImageUri, e);
                 }
+                mPhotoFailed = image == null;
             }
-        }.execute(mImageResource, mSize);
+            if (image == null) {
+                image = mCache.getBoardImage(mJobImageResource, mJobWidth, mJobHeight, mSide);
+            }
+            PREPARE_BOARD.recordSince(start);
+            Log.d(TAG, "image cache: " + mCache);
+            return image;
+        }
 
+        @Override
+        protected void onResult(Bitmap image) {
+            mImageResource = mJobImageResource;
+            mImageUri = mPhotoFailed ? null : mJobImageUri;
+            mWidth = mJobWidth;
+            mHeight = mJobHeight;
+            if (mPhotoFailed) {
+                Toast.makeText(TileActivity.this, R.string.photo_failed, Toast.LENGTH_LONG).show();
+            }
+            // Retain before releasing, as a new game on the same picture shares the old one's image
+            mCache.retain(image);
+            if (mGame != null) {
+                mCache.release(mGame.mImage);
+            }
+            if (mMoves >= 0) {
+                mGame = new Game(image, mMoves, mValues, mHistory);
+            } else {
+                mGame = new Game(image);
+            }
+            mGame.attach();
+            if (mCreateNanos != 0) {
+                START_TO_BOARD.recordSince(mCreateNanos);
+                mCreateNanos = 0;
+            }
+            loadDistancesAsync(mWidth, mHeight);
+            if (mMoves < 0) {
+                final Game game = mGame;
+                mScheduler.postDelayed(CHANNEL_BEGIN, new Runnable() {
+                    @Override
+                    public void run() {
+                        game.begin();
+                    }
+                }, BEGIN_DELAY_MILLIS);
+            }
+        }
     }
 
-    private static Bitmap cropSquare(Bitmap bitmap) {
-        int width = bitmap.getWidth();
-        int height = bitmap.getHeight();
-        if (width == height) return bitmap; // short-circuit if we're already square
+    /**
+     * Loads the exact distance table for small boards, after which their hints, solutions and distance
+     * to the goal are instant.
+     */
+    private void loadDistancesAsync(final int width, final int height) {
+        if (!DistanceTable.isSupported(width, height) || DistanceTables.peek(width, height) != null) {
+            return;
+        }
+        final Context context = getApplicationContext();
+        mScheduler.submit(CHANNEL_DISTANCES, new TaskScheduler.Job<DistanceTable>() {
+            @Override
+            protected DistanceTable run() {
+                return DistanceTables.load(context, width, height);
+            }
 
-        int min = Math.min(width, height);
+            @Override
+            protected void onResult(DistanceTable table) {
+                if (mGame != null && !mGame.mAnimating) {
+                    mGame.updateStatus();
+                }
+            }
+        });
+    }
 
-        return Bitmap.createBitmap(bitmap, (width - min) / 2, (height - min) / 2, min, min);
+    private void solveAsync() {
+        final Game game = mGame;
+        if (game == null || !game.mStarted || game.mSolved || game.mAnimating) {
+            return;
+        }
+        game.mAnimating = true;
+        DistanceTable table = game.getDistanceTable();
+        if (table != null) {
+            long start = System.nanoTime();
+            Solution solution = table.solve(game.mBoard);
+            SOLVE.recordSince(start);
+            game.play(solution);
+            return;
+        }
+        mStatusView.setText(R.string.solving);
+        mScheduler.submit(CHANNEL_SOLVE, new SolveJob(game));
     }
 
-    private static Bitmap[] generateTiles(Bitmap bitmap, int size) {
-        bitmap = cropSquare(bitmap);
-        int tileSide = bitmap.getWidth() / size;
-        Bitmap[] bitmaps = new Bitmap[size * size];
-        for (int i = 0; i < size; i++) {
-            for (int j = 0; j < size; j++) {
-                int index = j * size + i % size;
-                bitmaps[index] = Bitmap.createBitmap(bitmap, i * tileSide, j * tileSide, tileSide, tileSide);
+    /**
+     * Highlights the tile to move next: straight away if the board has a distance table or the position
+     * is already in the hint table, which it is while the player follows earlier hints, otherwise after a
+     * search.
+     */
+    private void hintAsync() {
+        final Game game = mGame;
+        if (game == null || !game.mStarted || game.mSolved || game.mAnimating) {
+            return;
+        }
+        long start = System.nanoTime();
+        DistanceTable table = game.getDistanceTable();
+        if (table != null) {
+            game.showHint(table.bestDirection(game.mBoard));
+            HINT.recordSince(start);
+            return;
+        }
+        HintEngine engine = mHintEngine;
+        if (engine != null && engine.getWidth() == mWidth && engine.getHeight() == mHeight) {
+            int direction = engine.getKnownHint(game.mBoard);
+            if (direction >= 0) {
+                HINT.recordSince(start);
+                game.showHint(direction);
+                return;
             }
         }
-        return bitmaps;
+        mStatusView.setText(R.string.finding_hint);
+        mScheduler.submit(CHANNEL_HINT, new HintJob(game, start));
     }
 
-    class TileAdapter extends RecyclerView.Adapter<TileAdapter.ViewHolder> {
-
-        final int mMissingValue;
-        final int[] mValues;
-        final Bitmap[] mTiles;
+    private void cancelSolve() {
+        mScheduler.cancel(CHANNEL_SOLVE);
+        mScheduler.cancel(CHANNEL_HINT);
+        if (mGame != null && mGame.mAnimating) {
+            // Playback checks this flag before each step, so this also stops an animation in progress
+            mGame.mAnimating = false;
+            if (mGame.mReplaying) {
+                mGame.finishReplay();
+            }
+            mGame.updateStatus();
+        }
+    }
 
-        boolean mStarted = false;
-        boolean mSolved = false;
-        int mMoves = 0;
+    /**
+     * Solves a snapshot of the board with pattern databases, which are generated into app storage the
+     * first time each board size is solved. The search runs on every core. Boards too big for that, and
+     * positions it can't finish within {@link #OPTIMAL_BUDGET_MILLIS}, get a near-optimal solution
+     * instead, and the player is told so.
+     */
+    private class SolveJob extends TaskScheduler.Job<Solution> {
+        private final Game mTarget;
+        private final Board mBoard;
+        private final File mDatabaseDir;
+        private volatile ParallelSolver mSolver;
+        private boolean mOptimal = true; // Written in run(), read in onResult() after the hand-off
 
-        class ViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
-            ImageView image;
+        SolveJob(Game game) {
+            mTarget = game;
+            mBoard = game.mBoard.copy();
+            mDatabaseDir = new File(getFilesDir(), PATTERN_DATABASE_DIR);
+        }
 
-            ViewHolder(View itemView) {
-                super(itemView);
-                image = (ImageView) itemView.findViewById(R.id.image);
+        @Override
+        protected void onCancel() {
+            ParallelSolver solver = mSolver;
+            if (solver != null) {
+                solver.cancel();
+            }
+        }
 
-                itemView.setOnClickListener(this);
+        @Override
+        protected Solution run() throws InterruptedException {
+            if (mBoard.getTileCount() > MAX_OPTIMAL_TILES) {
+                long start = System.nanoTime();
+                Solution solution = solveNearOptimal(mBoard);
+                SOLVE.recordSince(start);
+                mOptimal = false;
+                return solution;
+            }
+            ParallelSolver.HeuristicFactory factory = loadHeuristics(mDatabaseDir, mBoard.getWidth(),
+                    mBoard.getHeight());
+            mSolver = new ParallelSolver(mBoard, factory, Runtime.getRuntime().availableProcessors());
+            if (isCancelled()) {
+                return null; // Cancelled before the solver existed to be stopped
             }
+            long start = System.nanoTime();
+            Solution solution = mSolver.solve(OPTIMAL_BUDGET_MILLIS);
+            if (solution == null && mSolver.isTimedOut()) {
+                solution = solveNearOptimal(mBoard);
+                mOptimal = false;
+            }
+            SOLVE.recordSince(start);
+            return solution;
+        }
 
-            @Override
-            public void onClick(View v) {
-                int position = getAdapterPosition();
-                int size = mSize;
-
-                // Check if we're next to empty block
-                if (position >= size) {
-                    // We're not in the first row, so there's a square above;
-                    int above = position - size;
-                    if (mValues[above] == mMissingValue) {
-                        swap(position, above);
-                        return;
-                    }
+        @Override
+        protected void onResult(Solution solution) {
+            if (mTarget == mGame) {
+                if (!mOptimal) {
+                    Toast.makeText(TileActivity.this, R.string.solution_not_optimal, Toast.LENGTH_LONG).show();
                 }
-                if (position < size * (size - 1)) {
-                    // We're not in the last row, so there's a square below;
-                    int below = position + size;
-                    if (mValues[below] == mMissingValue) {
-                        swap(position, below);
-                        return;
-                    }
+                mTarget.play(solution);
+            }
+        }
+
+        @Override
+        protected void onFailure(Throwable error) {
+            if (mTarget == mGame) {
+                // Give the board back to the player rather than leave it locked on "Solving"
+                mTarget.mAnimating = false;
+                mTarget.updateStatus();
+                Toast.makeText(TileActivity.this, R.string.solve_failed, Toast.LENGTH_LONG).show();
+            }
+        }
+    }
+
+    /**
+     * Solves {@code board} by reduction, for boards the optimal solver can't handle. Takes milliseconds.
+     */
+    private static Solution solveNearOptimal(Board board) {
+        ReductionSolver solver = new ReductionSolver(board);
+        Solution solution = solver.solve();
+        Log.d(TAG, "Near-optimal solution: " + solution.length() + " moves, at most "
+                + (solution.length() - solver.getLowerBound()) + " over the lower bound of "
+                + solver.getLowerBound() + ", in " + solution.getElapsedNanos() / 1000 + " us");
+        return solution;
+    }
+
+    /**
+     * Makes heuristics from the pattern databases that solving and hints share, generating any that are
+     * missing, or from Manhattan distance if they can't be had. Blocks, so call it in the background.
+     */
+    private static ParallelSolver.HeuristicFactory loadHeuristics(File databaseDir, final int width,
+                                                                  final int height) throws InterruptedException {
+        try {
+            final PatternDatabase[] databases = PatternDatabases.load(databaseDir, width, height);
+            return new ParallelSolver.HeuristicFactory() {
+                @Override
+                public Heuristic newHeuristic() {
+                    return new PatternDatabaseHeuristic(databases);
                 }
-                if (position % size > 0) {
-                    // We're not in the first column, so there's a square to the left
-                    int left = position - 1;
-                    if (mValues[left] == mMissingValue) {
-                        swap(position, left);
-                        return;
-                    }
+            };
+        } catch (IOException e) {
+            Log.w(TAG, "Pattern databases unavailable, using Manhattan distance", e);
+            return new ParallelSolver.HeuristicFactory() {
+                @Override
+                public Heuristic newHeuristic() {
+                    return new ManhattanHeuristic(width, height);
                 }
-                if (position % size < size - 1) {
-                    // We're not in the last column, so there's a square to the right
-                    int right = position + 1;
-                    if (mValues[right] == mMissingValue) {
-                        swap(position, right);
-                        return;
-                    }
+            };
+        }
+    }
+
+    /**
+     * Finds the best move for a snapshot of the board through the hint table, which this sets up for
+     * the board's size the first time. On boards too big for that, or when the search runs out of time,
+     * the first move of a near-optimal solution.
+     */
+    private class HintJob extends TaskScheduler.Job<Integer> {
+        private final Game mTarget;
+        private final Board mBoard;
+        private final long mStartNanos;
+        private final File mDatabaseDir;
+        private volatile HintEngine mEngine;
+        private boolean mOptimal = true; // Written in run(), read in onResult() after the hand-off
+
+        HintJob(Game game, long startNanos) {
+            mTarget = game;
+            mBoard = game.mBoard.copy();
+            mStartNanos = startNanos;
+            mDatabaseDir = new File(getFilesDir(), PATTERN_DATABASE_DIR);
+        }
+
+        @Override
+        protected void onCancel() {
+            HintEngine engine = mEngine;
+            if (engine != null) {
+                engine.cancel();
+            }
+        }
+
+        @Override
+        protected Integer run() throws InterruptedException {
+            if (mBoard.getTileCount() > MAX_OPTIMAL_TILES) {
+                mOptimal = false;
+                return nearOptimalHint();
+            }
+            int width = mBoard.getWidth();
+            int height = mBoard.getHeight();
+            HintEngine engine = mHintEngine;
+            if (engine == null || engine.getWidth() != width || engine.getHeight() != height) {
+                engine = new HintEngine(loadHeuristics(mDatabaseDir, width, height), width, height,
+                        Runtime.getRuntime().availableProcessors(), HintEngine.DEFAULT_CAPACITY);
+                mHintEngine = engine;
+            }
+            mEngine = engine;
+            if (isCancelled()) {
+                return null;
+            }
+            int direction = engine.hint(mBoard, OPTIMAL_BUDGET_MILLIS);
+            if (direction == -3) {
+                // Out of time
+                mOptimal = false;
+                return nearOptimalHint();
+            }
+            return direction >= 0 ? direction : null;
+        }
+
+        private Integer nearOptimalHint() {
+            Solution solution = solveNearOptimal(mBoard);
+            return solution.length() > 0 ? solution.getDirection(0) : null;
+        }
+
+        @Override
+        protected void onResult(Integer direction) {
+            if (mTarget != mGame) {
+                return;
+            }
+            mTarget.updateStatus();
+            // Only if the player hasn't moved on in the meantime
+            if (mTarget.mBoard.getHash() == mBoard.getHash() && mTarget.mStarted && !mTarget.mSolved
+                    && !mTarget.mAnimating) {
+                HINT.recordSince(mStartNanos);
+                if (!mOptimal) {
+                    mTarget.warnHintNotOptimal();
                 }
+                mTarget.showHint(direction);
+            }
+        }
 
+        @Override
+        protected void onFailure(Throwable error) {
+            if (mTarget == mGame) {
+                mTarget.updateStatus(); // Clears "Finding a hint"
+                Toast.makeText(TileActivity.this, R.string.hint_failed, Toast.LENGTH_LONG).show();
             }
         }
+    }
 
-        TileAdapter(Bitmap[] tiles, int moves, int[] values) {
-            setHasStableIds(true); // This gives us animation when moving tiles
+    /**
+     * The game in progress: its board, move log and state. The board is drawn by {@link BoardView}, which
+     * is told about each change.
+     */
+    class Game implements BoardView.OnTileClickListener {
 
-            mTiles = tiles;
-            mValues = new int[mSize * mSize];
-            System.arraycopy(values, 0, mValues, 0, mValues.length);
-            mMoves = moves;
+        final Board mBoard;
+        final Bitmap mImage; // Shared by every tile
+        final MoveLog mLog;
+
+        boolean mStarted = false;
+        boolean mSolved = false;
+        boolean mAnimating = false; // Solving or replaying, so taps are ignored
+        boolean mReplaying = false;
+        boolean mWarnedHintNotOptimal = false; // Hints come often, so this is only said once a game
 
-            mMissingValue = mSize * mSize - 1;
+        Game(Bitmap image, int moves, int[] values, int[] history) {
+            this(image, Board.create(mWidth, mHeight, values), new MoveLog(history));
+            mBoard.setMoves(moves);
 
             mStarted = true;
             checkSolved();
-            if (mSolved) {
-                mStatusView.setText(mStatusView.getResources().getString(R.string.solved, mMoves));
-            } else {
-                mStatusView.setText(mStatusView.getResources().getQuantityString(R.plurals.moves, mMoves, mMoves));
-            }
+            updateStatus();
         }
 
-        TileAdapter(Bitmap[] tiles) {
-            setHasStableIds(true); // This gives us animation when moving tiles
+        Game(Bitmap image) {
+            this(image, Board.create(mWidth, mHeight), new MoveLog());
+        }
 
-            mTiles = tiles;
-            mValues = new int[mSize * mSize];
-            for (int i = 0; i < mSize * mSize; i++) {
-                mValues[i] = i;
-            }
+        private Game(Bitmap image, Board board, MoveLog log) {
+            mImage = image;
+            mBoard = board;
+            mLog = log;
+        }
 
-            mMissingValue = mSize * mSize - 1;
+        /**
+         * Shows this game on the board view
+         */
+        void attach() {
+            mBoardView.setBoard(mBoard, mImage);
+            mBoardView.setPlaying(mStarted && !mSolved);
+            mBoardView.setOnTileClickListener(this);
         }
 
         private void begin() {
-            initializePuzzle();
+            mBoardGenerator.shuffle(mBoard);
             mStarted = true;
-            mStatusView.setText(mStatusView.getResources().getQuantityString(R.plurals.moves, mMoves, mMoves));
-            notifyDataSetChanged();
+            updateStatus();
+            mBoardView.setPlaying(true);
+            mBoardView.onBoardChanged();
         }
 
         @Override
-        public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
-            View itemView = LayoutInflater.from(parent.getContext()).inflate(R.layout.grid_item, parent, false);
-            return new ViewHolder(itemView);
+        public void onTileClick(int position) {
+            if (mAnimating || !mStarted || mSolved) {
+                return;
+            }
+            slide(position);
         }
 
-        @Override
-        public void onBindViewHolder(ViewHolder holder, int position) {
-            int value = mValues[position];
-            if (mStarted && !mSolved && value == mMissingValue) {
-                holder.itemView.setClickable(false);
-                holder.itemView.setBackgroundColor(holder.itemView.getResources().getColor(android.R.color.transparent));
-                holder.image.setImageResource(android.R.color.transparent);
-            } else {
-                holder.itemView.setClickable(mStarted && !mSolved);
-                holder.itemView.setBackgroundColor(holder.itemView.getResources().getColor(mStarted && !mSolved ? R.color.tile_border : android.R.color.transparent));
-                holder.image.setImageBitmap(mTiles[value]);
+        /**
+         * Moves the blank one step in {@code direction}, recording it in the log
+         *
+         * @return false if the blank is against that edge
+         */
+        boolean move(int direction) {
+            int blank = mBoard.getBlankPosition();
+            if (!mBoard.moveBlank(direction)) {
+                return false;
             }
-            int padding = (mStarted && !mSolved) ? holder.itemView.getResources().getDimensionPixelSize(R.dimen.tile_border_width) : 0;
-            holder.itemView.setPadding(padding, padding, padding, padding);
+            mLog.record(direction);
+            onMoved(blank);
+            return true;
         }
 
-        @Override
-        public int getItemCount() {
-            return mValues.length;
+        /**
+         * Slides every tile from {@code position} up to the blank one step toward it, as a single update
+         *
+         * @return false if {@code position} isn't in the blank's row or column
+         */
+        boolean slide(int position) {
+            int direction = mBoard.directionToward(position);
+            if (direction < 0) {
+                return false;
+            }
+            int blank = mBoard.getBlankPosition();
+            int count = mBoard.slide(position);
+            for (int i = 0; i < count; i++) {
+                mLog.record(direction);
+            }
+            onMoved(blank);
+            return true;
         }
 
-        @Override
-        public long getItemId(int position) {
-            return mValues[position];
+        /**
+         * Called after tiles slid in a straight line toward {@code previousBlank}
+         */
+        private void onMoved(int previousBlank) {
+            MOVES.increment();
+            mBoardView.onSlid(previousBlank);
+            checkSolved();
+            updateStatus();
         }
 
-        private void swap(int position1, int position2) {
-            swap(position1, position2, true);
+        /**
+         * @return the moves so far, counted by the chosen metric
+         */
+        private int countMoves() {
+            if (mMoveMetric == MoveLog.SINGLE_TILE_METRIC) {
+                return mBoard.getMoves();
+            }
+            // Games saved before the log existed carry moves it doesn't know about
+            int unlogged = mBoard.getMoves() - mLog.getMoveCount(MoveLog.SINGLE_TILE_METRIC);
+            return unlogged + mLog.getMoveCount(mMoveMetric);
         }
 
         /**
-         * @param click true if this was called from user interaction rather than during initialization
+         * Called after the whole layout changed at once
          */
-        private void swap(int position1, int position2, boolean click) {
-            int value1 = mValues[position1];
-            int value2 = mValues[position2];
-            mValues[position1] = value2;
-            mValues[position2] = value1;
-            if (click) {
-                notifyDataSetChanged();
-                mMoves++;
-                checkSolved();
-                if (mSolved) {
-                    mStatusView.setText(mStatusView.getResources().getString(R.string.solved, mMoves));
-                } else {
-                    mStatusView.setText(mStatusView.getResources().getQuantityString(R.plurals.moves, mMoves, mMoves));
+        private void onBoardChanged() {
+            mBoardView.onBoardChanged();
+            checkSolved();
+            updateStatus();
+        }
+
+        private void updateStatus() {
+            int moves = countMoves();
+            if (mSolved) {
+                mStatusView.setText(mStatusView.getResources().getString(R.string.solved, moves));
+            } else {
+                String status = mStatusView.getResources().getQuantityString(R.plurals.moves, moves, moves);
+                DistanceTable table = getDistanceTable();
+                if (table != null && mStarted) {
+                    int distance = table.distance(mBoard);
+                    status = getString(R.string.status_separator, status, mStatusView.getResources()
+                            .getQuantityString(R.plurals.moves_from_optimal, distance, distance));
                 }
+                mStatusView.setText(status);
             }
+            supportInvalidateOptionsMenu();
         }
 
-        private void checkSolved() {
-            for (int i = 0; i < mValues.length; i++) {
-                int value = mValues[i];
-                if (value != i) {
-                    return;
-                }
+        /**
+         * Takes back the last move; under the multi-tile metric that is the whole last slide
+         */
+        private void undo() {
+            if (mAnimating || mSolved || !mLog.canUndo()) {
+                return;
             }
-            mSolved = true;
-            notifyDataSetChanged();
+            int blank = mBoard.getBlankPosition();
+            int direction = mLog.getLastDirection();
+            do {
+                mLog.undo(mBoard);
+            } while (mMoveMetric == MoveLog.MULTI_TILE_METRIC && mLog.getLastDirection() == direction);
+            onMoved(blank);
         }
 
-        private void initializePuzzle() {
-            mMoves = 0;
+        private void redo() {
+            if (mAnimating || mSolved || !mLog.canRedo()) {
+                return;
+            }
+            int blank = mBoard.getBlankPosition();
+            int direction = mLog.getNextDirection();
+            do {
+                mLog.redo(mBoard);
+            } while (mMoveMetric == MoveLog.MULTI_TILE_METRIC && mLog.getNextDirection() == direction);
+            onMoved(blank);
+        }
 
-            // TODO it would be nice to do this randomly and check if the shuffle is valid
-            // However the math for this is a pain. Instead we just reverse order and do
-            // one more swap if necessary based on parity.
-            int numTiles = mValues.length - 1; // Not including empty!
-            for (int i = 0; i < numTiles; i++) {
-                int newValue = numTiles - 1 - i;
-                if (newValue < 0) {
-                    newValue += numTiles;
+        /**
+         * Winds a finished game back to its first position and plays every move again
+         */
+        private void replay() {
+            if (!mSolved || mAnimating || !mLog.canUndo()) {
+                return;
+            }
+            while (mLog.undo(mBoard)) {
+                // Straight back to the start
+            }
+            mSolved = false;
+            mAnimating = true;
+            mReplaying = true;
+            mBoardView.setPlaying(true);
+            onBoardChanged();
+            mBoardView.postDelayed(new Runnable() {
+                @Override
+                public void run() {
+                    if (!mAnimating || mGame != Game.this) {
+                        return;
+                    }
+                    int blank = mBoard.getBlankPosition();
+                    mLog.redo(mBoard);
+                    if (mLog.canRedo()) {
+                        onMoved(blank);
+                        mBoardView.postDelayed(this, REPLAY_STEP_MILLIS);
+                    } else {
+                        mAnimating = false;
+                        finishReplay();
+                    }
                 }
-                mValues[i] = newValue;
+            }, REPLAY_STEP_MILLIS);
+        }
+
+        /**
+         * Jumps to the end of a replay, leaving the game finished as it was before
+         */
+        private void finishReplay() {
+            while (mLog.redo(mBoard)) {
+                // Straight to the end
             }
-            if (mSize % 2 == 0) {
-                swap(numTiles - 2, numTiles - 1, false);
+            mReplaying = false;
+            onBoardChanged();
+        }
+
+        /**
+         * Animates {@code solution} one move at a time, ignoring taps until it finishes
+         */
+        private void play(final Solution solution) {
+            final long stepMillis = Math.max(MIN_SOLUTION_STEP_MILLIS,
+                    Math.min(SOLUTION_STEP_MILLIS, SOLUTION_PLAY_MILLIS / Math.max(1, solution.length())));
+            mBoardView.post(new Runnable() {
+                int mStep = 0;
+
+                @Override
+                public void run() {
+                    if (!mAnimating || mGame != Game.this) {
+                        return;
+                    }
+                    if (mStep < solution.length()) {
+                        move(solution.getDirection(mStep++));
+                    }
+                    if (mStep < solution.length()) {
+                        mBoardView.postDelayed(this, stepMillis);
+                    } else {
+                        mAnimating = false;
+                    }
+                }
+            });
+        }
+
+        /**
+         * @return the exact distance table for this board if it has one and it's loaded, otherwise null
+         */
+        DistanceTable getDistanceTable() {
+            return DistanceTables.peek(mBoard.getWidth(), mBoard.getHeight());
+        }
+
+        /**
+         * Says, once per game, that hints are coming from the near-optimal solver
+         */
+        private void warnHintNotOptimal() {
+            if (!mWarnedHintNotOptimal) {
+                mWarnedHintNotOptimal = true;
+                Toast.makeText(TileActivity.this, R.string.hint_not_optimal, Toast.LENGTH_LONG).show();
             }
+        }
+
+        /**
+         * Highlights the tile that moving the blank in {@code direction} would slide
+         */
+        private void showHint(int direction) {
+            mBoardView.setHint(mBoard.neighbor(direction));
+        }
 
+        private void checkSolved() {
+            if (!mSolved && mBoard.isSolved()) {
+                mSolved = true;
+                mBoardView.setPlaying(false);
+            }
         }
 
     }
 
 }
-
-
@@ -1,43 +1,60 @@
 package io.intrepid.russell.tilepuzzle;
 
+import android.app.Activity;
+import android.content.ContentResolver;
+import android.content.Context;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.util.DisplayMetrics;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import io.intrepid.russell.tilepuzzle.core.Metrics;
+import io.intrepid.russell.tilepuzzle.core.SampleSize;
 
 public class Utils {
     public static final String PREF_DIFFICULTY = "difficulty";
+    public static final String PREF_MOVE_METRIC = "move_metric";
+    public static final String PREF_DEBUG_OVERLAY = "debug_overlay";
+    /**
+     * Position of the last bundled image picked, which is the likeliest to be picked next
+     */
+    public static final String PREF_LAST_IMAGE = "last_image";
+
+    private static final Metrics.Histogram DECODE = Metrics.histogram("image.decode");
+    private static final Metrics.Histogram CROP = Metrics.histogram("image.crop");
+    private static final Metrics.Histogram DECODE_REGION = Metrics.histogram("image.decode_region");
 
     private Utils() {
     }
 
-    // cf https://developer.android.com/training/displaying-bitmaps/load-bitmap.html
     public static int calculateInSampleSize(
             BitmapFactory.Options options, int reqWidth, int reqHeight) {
-        // Raw height and width of image
-        final int height = options.outHeight;
-        final int width = options.outWidth;
-        int inSampleSize = 1;
-
-        if (height > reqHeight || width > reqWidth) {
-
-            final int halfHeight = height / 2;
-            final int halfWidth = width / 2;
-
-            // Calculate the largest inSampleSize value that is a power of 2 and keeps both
-            // height and width larger than the requested height and width.
-            while ((halfHeight / inSampleSize) > reqHeight
-                    && (halfWidth / inSampleSize) > reqWidth) {
-                inSampleSize *= 2;
-            }
-        }
-
-        return inSampleSize;
+        return SampleSize.calculate(options.outWidth, options.outHeight, reqWidth, reqHeight);
     }
 
-    // cf https://developer.android.com/training/displaying-bitmaps/load-bitmap.html
-    public static Bitmap decodeSampledBitmapFromResource(Resources res, int resId,
-                                                         int reqWidth, int reqHeight) {
+    /**
+     * cf https://developer.android.com/training/displaying-bitmaps/load-bitmap.html
+     *
+     * @param opaqueConfig format for JPEGs, which have no alpha, such as {@link Bitmap.Config#RGB_565}
+     *                     for half the memory; anything else is decoded as ARGB_8888
+     * @param pool         where to find a bitmap to decode into
+     */
+    public static Bitmap decodeSampledBitmapFromResource(Resources res, int resId, int reqWidth, int reqHeight,
+                                                         Bitmap.Config opaqueConfig, BitmapPool pool) {
 
+        long start = System.nanoTime();
         // First decode with inJustDecodeBounds=true to check dimensions
         final BitmapFactory.Options options = new BitmapFactory.Options();
         options.inJustDecodeBounds = true;
@@ -45,9 +62,191 @@ public class Utils {
 
         // Calculate inSampleSize
         options.inSampleSize = calculateInSampleSize(options, reqWidth, reqHeight);
+        options.inPreferredConfig = configFor(options, opaqueConfig);
+
+        // Decode bitmap with inSampleSize set, into a pooled bitmap if there's one to fit
+        options.inJustDecodeBounds = false;
+        Bitmap reused = pool.prepareDecode(options);
+        Bitmap bitmap;
+        try {
+            bitmap = BitmapFactory.decodeResource(res, resId, options);
+        } catch (IllegalArgumentException e) {
+            pool.decodeFailed(options, reused);
+            bitmap = BitmapFactory.decodeResource(res, resId, options);
+        }
+        DECODE.recordSince(start);
+        return bitmap;
+    }
+
+    private static Bitmap.Config configFor(BitmapFactory.Options bounds, Bitmap.Config opaqueConfig) {
+        return "image/jpeg".equals(bounds.outMimeType) ? opaqueConfig : Bitmap.Config.ARGB_8888;
+    }
 
-        // Decode bitmap with inSampleSize set
+    /**
+     * Decodes only the centered part of the image at {@code uri} that a {@code width} by {@code height}
+     * grid of square tiles will show, subsampled to no less than {@code targetSide} on its longer side.
+     * The rest of the image is never decoded, so even a very large photo takes little memory and time.
+     * <p/>
+     * The file is read through a descriptor when the provider has one, so the decoder seeks rather than
+     * buffering the whole file. Formats the region decoder can't handle are decoded whole, subsampled.
+     *
+     * @param opaqueConfig format for JPEGs, as for {@link #decodeSampledBitmapFromResource}
+     * @return a bitmap for {@link #cropToGrid} to bring to its exact size
+     */
+    public static Bitmap decodeGridRegion(ContentResolver resolver, Uri uri, int width, int height,
+                                          int targetSide, Bitmap.Config opaqueConfig) throws IOException {
+        long start = System.nanoTime();
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        InputStream in = open(resolver, uri);
+        try {
+            BitmapFactory.decodeStream(in, null, options); // Reads no further than the header
+        } finally {
+            in.close();
+        }
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            throw new IOException("Not an image: " + uri);
+        }
+
+        // The largest region of the grid's shape that fits, centered
+        int sourceTile = Math.min(options.outWidth / width, options.outHeight / height);
+        if (sourceTile == 0) {
+            throw new IOException("Image is too small: " + uri);
+        }
+        int cropWidth = sourceTile * width;
+        int cropHeight = sourceTile * height;
+        int left = (options.outWidth - cropWidth) / 2;
+        int top = (options.outHeight - cropHeight) / 2;
+        Rect region = new Rect(left, top, left + cropWidth, top + cropHeight);
+
+        int targetTile = Math.max(1, targetSide / Math.max(width, height));
         options.inJustDecodeBounds = false;
-        return BitmapFactory.decodeResource(res, resId, options);
+        options.inSampleSize = SampleSize.calculate(cropWidth, cropHeight, targetTile * width, targetTile * height);
+        options.inPreferredConfig = configFor(options, opaqueConfig);
+
+        Bitmap bitmap = decodeRegion(resolver, uri, region, options);
+        if (bitmap == null) {
+            options.inSampleSize = SampleSize.calculate(options.outWidth, options.outHeight,
+                    targetTile * width, targetTile * height);
+            in = open(resolver, uri);
+            try {
+                bitmap = BitmapFactory.decodeStream(in, null, options);
+            } finally {
+                in.close();
+            }
+        }
+        if (bitmap == null) {
+            throw new IOException("Couldn't decode " + uri);
+        }
+        DECODE_REGION.recordSince(start);
+        return bitmap;
+    }
+
+    private static InputStream open(ContentResolver resolver, Uri uri) throws IOException {
+        InputStream in = resolver.openInputStream(uri);
+        if (in == null) {
+            throw new FileNotFoundException("No content at " + uri);
+        }
+        return in;
+    }
+
+    /**
+     * @return the region, or null if the image is in a format the region decoder doesn't support
+     */
+    private static Bitmap decodeRegion(ContentResolver resolver, Uri uri, Rect region,
+                                       BitmapFactory.Options options) throws IOException {
+        ParcelFileDescriptor descriptor = null;
+        InputStream in = null;
+        try {
+            try {
+                descriptor = resolver.openFileDescriptor(uri, "r");
+            } catch (FileNotFoundException e) {
+                // Some providers can only stream
+            }
+            BitmapRegionDecoder decoder;
+            try {
+                if (descriptor != null) {
+                    decoder = BitmapRegionDecoder.newInstance(descriptor.getFileDescriptor(), false);
+                } else {
+                    // Without a descriptor the decoder buffers the stream itself
+                    in = open(resolver, uri);
+                    decoder = BitmapRegionDecoder.newInstance(in, false);
+                }
+            } catch (FileNotFoundException e) {
+                throw e;
+            } catch (IOException e) {
+                return null;
+            }
+            try {
+                return decoder.decodeRegion(region, options);
+            } finally {
+                decoder.recycle();
+            }
+        } finally {
+            // Only now: older decoders read through the descriptor until they are recycled
+            if (descriptor != null) {
+                descriptor.close();
+            }
+            if (in != null) {
+                in.close();
+            }
+        }
+    }
+
+    /**
+     * Records the time from {@code startNanos} until {@code activity} first draws, in {@code histogram}.
+     * Call after {@code setContentView}.
+     */
+    public static void recordFirstFrame(Activity activity, final Metrics.Histogram histogram, final long startNanos) {
+        final View decor = activity.getWindow().getDecorView();
+        decor.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                decor.getViewTreeObserver().removeOnPreDrawListener(this);
+                histogram.recordSince(startNanos);
+                return true;
+            }
+        });
+    }
+
+    /**
+     * @return the side in pixels of the square board, which fills the short side of the screen less margins
+     */
+    public static int getBoardSide(Context context) {
+        Resources res = context.getResources();
+        DisplayMetrics metrics = res.getDisplayMetrics();
+        int margin = res.getDimensionPixelSize(R.dimen.activity_horizontal_margin);
+        return Math.min(metrics.widthPixels, metrics.heightPixels) - 2 * margin;
+    }
+
+    /**
+     * Crops the center of {@code bitmap} to the shape of a {@code width} by {@code height} grid of square
+     * tiles, and scales it down so its longer side is at most {@code maxSide}, rounded down so every tile
+     * is a whole number of pixels.
+     *
+     * @param pool where to find a bitmap for the result
+     * @return {@code bitmap} itself if it already fits, otherwise a new bitmap
+     */
+    public static Bitmap cropToGrid(Bitmap bitmap, int width, int height, int maxSide, BitmapPool pool) {
+        int sourceWidth = bitmap.getWidth();
+        int sourceHeight = bitmap.getHeight();
+        // Largest tile that fits the source, then no larger than the target allows
+        int sourceTile = Math.min(sourceWidth / width, sourceHeight / height);
+        int tile = Math.max(1, Math.min(sourceTile, maxSide / Math.max(width, height)));
+        int resultWidth = tile * width;
+        int resultHeight = tile * height;
+        if (sourceWidth == resultWidth && sourceHeight == resultHeight) return bitmap; // already there
+
+        long start = System.nanoTime();
+        Bitmap result = pool.get(resultWidth, resultHeight, bitmap.getConfig() != null
+                ? bitmap.getConfig() : Bitmap.Config.ARGB_8888);
+        int cropWidth = sourceTile * width;
+        int cropHeight = sourceTile * height;
+        int left = (sourceWidth - cropWidth) / 2;
+        int top = (sourceHeight - cropHeight) / 2;
+        new Canvas(result).drawBitmap(bitmap, new Rect(left, top, left + cropWidth, top + cropHeight),
+                new Rect(0, 0, resultWidth, resultHeight), new Paint(Paint.FILTER_BITMAP_FLAG));
+        CROP.recordSince(start);
+        return result;
     }
 }
@@ -0,0 +1,388 @@
+package io.intrepid.russell.tilepuzzle.core;
+
+/**
+ * Sliding puzzle state with no Android dependencies. Positions are row-major, and the tile that
+ * belongs at position {@code i} has value {@code i}. The highest value is the missing (blank) tile.
+ * <p/>
+ * Boards of up to 16 tiles are packed 4 bits per tile into a single {@code long}; larger boards
+ * use one byte per tile. Moves are O(1) and never allocate.
+ */
+public abstract class Board {
+
+    // Directions the blank can move in. These fit in 2 bits and opposite pairs differ by 1.
+    public static final int UP = 0;
+    public static final int DOWN = 1;
+    public static final int LEFT = 2;
+    public static final int RIGHT = 3;
+
+    final int mWidth;
+    final int mHeight;
+    final int mMissingValue;
+    final Zobrist mZobrist;
+
+    int mBlank;
+    int mMisplaced;
+    int mMoves;
+    long mHash;
+
+    Board(int width, int height) {
+        mWidth = width;
+        mHeight = height;
+        mMissingValue = width * height - 1;
+        mZobrist = Zobrist.forTileCount(width * height);
+    }
+
+    /**
+     * @return a solved board of the given dimensions
+     */
+    public static Board create(int width, int height) {
+        Board board = allocate(width, height);
+        long hash = 0;
+        for (int i = 0; i <= board.mMissingValue; i++) {
+            board.put(i, i);
+            hash ^= board.mZobrist.key(i, i);
+        }
+        board.mBlank = board.mMissingValue;
+        board.mHash = hash;
+        return board;
+    }
+
+    /**
+     * @param values row-major tile values, which must be a permutation of {@code 0..width*height-1}
+     */
+    public static Board create(int width, int height, int[] values) {
+        Board board = allocate(width, height);
+        board.setValues(values);
+        return board;
+    }
+
+    private static Board allocate(int width, int height) {
+        if (width < 2 || height < 2) {
+            throw new IllegalArgumentException("Board must be at least 2x2 but was " + width + "x" + height);
+        }
+        int count = width * height;
+        if (count <= LongBoard.MAX_TILES) {
+            return new LongBoard(width, height);
+        } else if (count <= ByteBoard.MAX_TILES) {
+            return new ByteBoard(width, height);
+        }
+        throw new IllegalArgumentException("Board has too many tiles: " + width + "x" + height);
+    }
+
+    /**
+     * @return the value of the tile at {@code position}
+     */
+    public abstract int get(int position);
+
+    abstract void put(int position, int value);
+
+    /**
+     * @return an independent copy of this board, including its move count
+     */
+    public abstract Board copy();
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public int getTileCount() {
+        return mMissingValue + 1;
+    }
+
+    public int getMissingValue() {
+        return mMissingValue;
+    }
+
+    public int getBlankPosition() {
+        return mBlank;
+    }
+
+    public int getMoves() {
+        return mMoves;
+    }
+
+    public void setMoves(int moves) {
+        mMoves = moves;
+    }
+
+    /**
+     * @return the number of positions (including the blank) that don't hold their own tile
+     */
+    public int getMisplacedCount() {
+        return mMisplaced;
+    }
+
+    public boolean isSolved() {
+        return mMisplaced == 0;
+    }
+
+    /**
+     * @return a 64-bit Zobrist hash of the tiles, kept up to date as they move; equal boards of the same
+     * size always have equal hashes, and different ones almost never do
+     */
+    public long getHash() {
+        return mHash;
+    }
+
+    /**
+     * Replaces every tile. The move count is left alone.
+     */
+    public void setValues(int[] values) {
+        int count = mMissingValue + 1;
+        if (values.length != count) {
+            throw new IllegalArgumentException("Expected " + count + " values but got " + values.length);
+        }
+        boolean[] seen = new boolean[count];
+        int misplaced = 0;
+        long hash = 0;
+        for (int i = 0; i < count; i++) {
+            int value = values[i];
+            if (value < 0 || value >= count || seen[value]) {
+                throw new IllegalArgumentException("Not a permutation: duplicate or out of range value " + value);
+            }
+            seen[value] = true;
+            put(i, value);
+            hash ^= mZobrist.key(value, i);
+            if (value == mMissingValue) {
+                mBlank = i;
+            }
+            if (value != i) {
+                misplaced++;
+            }
+        }
+        mMisplaced = misplaced;
+        mHash = hash;
+    }
+
+    /**
+     * Copies the tiles into {@code out}, which must hold at least {@link #getTileCount()} values.
+     */
+    public int[] toArray(int[] out) {
+        for (int i = 0; i <= mMissingValue; i++) {
+            out[i] = get(i);
+        }
+        return out;
+    }
+
+    public int[] toArray() {
+        return toArray(new int[mMissingValue + 1]);
+    }
+
+    /**
+     * @return true if the blank can be moved back to its home position, i.e. if the parity of the tile
+     * inversions (plus the blank's distance from the bottom row, on even width boards) is even
+     */
+    public boolean isSolvable() {
+        return isSolvable(toArray(), mWidth, mHeight, new int[mMissingValue + 2]);
+    }
+
+    /**
+     * @param tree scratch space for {@link #inversions(int[], int, int[])}
+     */
+    static boolean isSolvable(int[] values, int width, int height, int[] tree) {
+        int missingValue = values.length - 1;
+        long inversions = inversions(values, missingValue, tree);
+        if (width % 2 == 0) {
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] == missingValue) {
+                    inversions += height - 1 - i / width;
+                    break;
+                }
+            }
+        }
+        return inversions % 2 == 0;
+    }
+
+    /**
+     * Counts pairs of tiles (ignoring the blank) that are in the wrong order, in O(n log n) with a
+     * Fenwick tree of how many smaller values have been seen to the right.
+     *
+     * @param tree scratch space of at least {@code values.length + 1}, which is cleared first
+     */
+    static long inversions(int[] values, int missingValue, int[] tree) {
+        int size = values.length;
+        for (int i = 0; i <= size; i++) {
+            tree[i] = 0;
+        }
+        long inversions = 0;
+        for (int i = size - 1; i >= 0; i--) {
+            int value = values[i];
+            if (value == missingValue) {
+                continue;
+            }
+            for (int j = value; j > 0; j -= j & -j) {
+                inversions += tree[j];
+            }
+            for (int j = value + 1; j <= size; j += j & -j) {
+                tree[j]++;
+            }
+        }
+        return inversions;
+    }
+
+    /**
+     * @return true if the tile at {@code position} is directly next to the blank
+     */
+    public boolean canMove(int position) {
+        if (position < 0 || position > mMissingValue) {
+            return false;
+        }
+        int blank = mBlank;
+        if (position == blank - mWidth || position == blank + mWidth) {
+            return true;
+        }
+        return (position == blank - 1 || position == blank + 1) && position / mWidth == blank / mWidth;
+    }
+
+    /**
+     * Slides the tile at {@code position} into the blank if they are adjacent.
+     *
+     * @return true if the tile moved
+     */
+    public boolean move(int position) {
+        if (!canMove(position)) {
+            return false;
+        }
+        swapWithBlank(position);
+        mMoves++;
+        return true;
+    }
+
+    /**
+     * @return the position the blank would move to in {@code direction}, or -1 if that's off the board
+     */
+    public int neighbor(int direction) {
+        int blank = mBlank;
+        switch (direction) {
+            case UP:
+                return blank >= mWidth ? blank - mWidth : -1;
+            case DOWN:
+                return blank + mWidth <= mMissingValue ? blank + mWidth : -1;
+            case LEFT:
+                return blank % mWidth > 0 ? blank - 1 : -1;
+            case RIGHT:
+                return blank % mWidth < mWidth - 1 ? blank + 1 : -1;
+            default:
+                throw new IllegalArgumentException("Unknown direction " + direction);
+        }
+    }
+
+    /**
+     * @return the direction the blank moves in when the tile at {@code position} slides into it, or -1 if
+     * that tile isn't next to the blank
+     */
+    public int directionOf(int position) {
+        return canMove(position) ? directionToward(position) : -1;
+    }
+
+    /**
+     * @return the direction the blank moves in to reach {@code position}, or -1 if that isn't in the
+     * blank's row or column
+     */
+    public int directionToward(int position) {
+        int blank = mBlank;
+        if (position < 0 || position > mMissingValue || position == blank) {
+            return -1;
+        }
+        if (position / mWidth == blank / mWidth) {
+            return position < blank ? LEFT : RIGHT;
+        } else if (position % mWidth == blank % mWidth) {
+            return position < blank ? UP : DOWN;
+        }
+        return -1;
+    }
+
+    /**
+     * Slides every tile between the blank and {@code position}, inclusive, one step toward the blank, so
+     * the blank ends up at {@code position}. Each tile counts as a move.
+     *
+     * @return the number of tiles moved, 0 if {@code position} isn't in the blank's row or column
+     */
+    public int slide(int position) {
+        int direction = directionToward(position);
+        if (direction < 0) {
+            return 0;
+        }
+        int step = direction == UP ? -mWidth : direction == DOWN ? mWidth : direction == LEFT ? -1 : 1;
+        int count = (position - mBlank) / step;
+        for (int blank = mBlank + step; blank != position + step; blank += step) {
+            swapWithBlank(blank);
+        }
+        mMoves += count;
+        return count;
+    }
+
+    /**
+     * Moves the blank one step in {@code direction}.
+     *
+     * @return true if the blank moved, false if it was already against that edge
+     */
+    public boolean moveBlank(int direction) {
+        int position = neighbor(direction);
+        if (position < 0) {
+            return false;
+        }
+        swapWithBlank(position);
+        mMoves++;
+        return true;
+    }
+
+    public static int opposite(int direction) {
+        return direction ^ 1;
+    }
+
+    void swapWithBlank(int position) {
+        int blank = mBlank;
+        int value = get(position);
+        int misplaced = mMisplaced;
+        if (value != position) misplaced--;
+        if (mMissingValue != blank) misplaced--;
+        put(blank, value);
+        put(position, mMissingValue);
+        if (value != blank) misplaced++;
+        if (mMissingValue != position) misplaced++;
+        mMisplaced = misplaced;
+        mHash ^= mZobrist.swap(value, position, mMissingValue, blank);
+        mBlank = position;
+    }
+
+    /**
+     * Swaps two tiles regardless of adjacency. This can change solvability, so it's only for
+     * building starting positions and doesn't count as a move.
+     */
+    public void swapTiles(int position1, int position2) {
+        int value1 = get(position1);
+        int value2 = get(position2);
+        int misplaced = mMisplaced;
+        if (value1 != position1) misplaced--;
+        if (value2 != position2) misplaced--;
+        put(position1, value2);
+        put(position2, value1);
+        if (value2 != position1) misplaced++;
+        if (value1 != position2) misplaced++;
+        mMisplaced = misplaced;
+        mHash ^= mZobrist.swap(value1, position1, value2, position2);
+        if (value1 == mMissingValue) {
+            mBlank = position2;
+        } else if (value2 == mMissingValue) {
+            mBlank = position1;
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i <= mMissingValue; i++) {
+            if (i > 0) {
+                builder.append(i % mWidth == 0 ? '\n' : ' ');
+            }
+            int value = get(i);
+            builder.append(value == mMissingValue ? "_" : String.valueOf(value));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,309 @@
+package io.intrepid.russell.tilepuzzle.core;
+
+import java.math.BigInteger;
+
+/**
+ * Numbers every solvable board of one size from 0 up, densely, and back. That gives each position a
+ * compact identity: a perfect hash for lookup tables, a key for sets of boards, and a short string
+ * that can be shared.
+ * <p/>
+ * A board's rank is its blank position times {@code k!/2}, plus half the lexicographic rank of the
+ * other {@code k} tiles in reading order. Swapping the last two of those tiles flips solvability and
+ * moves the rank by one, so halving it numbers only the reachable half. The lexicographic rank comes from
+ * the tiles' Lehmer code, which a Fenwick tree of the values already seen gives in O(n log n).
+ * Unranking finds each value with the same tree, and the code's digit sum is the inversion count, so
+ * telling which of a pair is solvable costs nothing extra.
+ * <p/>
+ * Ranks fit a {@code long} up to {@link #MAX_LONG_TILES} tiles, or 4x5. 5x5 and up need the
+ * {@link BigInteger} methods. Those work a {@code long} at a time, so there are only O(n) big number
+ * operations on any board.
+ * <p/>
+ * Thread safe.
+ */
+public class BoardCodec {
+    /**
+     * Largest board whose ranks fit a {@code long}: 20!/2 does and 21!/2 doesn't.
+     */
+    public static final int MAX_LONG_TILES = 20;
+
+    private static final int RADIX = Character.MAX_RADIX;
+
+    private static final long[] HALF_FACTORIALS = new long[MAX_LONG_TILES]; // n!/2, from 2
+    static {
+        HALF_FACTORIALS[2] = 1;
+        for (int n = 3; n < MAX_LONG_TILES; n++) {
+            HALF_FACTORIALS[n] = HALF_FACTORIALS[n - 1] * n;
+        }
+    }
+
+    private final int mWidth;
+    private final int mHeight;
+    private final int mCount;
+
+    public BoardCodec(int width, int height) {
+        if (width < 2 || height < 2) {
+            throw new IllegalArgumentException("Board must be at least 2x2 but was " + width + "x" + height);
+        }
+        mWidth = width;
+        mHeight = height;
+        mCount = width * height;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * @return how many solvable boards there are, which is one more than the largest rank
+     */
+    public BigInteger getStateCount() {
+        BigInteger count = BigInteger.ONE;
+        for (int i = 3; i <= mCount; i++) {
+            count = count.multiply(BigInteger.valueOf(i));
+        }
+        return count; // n!/2
+    }
+
+    /**
+     * @throws IllegalArgumentException if the board has more than {@link #MAX_LONG_TILES} tiles, or is
+     *                                  not this codec's size or not solvable
+     */
+    public long rank(Board board) {
+        checkLong();
+        int[] tiles = checkBoard(board).toArray();
+        return rank(tiles, new int[mCount], new int[mCount]);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the board is not this codec's size or not solvable
+     */
+    public BigInteger bigRank(Board board) {
+        int[] tiles = checkBoard(board).toArray();
+        int[] digits = new int[mCount - 1];
+        int blank = lehmer(tiles, digits, new int[mCount]);
+        BigInteger rank = BigInteger.ZERO;
+        int k = digits.length;
+        for (int i = 0; i < k; ) {
+            // As many digits as fit a long at a time, with their combined radix
+            long chunk = 0;
+            long radix = 1;
+            for (; i < k && radix <= Long.MAX_VALUE / k; i++) {
+                chunk = chunk * (k - i) + digits[i];
+                radix *= k - i;
+            }
+            rank = rank.multiply(BigInteger.valueOf(radix)).add(BigInteger.valueOf(chunk));
+        }
+        return halfFactorial(k).multiply(BigInteger.valueOf(blank)).add(rank.shiftRight(1));
+    }
+
+    /**
+     * @throws IllegalArgumentException if the board has more than {@link #MAX_LONG_TILES} tiles, or the
+     *                                  rank is out of range
+     */
+    public Board unrank(long rank) {
+        checkLong();
+        if (rank < 0 || rank >= HALF_FACTORIALS[mCount - 1] * mCount) {
+            throw new IllegalArgumentException("No " + mWidth + "x" + mHeight + " board has rank " + rank);
+        }
+        int[] tiles = new int[mCount];
+        unrank(rank, mWidth, mHeight, tiles, new int[mCount], new int[mCount]);
+        return Board.create(mWidth, mHeight, tiles);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the rank is out of range
+     */
+    public Board unrank(BigInteger rank) {
+        if (rank.signum() < 0 || rank.compareTo(getStateCount()) >= 0) {
+            throw new IllegalArgumentException("No " + mWidth + "x" + mHeight + " board has rank " + rank);
+        }
+        int k = mCount - 1;
+        BigInteger[] split = rank.divideAndRemainder(halfFactorial(k));
+        int blank = split[0].intValue();
+        BigInteger remaining = split[1].shiftLeft(1);
+        int[] digits = new int[k];
+        for (int i = k - 1; i >= 0; ) {
+            // Peel off as many digits as fit a long, least significant first
+            int last = i;
+            long radix = 1;
+            for (; i >= 0 && radix <= Long.MAX_VALUE / k; i--) {
+                radix *= k - i;
+            }
+            split = remaining.divideAndRemainder(BigInteger.valueOf(radix));
+            remaining = split[0];
+            long chunk = split[1].longValue();
+            for (int j = last; j > i; j--) {
+                digits[j] = (int) (chunk % (k - j));
+                chunk /= k - j;
+            }
+        }
+        int[] tiles = new int[mCount];
+        place(digits, blank, mWidth, mHeight, tiles, new int[mCount]);
+        return Board.create(mWidth, mHeight, tiles);
+    }
+
+    /**
+     * @return the board's size and rank, in letters and digits, like {@code 4x4-2ku8o4c1l}
+     */
+    public String encode(Board board) {
+        return mWidth + "x" + mHeight + "-" + bigRank(board).toString(RADIX);
+    }
+
+    /**
+     * Reads a string from {@link #encode}.
+     *
+     * @throws IllegalArgumentException if it isn't one
+     */
+    public static Board decode(String code) {
+        int times = code.indexOf('x');
+        int dash = code.indexOf('-', times + 1);
+        if (times < 0 || dash < 0) {
+            throw new IllegalArgumentException("Not a board code: " + code);
+        }
+        try {
+            int width = Integer.parseInt(code.substring(0, times));
+            int height = Integer.parseInt(code.substring(times + 1, dash));
+            if (width < 2 || height < 2 || width > ByteBoard.MAX_TILES || height > ByteBoard.MAX_TILES / width) {
+                throw new IllegalArgumentException("No board is " + width + "x" + height);
+            }
+            return new BoardCodec(width, height).unrank(new BigInteger(code.substring(dash + 1), RADIX));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a board code: " + code, e);
+        }
+    }
+
+    private void checkLong() {
+        if (mCount > MAX_LONG_TILES) {
+            throw new IllegalArgumentException(mWidth + "x" + mHeight + " ranks don't fit a long");
+        }
+    }
+
+    private Board checkBoard(Board board) {
+        if (board.getWidth() != mWidth || board.getHeight() != mHeight) {
+            throw new IllegalArgumentException("Codec is for " + mWidth + "x" + mHeight + " but the board is "
+                    + board.getWidth() + "x" + board.getHeight());
+        }
+        if (!board.isSolvable()) {
+            throw new IllegalArgumentException("Board can't be solved:\n" + board);
+        }
+        return board;
+    }
+
+    /**
+     * Ranks solvable {@code tiles} of up to {@link #MAX_LONG_TILES}, without allocating.
+     *
+     * @param digits scratch space of at least {@code tiles.length - 1}
+     * @param tree   scratch space of at least {@code tiles.length}
+     */
+    static long rank(int[] tiles, int[] digits, int[] tree) {
+        int k = tiles.length - 1;
+        int blank = lehmer(tiles, digits, tree);
+        long rank = 0;
+        for (int i = 0; i < k; i++) {
+            rank = rank * (k - i) + digits[i];
+        }
+        return blank * HALF_FACTORIALS[k] + (rank >>> 1);
+    }
+
+    /**
+     * Inverse of {@link #rank(int[], int[], int[])}, into {@code tiles}.
+     */
+    static void unrank(long rank, int width, int height, int[] tiles, int[] digits, int[] tree) {
+        int k = tiles.length - 1;
+        long half = HALF_FACTORIALS[k];
+        int blank = (int) (rank / half);
+        long remaining = (rank % half) << 1;
+        for (int i = k - 1; i >= 0; i--) {
+            digits[i] = (int) (remaining % (k - i));
+            remaining /= k - i;
+        }
+        place(digits, blank, width, height, tiles, tree);
+    }
+
+    /**
+     * Writes the Lehmer code of the tiles other than the blank, in reading order, into {@code digits}:
+     * for each, how many smaller ones come after it.
+     *
+     * @return the blank position
+     */
+    private static int lehmer(int[] tiles, int[] digits, int[] tree) {
+        int k = tiles.length - 1;
+        for (int i = 0; i <= k; i++) {
+            tree[i] = 0;
+        }
+        int blank = -1;
+        int digit = 0;
+        for (int position = 0; position <= k; position++) {
+            int value = tiles[position];
+            if (value == k) {
+                blank = position;
+                continue;
+            }
+            // Smaller values not yet seen are the smaller ones still to come
+            int seen = 0;
+            for (int j = value; j > 0; j -= j & -j) {
+                seen += tree[j];
+            }
+            for (int j = value + 1; j <= k; j += j & -j) {
+                tree[j]++;
+            }
+            digits[digit++] = value - seen;
+        }
+        return blank;
+    }
+
+    /**
+     * Turns a Lehmer code whose last two digits are 0 back into tiles around {@code blank}, choosing the
+     * second last digit to make the board solvable.
+     */
+    private static void place(int[] digits, int blank, int width, int height, int[] tiles, int[] tree) {
+        int k = tiles.length - 1;
+        int inversions = 0;
+        for (int i = 0; i < k; i++) {
+            inversions += digits[i];
+        }
+        if (width % 2 == 0) {
+            inversions += height - 1 - blank / width;
+        }
+        digits[k - 2] = inversions & 1; // Swaps the last two tiles when it's 1
+
+        // Every value available to start with; each digit picks the digit-th smallest left
+        for (int i = 1; i <= k; i++) {
+            tree[i] = i & -i;
+        }
+        int top = Integer.highestOneBit(k);
+        int position = 0;
+        for (int i = 0; i < k; i++) {
+            if (position == blank) {
+                position++;
+            }
+            int index = 0;
+            int remaining = digits[i];
+            for (int step = top; step > 0; step >>= 1) {
+                int next = index + step;
+                if (next <= k && tree[next] <= remaining) {
+                    index = next;
+                    remaining -= tree[next];
+                }
+            }
+            // index is the count of values below the one chosen, which is value index
+            for (int j = index + 1; j <= k; j += j & -j) {
+                tree[j]--;
+            }
+            tiles[position++] = index;
+        }
+        tiles[blank] = k;
+    }
+
+    private static BigInteger halfFactorial(int n) {
+        BigInteger result = BigInteger.ONE;
+        for (int i = 3; i <= n; i++) {
+            result = result.multiply(BigInteger.valueOf(i));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,106 @@
+package io.intrepid.russell.tilepuzzle.core;
+
+import java.util.Random;
+
+/**
+ * Deals uniformly random solvable boards. A Fisher-Yates shuffle draws any permutation; if it can't
+ * be solved, swapping the first two non-blank positions fixes the parity. For each blank position
+ * that swap pairs unsolvable layouts one-to-one with solvable ones, so the result stays uniform.
+ * <p/>
+ * Not thread safe; give each thread its own generator.
+ */
+public class BoardGenerator {
+    private static final int MAX_ATTEMPTS = 100000;
+
+    private final Random mRandom;
+    private int[] mValues = new int[0];
+    private int[] mTree = new int[1];
+
+    public BoardGenerator() {
+        mRandom = new Random();
+    }
+
+    /**
+     * @param seed boards are reproducible for a given seed and sequence of calls
+     */
+    public BoardGenerator(long seed) {
+        mRandom = new Random(seed);
+    }
+
+    public Board generate(int width, int height) {
+        Board board = Board.create(width, height);
+        shuffle(board);
+        return board;
+    }
+
+    /**
+     * @return a board whose Manhattan distance plus linear conflicts estimate is within
+     * {@code [minEstimate, maxEstimate]}
+     * @throws IllegalArgumentException if no such board turned up after many attempts
+     */
+    public Board generate(int width, int height, int minEstimate, int maxEstimate) {
+        Board board = Board.create(width, height);
+        shuffle(board, new ManhattanHeuristic(width, height), minEstimate, maxEstimate);
+        return board;
+    }
+
+    /**
+     * Lays out a new random solvable game on {@code board} and resets its move count.
+     */
+    public void shuffle(Board board) {
+        int count = board.getTileCount();
+        if (mValues.length != count) {
+            mValues = new int[count];
+            mTree = new int[count + 1];
+        }
+        int[] values = mValues;
+        do {
+            for (int i = 0; i < count; i++) {
+                values[i] = i;
+            }
+            for (int i = count - 1; i > 0; i--) {
+                int j = mRandom.nextInt(i + 1);
+                int value = values[i];
+                values[i] = values[j];
+                values[j] = value;
+            }
+            if (!Board.isSolvable(values, board.getWidth(), board.getHeight(), mTree)) {
+                int first = values[0] == count - 1 ? 2 : 0;
+                int second = values[1] == count - 1 ? 2 : 1;
+                int value = values[first];
+                values[first] = values[second];
+                values[second] = value;
+            }
+        } while (isSolved(values)); // Not much of a game
+        board.setValues(values);
+        board.setMoves(0);
+    }
+
+    /**
+     * Like {@link #shuffle(Board)}, but redeals until {@code heuristic} estimates the board within
+     * {@code [minEstimate, maxEstimate]}.
+     *
+     * @param heuristic estimator for this board's dimensions
+     * @throws IllegalArgumentException if no such board turned up after many attempts
+     */
+    public void shuffle(Board board, Heuristic heuristic, int minEstimate, int maxEstimate) {
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            shuffle(board);
+            int estimate = heuristic.reset(mValues);
+            if (estimate >= minEstimate && estimate <= maxEstimate) {
+                return;
+            }
+        }
+        throw new IllegalArgumentException("No " + board.getWidth() + "x" + board.getHeight()
+                + " board with an estimate in [" + minEstimate + ", " + maxEstimate + "]");
+    }
+
+    private static boolean isSolved(int[] values) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != i) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,36 @@
+package io.intrepid.russell.tilepuzzle.core;
+
+/**
+ * Board of up to 256 tiles stored one unsigned byte per tile.
+ */
+final class ByteBoard extends Board {
+    static final int MAX_TILES = 256;
+
+    final byte[] mTiles;
+
+    ByteBoard(int width, int height) {
+        super(width, height);
+        mTiles = new byte[width * height];
+    }
+
+    @Override
+    public int get(int position) {
+        return mTiles[position] & 0xFF;
+    }
+
+    @Override
+    void put(int position, int value) {
+        mTiles[position] = (byte) value;
+    }
+
+    @Override
+    public Board copy() {
+        ByteBoard copy = new ByteBoard(mWidth, mHeight);
+        System.arraycopy(mTiles, 0, copy.mTiles, 0, mTiles.length);
+        copy.mBlank = mBlank;
+        copy.mMisplaced = mMisplaced;
+        copy.mMoves = mMoves;
+        copy.mHash = mHash;
+        return copy;
+    }
+}
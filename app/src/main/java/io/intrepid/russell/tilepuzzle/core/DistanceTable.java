@@ -0,0 +1,274 @@
+package io.intrepid.russell.tilepuzzle.core;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Exact distance to the goal for every reachable state of a small board, from a full breadth-first
+ * search, at one nibble per state. That makes the best move and the exact distance available at once,
+ * with no search.
+ * <p/>
+ * A state's index is its {@link BoardCodec} rank, which numbers just the reachable states: 181,440 for
+ * 3x3, 12 for 2x2.
+ * <p/>
+ * Each nibble holds the distance mod 16. Moves always change the distance by exactly one, so the
+ * neighbor whose nibble is one less is a step toward the goal. The exact distance is how many such
+ * steps it takes to get there.
+ */
+public class DistanceTable {
+    /**
+     * Largest board with a table: 3x3 has 181,440 states, and the next size up has over 200 million.
+     */
+    public static final int MAX_TILES = 9;
+
+    private static final int MAGIC = 0x54504454; // "TPDT"
+    private static final int VERSION = 1;
+
+    private final int mWidth;
+    private final int mHeight;
+    private final int mHalfFactorial; // (tiles - 1)! / 2, states per blank position
+    private final int[] mNeighbors;
+    private final byte[] mNibbles;
+
+    private DistanceTable(int width, int height, byte[] nibbles) {
+        mWidth = width;
+        mHeight = height;
+        mHalfFactorial = (int) (factorial(width * height - 1) / 2);
+        mNeighbors = Solver.neighborTable(width, height);
+        mNibbles = nibbles;
+    }
+
+    public static boolean isSupported(int width, int height) {
+        return width >= 2 && height >= 2 && width * height <= MAX_TILES;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * @return the number of states, all reachable
+     */
+    public int getStateCount() {
+        return mHalfFactorial * mWidth * mHeight;
+    }
+
+    /**
+     * @return the exact number of moves needed to solve {@code board}
+     */
+    public int distance(Board board) {
+        int[] tiles = checkBoard(board).toArray();
+        int[] digits = new int[tiles.length];
+        int[] tree = new int[tiles.length];
+        int blank = board.getBlankPosition();
+        int distance = 0;
+        int index = index(tiles, digits, tree);
+        while (!isSolved(tiles)) {
+            int direction = downhill(tiles, blank, index, digits, tree);
+            int position = mNeighbors[blank * 4 + direction];
+            tiles[blank] = tiles[position];
+            tiles[position] = tiles.length - 1;
+            blank = position;
+            index = index(tiles, digits, tree);
+            distance++;
+        }
+        return distance;
+    }
+
+    /**
+     * @return a direction to move the blank that leaves {@code board} one move closer to solved, or -1 if
+     * it already is
+     */
+    public int bestDirection(Board board) {
+        if (checkBoard(board).isSolved()) {
+            return -1;
+        }
+        int[] tiles = board.toArray();
+        int[] digits = new int[tiles.length];
+        int[] tree = new int[tiles.length];
+        return downhill(tiles, board.getBlankPosition(), index(tiles, digits, tree), digits, tree);
+    }
+
+    /**
+     * @return an optimal solution for {@code board}, found by walking downhill
+     */
+    public Solution solve(Board board) {
+        long start = System.nanoTime();
+        Board walk = checkBoard(board).copy();
+        int[] path = new int[64];
+        int length = 0;
+        int direction;
+        while ((direction = bestDirection(walk)) >= 0) {
+            if (length == path.length) {
+                int[] longer = new int[path.length * 2];
+                System.arraycopy(path, 0, longer, 0, length);
+                path = longer;
+            }
+            path[length++] = direction;
+            walk.moveBlank(direction);
+        }
+        int[] directions = new int[length];
+        System.arraycopy(path, 0, directions, 0, length);
+        return new Solution(directions, length, System.nanoTime() - start); // One node per move
+    }
+
+    private Board checkBoard(Board board) {
+        if (board.getWidth() != mWidth || board.getHeight() != mHeight) {
+            throw new IllegalArgumentException("Table is for " + mWidth + "x" + mHeight + " but the board is "
+                    + board.getWidth() + "x" + board.getHeight());
+        }
+        return board;
+    }
+
+    private int downhill(int[] tiles, int blank, int index, int[] digits, int[] tree) {
+        int target = (nibble(index) - 1) & 0xF;
+        int missing = tiles.length - 1;
+        for (int direction = 0; direction < 4; direction++) {
+            int position = mNeighbors[blank * 4 + direction];
+            if (position < 0) {
+                continue;
+            }
+            tiles[blank] = tiles[position];
+            tiles[position] = missing;
+            int next = index(tiles, digits, tree);
+            tiles[position] = tiles[blank];
+            tiles[blank] = missing;
+            if (nibble(next) == target) {
+                return direction;
+            }
+        }
+        throw new IllegalStateException("Distance table is inconsistent at state " + index);
+    }
+
+    private static boolean isSolved(int[] tiles) {
+        for (int i = 0; i < tiles.length; i++) {
+            if (tiles[i] != i) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int nibble(int index) {
+        int packed = mNibbles[index >>> 1];
+        return (index & 1) == 0 ? packed & 0xF : (packed >>> 4) & 0xF;
+    }
+
+    /**
+     * @param tiles  row-major values, solvable
+     * @param digits scratch space of at least {@code tiles.length - 1}
+     * @param tree   scratch space of at least {@code tiles.length}
+     */
+    static int index(int[] tiles, int[] digits, int[] tree) {
+        return (int) BoardCodec.rank(tiles, digits, tree);
+    }
+
+    /**
+     * Runs the breadth-first search from the solved board.
+     */
+    public static DistanceTable generate(int width, int height) {
+        if (!isSupported(width, height)) {
+            throw new IllegalArgumentException("No distance table for " + width + "x" + height);
+        }
+        int count = width * height;
+        DistanceTable table = new DistanceTable(width, height, new byte[0]);
+        int states = table.getStateCount();
+        byte[] distances = new byte[states];
+        Arrays.fill(distances, (byte) -1);
+        int[] queue = new int[states];
+        int[] tiles = new int[count];
+        int[] digits = new int[count];
+        int[] tree = new int[count];
+        int[] neighbors = table.mNeighbors;
+
+        for (int i = 0; i < count; i++) {
+            tiles[i] = i;
+        }
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = index(tiles, digits, tree);
+        distances[queue[0]] = 0;
+        while (head < tail) {
+            int index = queue[head++];
+            BoardCodec.unrank(index, width, height, tiles, digits, tree);
+            int blank = index / table.mHalfFactorial;
+            for (int direction = 0; direction < 4; direction++) {
+                int position = neighbors[blank * 4 + direction];
+                if (position < 0) {
+                    continue;
+                }
+                tiles[blank] = tiles[position];
+                tiles[position] = count - 1;
+                int next = index(tiles, digits, tree);
+                tiles[position] = tiles[blank];
+                tiles[blank] = count - 1;
+                if (distances[next] < 0) {
+                    distances[next] = (byte) (distances[index] + 1);
+                    queue[tail++] = next;
+                }
+            }
+        }
+        if (tail != states) {
+            throw new IllegalStateException("Reached " + tail + " of " + states + " states");
+        }
+
+        byte[] nibbles = new byte[(states + 1) / 2];
+        for (int i = 0; i < states; i++) {
+            nibbles[i >>> 1] |= (distances[i] & 0xF) << ((i & 1) * 4);
+        }
+        return new DistanceTable(width, height, nibbles);
+    }
+
+    /**
+     * Writes a 16 byte header and then the nibbles as they are in memory.
+     */
+    public void write(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(mWidth << 16 | mHeight);
+        data.writeInt(getStateCount());
+        data.write(mNibbles);
+        data.flush();
+    }
+
+    /**
+     * Reads a table written by {@link #write}. The nibbles are read straight into the array that is
+     * then used for lookups.
+     */
+    public static DistanceTable read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC || data.readInt() != VERSION) {
+            throw new IOException("Not a distance table, or from another version");
+        }
+        int size = data.readInt();
+        int width = size >>> 16;
+        int height = size & 0xFFFF;
+        if (!isSupported(width, height)) {
+            throw new IOException("Unsupported size " + width + "x" + height);
+        }
+        int states = (int) (factorial(width * height - 1) / 2) * width * height;
+        if (data.readInt() != states) {
+            throw new IOException("Wrong state count for " + width + "x" + height);
+        }
+        byte[] nibbles = new byte[(states + 1) / 2];
+        data.readFully(nibbles);
+        return new DistanceTable(width, height, nibbles);
+    }
+
+    private static long factorial(int n) {
+        long result = 1;
+        for (int i = 2; i <= n; i++) {
+            result *= i;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,287 @@
+package io.intrepid.russell.tilepuzzle.core;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.zip.CRC32;
+
+/**
+ * An in-progress game in a compact binary form: a header, the tiles packed a nibble each when they fit
+ * (a byte each otherwise), the move count, the image and the blank's move history at two bits a move.
+ * A 4x4 game with no history is 31 bytes. A CRC32 at the end catches torn or corrupted files.
+ * <p/>
+ * Games on a user's photo also carry its URI, after the header. Only those are written as version 2,
+ * so other saves stay readable by older versions.
+ */
+public final class GameSnapshot {
+    private static final int MAGIC = 0x54505356; // "TPSV"
+    private static final int VERSION = 1;
+    private static final int VERSION_IMAGE_URI = 2;
+    private static final int HEADER_BYTES = 4 + 1 + 1 + 1 + 4 + 4 + 4;
+    private static final int CHECKSUM_BYTES = 4;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final int mWidth;
+    private final int mHeight;
+    private final int[] mValues;
+    private final int mMoves;
+    private final int mImageId;
+    private final String mImageUri;
+    private final int[] mHistory;
+
+    /**
+     * @param values  row-major tile values, as from {@link Board#toArray()}
+     * @param imageId identifies the picture the game is played on
+     * @param history directions the blank moved in, oldest first
+     */
+    public GameSnapshot(int width, int height, int[] values, int moves, int imageId, int[] history) {
+        this(width, height, values, moves, imageId, null, history);
+    }
+
+    /**
+     * @param imageUri where the picture is if it isn't bundled with the app, otherwise null
+     */
+    public GameSnapshot(int width, int height, int[] values, int moves, int imageId, String imageUri,
+                        int[] history) {
+        if (values.length != width * height) {
+            throw new IllegalArgumentException("Expected " + width * height + " values, got " + values.length);
+        }
+        mWidth = width;
+        mHeight = height;
+        mValues = values.clone();
+        mMoves = moves;
+        mImageId = imageId;
+        mImageUri = imageUri;
+        mHistory = history.clone();
+    }
+
+    public GameSnapshot(Board board, int imageId, int[] history) {
+        this(board, imageId, null, history);
+    }
+
+    public GameSnapshot(Board board, int imageId, String imageUri, int[] history) {
+        this(board.getWidth(), board.getHeight(), board.toArray(), board.getMoves(), imageId, imageUri, history);
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public int[] getValues() {
+        return mValues.clone();
+    }
+
+    public int getMoves() {
+        return mMoves;
+    }
+
+    public int getImageId() {
+        return mImageId;
+    }
+
+    /**
+     * @return where the picture is if it isn't bundled with the app, otherwise null
+     */
+    public String getImageUri() {
+        return mImageUri;
+    }
+
+    public int[] getHistory() {
+        return mHistory.clone();
+    }
+
+    /**
+     * @return a new board in the saved layout, with the saved move count
+     */
+    public Board toBoard() {
+        Board board = Board.create(mWidth, mHeight, mValues);
+        board.setMoves(mMoves);
+        return board;
+    }
+
+    public int encodedSize() {
+        return HEADER_BYTES + uriBytes() + tileBytes(mValues.length) + (mHistory.length + 3) / 4 + CHECKSUM_BYTES;
+    }
+
+    private int uriBytes() {
+        return mImageUri != null ? 2 + utf8(mImageUri).length : 0;
+    }
+
+    public void encode(ByteBuffer out) {
+        int start = out.position();
+        out.putInt(MAGIC);
+        out.put((byte) (mImageUri != null ? VERSION_IMAGE_URI : VERSION));
+        out.put((byte) mWidth);
+        out.put((byte) mHeight);
+        out.putInt(mMoves);
+        out.putInt(mImageId);
+        out.putInt(mHistory.length);
+        if (mImageUri != null) {
+            byte[] uri = utf8(mImageUri);
+            out.putShort((short) uri.length);
+            out.put(uri);
+        }
+        if (nibbles(mValues.length)) {
+            for (int i = 0; i < mValues.length; i += 2) {
+                int high = i + 1 < mValues.length ? mValues[i + 1] : 0;
+                out.put((byte) (mValues[i] | high << 4));
+            }
+        } else {
+            for (int value : mValues) {
+                out.put((byte) value);
+            }
+        }
+        for (int i = 0; i < mHistory.length; i += 4) {
+            int packed = 0;
+            for (int j = 0; j < 4 && i + j < mHistory.length; j++) {
+                packed |= (mHistory[i + j] & 3) << (2 * j);
+            }
+            out.put((byte) packed);
+        }
+        out.putInt(checksum(out, start, out.position()));
+    }
+
+    /**
+     * @throws IOException if {@code in} doesn't hold a valid snapshot of a supported version
+     */
+    public static GameSnapshot decode(ByteBuffer in) throws IOException {
+        int start = in.position();
+        if (in.remaining() < HEADER_BYTES + CHECKSUM_BYTES || in.getInt() != MAGIC) {
+            throw new IOException("Not a saved game");
+        }
+        int version = in.get();
+        if (version != VERSION && version != VERSION_IMAGE_URI) {
+            throw new IOException("Unsupported saved game version " + version);
+        }
+        int width = in.get() & 0xFF;
+        int height = in.get() & 0xFF;
+        int moves = in.getInt();
+        int imageId = in.getInt();
+        int historyLength = in.getInt();
+        String imageUri = null;
+        if (version == VERSION_IMAGE_URI) {
+            int length = in.remaining() >= 2 ? in.getShort() & 0xFFFF : -1;
+            if (length < 0 || in.remaining() < length) {
+                throw new IOException("Saved game is truncated");
+            }
+            byte[] uri = new byte[length];
+            in.get(uri);
+            imageUri = new String(uri, UTF_8);
+        }
+        int count = width * height;
+        if (historyLength < 0
+                || in.remaining() != tileBytes(count) + (historyLength + 3L) / 4 + CHECKSUM_BYTES) {
+            throw new IOException("Saved game is truncated");
+        }
+        int[] values = new int[count];
+        if (nibbles(count)) {
+            for (int i = 0; i < count; i += 2) {
+                int packed = in.get();
+                values[i] = packed & 0xF;
+                if (i + 1 < count) {
+                    values[i + 1] = packed >> 4 & 0xF;
+                }
+            }
+        } else {
+            for (int i = 0; i < count; i++) {
+                values[i] = in.get() & 0xFF;
+            }
+        }
+        int[] history = new int[historyLength];
+        for (int i = 0; i < historyLength; i += 4) {
+            int packed = in.get();
+            for (int j = 0; j < 4 && i + j < historyLength; j++) {
+                history[i + j] = packed >> (2 * j) & 3;
+            }
+        }
+        int end = in.position();
+        if (in.getInt() != checksum(in, start, end)) {
+            throw new IOException("Saved game is corrupted");
+        }
+        try {
+            Board.create(width, height, values);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Saved game has an invalid board: " + e.getMessage());
+        }
+        return new GameSnapshot(width, height, values, moves, imageId, imageUri, history);
+    }
+
+    /**
+     * Writes to a temporary file and renames it over {@code file}, so a reader sees either the old
+     * snapshot or the new one and never half of each.
+     */
+    public void write(File file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(encodedSize());
+        encode(buffer);
+        buffer.flip();
+        File temp = new File(file.getPath() + ".tmp");
+        FileOutputStream out = new FileOutputStream(temp);
+        try {
+            FileChannel channel = out.getChannel();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("Couldn't rename " + temp + " to " + file);
+        }
+    }
+
+    /**
+     * Reads a file written by {@link #write(File)} in one read.
+     */
+    public static GameSnapshot read(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        ByteBuffer buffer;
+        try {
+            FileChannel channel = in.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(file + " is too large to be a saved game");
+            }
+            buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // Usually a single read for files this small
+            }
+        } finally {
+            in.close();
+        }
+        buffer.flip();
+        return decode(buffer);
+    }
+
+    private static byte[] utf8(String string) {
+        return string.getBytes(UTF_8);
+    }
+
+    private static boolean nibbles(int count) {
+        return count <= 16;
+    }
+
+    private static int tileBytes(int count) {
+        return nibbles(count) ? (count + 1) / 2 : count;
+    }
+
+    private static int checksum(ByteBuffer buffer, int start, int end) {
+        CRC32 crc = new CRC32();
+        if (buffer.hasArray()) {
+            crc.update(buffer.array(), buffer.arrayOffset() + start, end - start);
+        } else {
+            for (int i = start; i < end; i++) {
+                crc.update(buffer.get(i));
+            }
+        }
+        return (int) crc.getValue();
+    }
+}
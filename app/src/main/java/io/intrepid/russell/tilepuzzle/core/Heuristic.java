@@ -0,0 +1,23 @@
+package io.intrepid.russell.tilepuzzle.core;
+
+/**
+ * An admissible estimate of the moves left to solve a board, updated incrementally as tiles move.
+ * Implementations keep per-search state, so each search needs its own instance.
+ */
+public interface Heuristic {
+
+    /**
+     * Recomputes the estimate from scratch.
+     *
+     * @param tiles row-major tile values, as from {@link Board#toArray()}
+     * @return the estimate for {@code tiles}
+     */
+    int reset(int[] tiles);
+
+    /**
+     * Updates the estimate after tile {@code value} slides from {@code from} into the blank at {@code to}.
+     *
+     * @return the new estimate
+     */
+    int move(int value, int from, int to);
+}
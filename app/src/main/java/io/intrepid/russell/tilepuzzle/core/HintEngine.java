@@ -0,0 +1,169 @@
+package io.intrepid.russell.tilepuzzle.core;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Suggests the best next move for boards of one size, remembering what earlier searches found.
+ * <p/>
+ * A miss solves the board optimally and stores every position along the solution, keyed by
+ * {@link Board#getHash()}, with its exact distance and best move. A player who follows the hints
+ * therefore only ever waits for the first one. Returning to any position seen on an earlier line is
+ * also a hit. The table is bounded and evicts the least recently used positions.
+ * <p/>
+ * Thread safe. Searches may overlap, say when a newer hint supersedes one still unwinding, and
+ * {@link #cancel()} stops all of them.
+ */
+public class HintEngine {
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    private final ParallelSolver.HeuristicFactory mFactory;
+    private final int mWidth;
+    private final int mHeight;
+    private final int mThreads;
+    private final Map<Long, Integer> mTable; // Hash -> distance << 2 | direction
+    private final Set<ParallelSolver> mSolvers = new HashSet<ParallelSolver>(); // Searches in progress
+    private int mHits;
+    private int mMisses;
+
+    /**
+     * @param factory  heuristics for {@code width} by {@code height} boards
+     * @param capacity most positions to remember
+     */
+    public HintEngine(ParallelSolver.HeuristicFactory factory, int width, int height, int threads,
+                      final int capacity) {
+        mFactory = factory;
+        mWidth = width;
+        mHeight = height;
+        mThreads = threads;
+        mTable = new LinkedHashMap<Long, Integer>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Integer> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * @return the direction the blank should move next, -1 if {@code board} is solved, or -2 if the
+     * search was cancelled. Blocks on a search unless the position is already known.
+     */
+    public int hint(Board board) {
+        return hint(board, 0);
+    }
+
+    /**
+     * Like {@link #hint(Board)}, but gives up on a search after about {@code timeoutMillis}, or never if
+     * it is 0.
+     *
+     * @return as for {@link #hint(Board)}, or -3 if the search ran out of time
+     */
+    public int hint(Board board, long timeoutMillis) {
+        checkSize(board);
+        if (board.isSolved()) {
+            return -1;
+        }
+        int known = getKnownHint(board);
+        if (known >= 0) {
+            return known;
+        }
+        ParallelSolver solver = new ParallelSolver(board, mFactory, mThreads);
+        synchronized (this) {
+            mSolvers.add(solver);
+        }
+        Solution solution;
+        try {
+            solution = solver.solve(timeoutMillis);
+        } finally {
+            synchronized (this) {
+                mSolvers.remove(solver);
+            }
+        }
+        if (solution == null) {
+            return solver.isTimedOut() ? -3 : -2;
+        }
+        remember(board, solution);
+        return solution.getDirection(0);
+    }
+
+    /**
+     * @return the best direction for {@code board} if it is already known, otherwise -1
+     */
+    public int getKnownHint(Board board) {
+        checkSize(board);
+        Integer entry;
+        synchronized (this) {
+            entry = mTable.get(board.getHash());
+            if (entry != null) {
+                mHits++;
+            } else {
+                mMisses++;
+            }
+        }
+        if (entry == null || board.neighbor(entry & 3) < 0) {
+            return -1; // The check catches the odd hash collision that points off the board
+        }
+        return entry & 3;
+    }
+
+    /**
+     * @return the exact number of moves left for {@code board} if known, 0 if it's solved, otherwise -1
+     */
+    public synchronized int getKnownDistance(Board board) {
+        checkSize(board);
+        if (board.isSolved()) {
+            return 0;
+        }
+        Integer entry = mTable.get(board.getHash());
+        return entry != null ? entry >>> 2 : -1;
+    }
+
+    /**
+     * Stops every search in progress, which makes their {@link #hint(Board)} calls return -2.
+     */
+    public synchronized void cancel() {
+        for (ParallelSolver solver : mSolvers) {
+            solver.cancel();
+        }
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public synchronized int getHits() {
+        return mHits;
+    }
+
+    public synchronized int getMisses() {
+        return mMisses;
+    }
+
+    public synchronized int size() {
+        return mTable.size();
+    }
+
+    private void checkSize(Board board) {
+        if (board.getWidth() != mWidth || board.getHeight() != mHeight) {
+            throw new IllegalArgumentException("Hints are for " + mWidth + "x" + mHeight + " but the board is "
+                    + board.getWidth() + "x" + board.getHeight());
+        }
+    }
+
+    private void remember(Board board, Solution solution) {
+        Board line = board.copy();
+        synchronized (this) {
+            for (int i = 0; i < solution.length(); i++) {
+                int direction = solution.getDirection(i);
+                mTable.put(line.getHash(), (solution.length() - i) << 2 | direction);
+                line.moveBlank(direction);
+            }
+        }
+    }
+}
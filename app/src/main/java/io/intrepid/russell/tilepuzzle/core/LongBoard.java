@@ -0,0 +1,54 @@
+package io.intrepid.russell.tilepuzzle.core;
+
+/**
+ * Board of up to 16 tiles packed 4 bits per tile, position 0 in the lowest nibble.
+ */
+final class LongBoard extends Board {
+    static final int MAX_TILES = 16;
+
+    long mPacked;
+
+    LongBoard(int width, int height) {
+        super(width, height);
+    }
+
+    @Override
+    public int get(int position) {
+        return (int) (mPacked >>> (position << 2)) & 0xF;
+    }
+
+    @Override
+    void put(int position, int value) {
+        int shift = position << 2;
+        mPacked = (mPacked & ~(0xFL << shift)) | ((long) value << shift);
+    }
+
+    @Override
+    public Board copy() {
+        LongBoard copy = new LongBoard(mWidth, mHeight);
+        copy.mPacked = mPacked;
+        copy.mBlank = mBlank;
+        copy.mMisplaced = mMisplaced;
+        copy.mMoves = mMoves;
+        copy.mHash = mHash;
+        return copy;
+    }
+
+    @Override
+    void swapWithBlank(int position) {
+        // The two nibbles just trade the tile value and the missing value, so one xor updates both
+        int blankShift = mBlank << 2;
+        int shift = position << 2;
+        long value = (mPacked >>> shift) & 0xF;
+        int misplaced = mMisplaced;
+        if (value != position) misplaced--;
+        if (mMissingValue != mBlank) misplaced--;
+        if (value != mBlank) misplaced++;
+        if (mMissingValue != position) misplaced++;
+        long diff = value ^ mMissingValue;
+        mPacked ^= (diff << blankShift) | (diff << shift);
+        mMisplaced = misplaced;
+        mHash ^= mZobrist.swap((int) value, position, mMissingValue, mBlank);
+        mBlank = position;
+    }
+}
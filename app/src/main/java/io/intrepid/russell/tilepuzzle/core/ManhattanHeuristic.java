@@ -0,0 +1,215 @@
+package io.intrepid.russell.tilepuzzle.core;
+
+/**
+ * Manhattan distance plus linear conflicts, updated incrementally as tiles move.
+ * <p/>
+ * Each row and column keeps a base-(length+1) code of the tiles in it that belong to that line, and
+ * the extra cost of the conflicts in a line is looked up from that code. Moving one tile touches at
+ * most three lines, so an update is a handful of table lookups.
+ */
+public class ManhattanHeuristic implements Heuristic {
+    // Conflict tables grow as (length+1)^length, so longer lines fall back to plain Manhattan distance
+    static final int MAX_CONFLICT_LINE = 6;
+
+    private static final byte[][] sConflictTables = new byte[MAX_CONFLICT_LINE + 1][];
+
+    private final int mWidth;
+    private final int mHeight;
+    private final int mMissingValue;
+    private final int[] mDistance; // value * count + position
+    private final int[] mGoalRow;
+    private final int[] mGoalCol;
+
+    private final byte[] mRowConflicts;
+    private final byte[] mColConflicts;
+    private final int[] mRowPow;
+    private final int[] mColPow;
+    private final int[] mRowCode;
+    private final int[] mColCode;
+
+    private int mManhattan;
+    private int mConflicts;
+
+    public ManhattanHeuristic(int width, int height) {
+        mWidth = width;
+        mHeight = height;
+        int count = width * height;
+        mMissingValue = count - 1;
+
+        mGoalRow = new int[count];
+        mGoalCol = new int[count];
+        mDistance = new int[count * count];
+        for (int value = 0; value < mMissingValue; value++) {
+            mGoalRow[value] = value / width;
+            mGoalCol[value] = value % width;
+            for (int position = 0; position < count; position++) {
+                mDistance[value * count + position] = Math.abs(position / width - mGoalRow[value])
+                        + Math.abs(position % width - mGoalCol[value]);
+            }
+        }
+
+        mRowConflicts = width <= MAX_CONFLICT_LINE ? conflictTable(width) : null;
+        mColConflicts = height <= MAX_CONFLICT_LINE ? conflictTable(height) : null;
+        mRowPow = powers(width + 1, width);
+        mColPow = powers(height + 1, height);
+        mRowCode = new int[height];
+        mColCode = new int[width];
+    }
+
+    @Override
+    public int reset(int[] tiles) {
+        mManhattan = 0;
+        mConflicts = 0;
+        for (int i = 0; i < mHeight; i++) {
+            mRowCode[i] = 0;
+        }
+        for (int i = 0; i < mWidth; i++) {
+            mColCode[i] = 0;
+        }
+        int count = tiles.length;
+        for (int position = 0; position < count; position++) {
+            int value = tiles[position];
+            if (value == mMissingValue) {
+                continue;
+            }
+            mManhattan += mDistance[value * count + position];
+            int row = position / mWidth;
+            int col = position % mWidth;
+            mRowCode[row] += rowDigit(value, row) * mRowPow[col];
+            mColCode[col] += colDigit(value, col) * mColPow[row];
+        }
+        if (mRowConflicts != null) {
+            for (int row = 0; row < mHeight; row++) {
+                mConflicts += mRowConflicts[mRowCode[row]];
+            }
+        }
+        if (mColConflicts != null) {
+            for (int col = 0; col < mWidth; col++) {
+                mConflicts += mColConflicts[mColCode[col]];
+            }
+        }
+        return mManhattan + mConflicts;
+    }
+
+    @Override
+    public int move(int value, int from, int to) {
+        int count = mMissingValue + 1;
+        int base = value * count;
+        mManhattan += mDistance[base + to] - mDistance[base + from];
+
+        int fromRow = from / mWidth;
+        int fromCol = from - fromRow * mWidth;
+        int toRow = to / mWidth;
+        int toCol = to - toRow * mWidth;
+        if (fromRow == toRow) {
+            // Moves within its row and between two columns
+            int digit = rowDigit(value, fromRow);
+            if (digit != 0) {
+                mRowCode[fromRow] = updateLine(mRowConflicts, mRowCode[fromRow], digit * (mRowPow[toCol] - mRowPow[fromCol]));
+            }
+            digit = colDigit(value, fromCol);
+            if (digit != 0) {
+                mColCode[fromCol] = updateLine(mColConflicts, mColCode[fromCol], -digit * mColPow[fromRow]);
+            }
+            digit = colDigit(value, toCol);
+            if (digit != 0) {
+                mColCode[toCol] = updateLine(mColConflicts, mColCode[toCol], digit * mColPow[toRow]);
+            }
+        } else {
+            // Moves within its column and between two rows
+            int digit = colDigit(value, fromCol);
+            if (digit != 0) {
+                mColCode[fromCol] = updateLine(mColConflicts, mColCode[fromCol], digit * (mColPow[toRow] - mColPow[fromRow]));
+            }
+            digit = rowDigit(value, fromRow);
+            if (digit != 0) {
+                mRowCode[fromRow] = updateLine(mRowConflicts, mRowCode[fromRow], -digit * mRowPow[fromCol]);
+            }
+            digit = rowDigit(value, toRow);
+            if (digit != 0) {
+                mRowCode[toRow] = updateLine(mRowConflicts, mRowCode[toRow], digit * mRowPow[toCol]);
+            }
+        }
+        return mManhattan + mConflicts;
+    }
+
+    private int updateLine(byte[] table, int code, int delta) {
+        int updated = code + delta;
+        mConflicts += table[updated] - table[code];
+        return updated;
+    }
+
+    /**
+     * @return 1 + goal column if {@code value} belongs in {@code row}, else 0 (or always 0 without row conflicts)
+     */
+    private int rowDigit(int value, int row) {
+        return mRowConflicts != null && mGoalRow[value] == row ? mGoalCol[value] + 1 : 0;
+    }
+
+    /**
+     * @return 1 + goal row if {@code value} belongs in {@code col}, else 0 (or always 0 without column conflicts)
+     */
+    private int colDigit(int value, int col) {
+        return mColConflicts != null && mGoalCol[value] == col ? mGoalRow[value] + 1 : 0;
+    }
+
+    private static int[] powers(int base, int length) {
+        int[] pow = new int[length];
+        int p = 1;
+        for (int i = 0; i < length; i++) {
+            pow[i] = p;
+            p *= base;
+        }
+        return pow;
+    }
+
+    /**
+     * Builds the conflict cost for every line code of the given length. A line's cost is two moves for
+     * each tile that has to leave it, i.e. twice the tiles outside its longest in-order subsequence.
+     */
+    static synchronized byte[] conflictTable(int length) {
+        if (sConflictTables[length] != null) {
+            return sConflictTables[length];
+        }
+        int base = length + 1;
+        int size = 1;
+        for (int i = 0; i < length; i++) {
+            size *= base;
+        }
+        byte[] table = new byte[size];
+        int[] goals = new int[length];
+        int[] tails = new int[length];
+        for (int code = 0; code < size; code++) {
+            int n = 0;
+            int rest = code;
+            for (int i = 0; i < length; i++) {
+                int digit = rest % base;
+                rest /= base;
+                if (digit != 0) {
+                    goals[n++] = digit - 1;
+                }
+            }
+            // Longest increasing subsequence by patience sorting
+            int lis = 0;
+            for (int i = 0; i < n; i++) {
+                int lo = 0;
+                int hi = lis;
+                while (lo < hi) {
+                    int mid = (lo + hi) >>> 1;
+                    if (tails[mid] < goals[i]) {
+                        lo = mid + 1;
+                    } else {
+                        hi = mid;
+                    }
+                }
+                tails[lo] = goals[i];
+                if (lo == lis) {
+                    lis++;
+                }
+            }
+            table[code] = (byte) (2 * (n - lis));
+        }
+        sConflictTables[length] = table;
+        return table;
+    }
+}
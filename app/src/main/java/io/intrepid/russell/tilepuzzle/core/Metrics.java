@@ -0,0 +1,189 @@
+package io.intrepid.russell.tilepuzzle.core;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Process-wide registry of named counters and latency histograms.
+ * <p/>
+ * Look metrics up once, typically into a static final field; after that, recording is a few atomic
+ * operations on preallocated storage, with no locks and no allocation, so it is cheap enough to leave
+ * in on every move and every frame.
+ */
+public final class Metrics {
+    private static final Map<String, Counter> sCounters = new TreeMap<String, Counter>();
+    private static final Map<String, Histogram> sHistograms = new TreeMap<String, Histogram>();
+
+    private Metrics() {
+    }
+
+    /**
+     * @return the counter called {@code name}, created the first time it is asked for
+     */
+    public static synchronized Counter counter(String name) {
+        Counter counter = sCounters.get(name);
+        if (counter == null) {
+            counter = new Counter();
+            sCounters.put(name, counter);
+        }
+        return counter;
+    }
+
+    /**
+     * @return the histogram called {@code name}, created the first time it is asked for
+     */
+    public static synchronized Histogram histogram(String name) {
+        Histogram histogram = sHistograms.get(name);
+        if (histogram == null) {
+            histogram = new Histogram();
+            sHistograms.put(name, histogram);
+        }
+        return histogram;
+    }
+
+    /**
+     * Zeroes every metric, keeping them registered.
+     */
+    public static synchronized void reset() {
+        for (Counter counter : sCounters.values()) {
+            counter.mValue.set(0);
+        }
+        for (Histogram histogram : sHistograms.values()) {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * @return one line per metric, sorted by name; histograms show count, median, 95th percentile and
+     * max in milliseconds
+     */
+    public static synchronized String report() {
+        StringBuilder report = new StringBuilder();
+        for (Map.Entry<String, Counter> entry : sCounters.entrySet()) {
+            report.append(entry.getKey()).append(' ').append(entry.getValue().get()).append('\n');
+        }
+        for (Map.Entry<String, Histogram> entry : sHistograms.entrySet()) {
+            Histogram histogram = entry.getValue();
+            report.append(entry.getKey())
+                    .append(" n=").append(histogram.getCount())
+                    .append(" p50=").append(millis(histogram.getPercentileNanos(50)))
+                    .append(" p95=").append(millis(histogram.getPercentileNanos(95)))
+                    .append(" max=").append(millis(histogram.getMaxNanos()))
+                    .append('\n');
+        }
+        return report.toString();
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.2f", nanos / 1e6);
+    }
+
+    public static final class Counter {
+        private final AtomicLong mValue = new AtomicLong();
+
+        Counter() {
+        }
+
+        public void increment() {
+            mValue.incrementAndGet();
+        }
+
+        public void add(long delta) {
+            mValue.addAndGet(delta);
+        }
+
+        public long get() {
+            return mValue.get();
+        }
+    }
+
+    /**
+     * Durations in power-of-two buckets: bucket 0 holds anything under a microsecond, and bucket {@code i}
+     * holds {@code [2^(i-1), 2^i)} microseconds, up to about 35 minutes in the last. Percentiles are
+     * reported as the upper edge of their bucket, so they are within a factor of two.
+     */
+    public static final class Histogram {
+        static final int BUCKETS = 32;
+
+        private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong mCount = new AtomicLong();
+        private final AtomicLong mTotalNanos = new AtomicLong();
+        private final AtomicLong mMaxNanos = new AtomicLong();
+
+        Histogram() {
+        }
+
+        public void record(long nanos) {
+            if (nanos < 0) {
+                return; // Clock went backwards, or a start time that was never set
+            }
+            mBuckets.incrementAndGet(bucket(nanos));
+            mCount.incrementAndGet();
+            mTotalNanos.addAndGet(nanos);
+            long max;
+            do {
+                max = mMaxNanos.get();
+            } while (nanos > max && !mMaxNanos.compareAndSet(max, nanos));
+        }
+
+        /**
+         * Records the time since {@code startNanos}, a {@link System#nanoTime()} reading.
+         */
+        public void recordSince(long startNanos) {
+            record(System.nanoTime() - startNanos);
+        }
+
+        public long getCount() {
+            return mCount.get();
+        }
+
+        public long getTotalNanos() {
+            return mTotalNanos.get();
+        }
+
+        public long getMaxNanos() {
+            return mMaxNanos.get();
+        }
+
+        /**
+         * @param percentile between 0 and 100
+         * @return the upper edge of the bucket holding that percentile, capped at the largest value
+         * recorded, or 0 if nothing has been
+         */
+        public long getPercentileNanos(double percentile) {
+            long count = mCount.get();
+            if (count == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(count * percentile / 100);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += mBuckets.get(i);
+                if (seen >= rank) {
+                    return Math.min(upperNanos(i), mMaxNanos.get());
+                }
+            }
+            return mMaxNanos.get(); // Buckets and count were read a moment apart
+        }
+
+        static int bucket(long nanos) {
+            long micros = nanos / 1000;
+            return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+        }
+
+        static long upperNanos(int bucket) {
+            return (1L << bucket) * 1000;
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKETS; i++) {
+                mBuckets.set(i, 0);
+            }
+            mCount.set(0);
+            mTotalNanos.set(0);
+            mMaxNanos.set(0);
+        }
+    }
+}
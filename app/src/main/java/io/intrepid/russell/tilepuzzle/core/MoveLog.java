@@ -0,0 +1,178 @@
+package io.intrepid.russell.tilepuzzle.core;
+
+/**
+ * Append-only journal of the directions the blank moved in, two bits a move and 32 moves to a long.
+ * Any earlier position can be rebuilt by undoing moves from the current board, or by replaying them
+ * from the start.
+ * <p/>
+ * Undone moves stay in the log until a new move is recorded over them, so they can be redone.
+ * <p/>
+ * Moves can be counted per tile, or per run of steps in the same direction, which is what sliding a
+ * whole row or column segment at once makes.
+ */
+public class MoveLog {
+    /**
+     * Every tile slid counts as a move.
+     */
+    public static final int SINGLE_TILE_METRIC = 0;
+    /**
+     * Sliding any number of tiles in one row or column counts as one move.
+     */
+    public static final int MULTI_TILE_METRIC = 1;
+
+    private static final int MOVES_PER_WORD = 32;
+
+    private long[] mWords = new long[1];
+    private int mSize; // Recorded moves, including undone ones still available to redo
+    private int mPosition; // Moves currently applied to the board
+    private int mRuns; // Runs of one direction among the applied moves
+
+    public MoveLog() {
+    }
+
+    /**
+     * @param directions moves already applied to the board, oldest first
+     */
+    public MoveLog(int[] directions) {
+        for (int direction : directions) {
+            record(direction);
+        }
+    }
+
+    /**
+     * Appends a move that was just made, dropping anything that could have been redone.
+     */
+    public void record(int direction) {
+        int word = mPosition / MOVES_PER_WORD;
+        if (word == mWords.length) {
+            long[] words = new long[mWords.length * 2];
+            System.arraycopy(mWords, 0, words, 0, mWords.length);
+            mWords = words;
+        }
+        if (startsRun(mPosition, direction)) {
+            mRuns++;
+        }
+        int shift = 2 * (mPosition % MOVES_PER_WORD);
+        mWords[word] = mWords[word] & ~(3L << shift) | (long) (direction & 3) << shift;
+        mSize = ++mPosition;
+    }
+
+    /**
+     * @return the direction of move {@code index}, counting from the first
+     */
+    public int get(int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException("Move " + index + " of " + mSize);
+        }
+        return (int) (mWords[index / MOVES_PER_WORD] >>> 2 * (index % MOVES_PER_WORD)) & 3;
+    }
+
+    /**
+     * @return the number of moves currently applied
+     */
+    public int getPosition() {
+        return mPosition;
+    }
+
+    /**
+     * @return the number of recorded moves, including any that were undone
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * @param metric {@link #SINGLE_TILE_METRIC} or {@link #MULTI_TILE_METRIC}
+     * @return the applied moves as counted by {@code metric}
+     */
+    public int getMoveCount(int metric) {
+        return metric == MULTI_TILE_METRIC ? mRuns : mPosition;
+    }
+
+    /**
+     * @return the direction of the last applied move, or -1 if there is none
+     */
+    public int getLastDirection() {
+        return mPosition > 0 ? get(mPosition - 1) : -1;
+    }
+
+    /**
+     * @return the direction of the next move to redo, or -1 if there is none
+     */
+    public int getNextDirection() {
+        return mPosition < mSize ? get(mPosition) : -1;
+    }
+
+    public boolean canUndo() {
+        return mPosition > 0;
+    }
+
+    public boolean canRedo() {
+        return mPosition < mSize;
+    }
+
+    /**
+     * Takes back the last applied move on {@code board}, which also takes it off the move count.
+     *
+     * @return false if there was nothing to undo
+     */
+    public boolean undo(Board board) {
+        if (!canUndo()) {
+            return false;
+        }
+        int moves = board.getMoves();
+        int direction = get(mPosition - 1);
+        board.moveBlank(Board.opposite(direction));
+        board.setMoves(moves - 1);
+        mPosition--;
+        if (startsRun(mPosition, direction)) {
+            mRuns--;
+        }
+        return true;
+    }
+
+    /**
+     * Re-applies the next undone move on {@code board}.
+     *
+     * @return false if there was nothing to redo
+     */
+    public boolean redo(Board board) {
+        if (!canRedo()) {
+            return false;
+        }
+        int direction = get(mPosition);
+        board.moveBlank(direction);
+        if (startsRun(mPosition, direction)) {
+            mRuns++;
+        }
+        mPosition++;
+        return true;
+    }
+
+    /**
+     * @return a copy of {@code board} as it was before the first move, with no moves counted
+     */
+    public Board rewind(Board board) {
+        Board start = board.copy();
+        for (int i = mPosition - 1; i >= 0; i--) {
+            start.moveBlank(Board.opposite(get(i)));
+        }
+        start.setMoves(0);
+        return start;
+    }
+
+    private boolean startsRun(int index, int direction) {
+        return index == 0 || get(index - 1) != direction;
+    }
+
+    /**
+     * @return the applied moves, oldest first
+     */
+    public int[] toArray() {
+        int[] directions = new int[mPosition];
+        for (int i = 0; i < directions.length; i++) {
+            directions[i] = get(i);
+        }
+        return directions;
+    }
+}
@@ -0,0 +1,241 @@
+package io.intrepid.russell.tilepuzzle.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Finds optimal solutions for one board on several threads, for positions too deep for {@link Solver}
+ * to finish quickly alone.
+ * <p/>
+ * The top of the search tree is expanded breadth first until there are plenty of nodes per thread.
+ * Each iteration of IDA* then searches every one of those subtrees with the same bound, each worker
+ * taking the next unsearched subtree whenever it finishes one. Subtrees vary wildly in size, and this
+ * keeps every thread busy until the last few. Every solution within the bound is optimal, so the first
+ * subtree to yield one stops the rest, and otherwise the next bound is the smallest that any exceeded.
+ * <p/>
+ * Workers are a plain thread pool rather than fork/join, which Android only has from API 21.
+ * <p/>
+ * A solver is single use. {@link #cancel()} may be called from any thread.
+ */
+public class ParallelSolver {
+    /**
+     * Makes the heuristic for each task, since heuristics can't be shared between searches.
+     */
+    public interface HeuristicFactory {
+        Heuristic newHeuristic();
+    }
+
+    // Aim for this many subtrees per thread, so stealing can even out their sizes
+    private static final int TASKS_PER_THREAD = 16;
+    private static final int MAX_SPLIT_DEPTH = 16;
+
+    private final Board mBoard;
+    private final HeuristicFactory mFactory;
+    private final int mThreads;
+    private final AtomicBoolean mStop = new AtomicBoolean();
+    private volatile boolean mCancelled;
+    private volatile boolean mTimedOut;
+
+    /**
+     * @param threads worker threads, usually one per core
+     */
+    public ParallelSolver(Board board, HeuristicFactory factory, int threads) {
+        if (!board.isSolvable()) {
+            throw new IllegalArgumentException("Board can't be solved:\n" + board);
+        }
+        if (threads < 1) {
+            throw new IllegalArgumentException("Need at least one thread but got " + threads);
+        }
+        mBoard = board.copy();
+        mFactory = factory;
+        mThreads = threads;
+    }
+
+    /**
+     * Stops a running {@link #solve()} as soon as possible.
+     */
+    public void cancel() {
+        mCancelled = true;
+        mStop.set(true);
+    }
+
+    /**
+     * @return an optimal solution, or null if {@link #cancel()} was called first
+     */
+    public Solution solve() {
+        return solve(0);
+    }
+
+    /**
+     * Like {@link #solve()}, but gives up once about {@code timeoutMillis} have passed, or never if it
+     * is 0.
+     *
+     * @return an optimal solution, or null if cancelled or out of time; {@link #isTimedOut()} tells
+     * which
+     */
+    public Solution solve(long timeoutMillis) {
+        long start = System.nanoTime();
+        long deadline = timeoutMillis > 0 ? start + TimeUnit.MILLISECONDS.toNanos(timeoutMillis) : 0;
+        List<Node> frontier = new ArrayList<Node>();
+        frontier.add(new Node(mBoard, new int[0]));
+        long nodes = 0;
+        // Breadth first, so the first solved node found while splitting is an optimal solution
+        while (frontier.size() < mThreads * TASKS_PER_THREAD && frontier.get(0).mPath.length < MAX_SPLIT_DEPTH) {
+            List<Node> next = new ArrayList<Node>(frontier.size() * 3);
+            for (Node node : frontier) {
+                if (node.mBoard.isSolved()) {
+                    return new Solution(node.mPath, nodes, System.nanoTime() - start);
+                }
+                nodes++;
+                node.expand(next);
+            }
+            if (mCancelled) {
+                return null;
+            }
+            frontier = next;
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(mThreads);
+        try {
+            int bound = mFactory.newHeuristic().reset(mBoard.toArray());
+            while (true) {
+                AtomicReference<int[]> found = new AtomicReference<int[]>();
+                AtomicInteger claimed = new AtomicInteger();
+                List<Future<Worker>> workers = new ArrayList<Future<Worker>>(mThreads);
+                for (int i = 0; i < mThreads; i++) {
+                    workers.add(pool.submit(new Worker(frontier, claimed, bound, found)));
+                }
+                int next = Integer.MAX_VALUE;
+                for (Future<Worker> future : workers) {
+                    Worker worker = await(future, deadline);
+                    nodes += worker.mNodes;
+                    next = Math.min(next, worker.mNextBound);
+                }
+                if (mCancelled) {
+                    return null;
+                } else if (found.get() != null) {
+                    return new Solution(found.get(), nodes, System.nanoTime() - start);
+                } else if (mTimedOut) {
+                    return null;
+                }
+                bound = next;
+            }
+        } catch (InterruptedException e) {
+            cancel();
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Search failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * @return true if the last {@link #solve(long)} gave up for lack of time
+     */
+    public boolean isTimedOut() {
+        return mTimedOut;
+    }
+
+    /**
+     * Waits for {@code future}, first stopping the search if {@code deadline} passes.
+     */
+    private Worker await(Future<Worker> future, long deadline) throws InterruptedException, ExecutionException {
+        if (deadline != 0 && !mTimedOut) {
+            try {
+                return future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                mTimedOut = true;
+                mStop.set(true);
+            }
+        }
+        return future.get();
+    }
+
+    /**
+     * A board partway down the tree, with the moves that reached it.
+     */
+    private static class Node {
+        final Board mBoard;
+        final int[] mPath;
+
+        Node(Board board, int[] path) {
+            mBoard = board;
+            mPath = path;
+        }
+
+        int previous() {
+            return mPath.length > 0 ? mPath[mPath.length - 1] : -1;
+        }
+
+        void expand(List<Node> out) {
+            int backtrack = mPath.length > 0 ? Board.opposite(previous()) : -1;
+            for (int direction = 0; direction < 4; direction++) {
+                if (direction == backtrack || mBoard.neighbor(direction) < 0) {
+                    continue;
+                }
+                Board child = mBoard.copy();
+                child.moveBlank(direction);
+                int[] path = new int[mPath.length + 1];
+                System.arraycopy(mPath, 0, path, 0, mPath.length);
+                path[mPath.length] = direction;
+                out.add(new Node(child, path));
+            }
+        }
+    }
+
+    /**
+     * Searches subtrees for one bound, claiming them one at a time until none are left, and tracks the
+     * smallest f-cost that exceeded the bound.
+     */
+    private class Worker implements Callable<Worker> {
+        private final List<Node> mSubtrees;
+        private final AtomicInteger mClaimed;
+        private final int mBound;
+        private final AtomicReference<int[]> mFound;
+        long mNodes;
+        int mNextBound = Integer.MAX_VALUE;
+
+        Worker(List<Node> subtrees, AtomicInteger claimed, int bound, AtomicReference<int[]> found) {
+            mSubtrees = subtrees;
+            mClaimed = claimed;
+            mBound = bound;
+            mFound = found;
+        }
+
+        @Override
+        public Worker call() {
+            int index;
+            while (!mStop.get() && (index = mClaimed.getAndIncrement()) < mSubtrees.size()) {
+                Node node = mSubtrees.get(index);
+                Solver solver = new Solver(node.mBoard, mFactory.newHeuristic(), mStop);
+                int depth = node.mPath.length;
+                int result = solver.search(depth, mBound, node.previous());
+                mNodes += solver.getNodes();
+                if (result == Solver.FOUND) {
+                    int[] rest = solver.getPath(depth);
+                    int[] path = new int[depth + rest.length];
+                    System.arraycopy(node.mPath, 0, path, 0, depth);
+                    System.arraycopy(rest, 0, path, depth, rest.length);
+                    if (mFound.compareAndSet(null, path)) {
+                        mStop.set(true); // Everything else within this bound is no better
+                    }
+                } else if (result >= 0 && result < mNextBound) {
+                    mNextBound = result;
+                }
+            }
+            return this;
+        }
+    }
+}
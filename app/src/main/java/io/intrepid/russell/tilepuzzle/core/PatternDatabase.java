@@ -0,0 +1,558 @@
+package io.intrepid.russell.tilepuzzle.core;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Exact move counts for a subset ("pattern") of the tiles, treating every other tile as interchangeable
+ * and the blank as free to be anywhere. Only moves of pattern tiles are counted, and each entry is the
+ * smallest count over every place the blank could start, so the counts of disjoint patterns can be
+ * added together without overestimating. Leaving the blank out keeps a database to
+ * {@code cells!/(cells-k)!} entries for {@code k} tiles, a {@code cells - k} times smaller table than one
+ * that tracks the blank, which buys a tile or two more per pattern for the same space.
+ * <p/>
+ * Entries are indexed by the ordered positions of the pattern tiles and stored one byte each, holding
+ * the exact count. A byte of 255 marks an entry the search never reached.
+ * <p/>
+ * File layout, big endian: magic, version, width, height, tile count, the tile values, entry count,
+ * then the counts. Files are memory-mapped rather than read, so loading costs neither heap nor parse
+ * time.
+ */
+public class PatternDatabase {
+    private static final int MAGIC = 0x54504442; // "TPDB"
+    private static final int VERSION = 2;
+    private static final int UNVISITED = 0xFF;
+
+    private final int mWidth;
+    private final int mHeight;
+    private final int[] mTiles;
+    private final int mEntries;
+    private final ByteBuffer mData;
+    private final int mDataOffset;
+
+    private PatternDatabase(int width, int height, int[] tiles, ByteBuffer data, int dataOffset) {
+        mWidth = width;
+        mHeight = height;
+        mTiles = tiles;
+        mEntries = entryCount(width * height, tiles.length);
+        mData = data;
+        mDataOffset = dataOffset;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * @return the tile values in this pattern, in index order
+     */
+    public int[] getTiles() {
+        return mTiles.clone();
+    }
+
+    public int getEntryCount() {
+        return mEntries;
+    }
+
+    /**
+     * @return the count stored for {@code index}
+     */
+    public int get(int index) {
+        return mData.get(mDataOffset + index) & 0xFF;
+    }
+
+    /**
+     * @param positions board position of each pattern tile, in {@link #getTiles()} order
+     * @return the fewest moves of pattern tiles that bring them all home
+     */
+    public int distance(int[] positions) {
+        int count = get(rank(positions));
+        if (count == UNVISITED) {
+            throw new IllegalStateException("Corrupt pattern database");
+        }
+        return count;
+    }
+
+    /**
+     * @return the index of the given pattern tile positions
+     */
+    public int rank(int[] positions) {
+        return rank(positions, mWidth * mHeight);
+    }
+
+    static int rank(int[] positions, int cells) {
+        int index = 0;
+        int k = positions.length;
+        for (int i = 0; i < k; i++) {
+            int position = positions[i];
+            int smaller = 0;
+            for (int j = 0; j < i; j++) {
+                if (positions[j] < position) {
+                    smaller++;
+                }
+            }
+            index = index * (cells - i) + position - smaller;
+        }
+        return index;
+    }
+
+    static void unrank(int index, int cells, int[] positions) {
+        int k = positions.length;
+        for (int i = k - 1; i >= 0; i--) {
+            int radix = cells - i;
+            positions[i] = index % radix;
+            index /= radix;
+        }
+        // Each digit counts the free cells before the tile, so turn it back into a cell
+        long occupied = 0;
+        for (int i = 0; i < k; i++) {
+            positions[i] = nthFree(positions[i], occupied);
+            occupied |= 1L << positions[i];
+        }
+    }
+
+    static int entryCount(int cells, int k) {
+        long count = 1;
+        for (int i = 0; i < k; i++) {
+            count *= cells - i;
+        }
+        if (count > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(k + " tiles on " + cells + " cells is too many entries");
+        }
+        return (int) count;
+    }
+
+    private static long occupancy(int[] positions) {
+        long occupied = 0;
+        for (int position : positions) {
+            occupied |= 1L << position;
+        }
+        return occupied;
+    }
+
+    /**
+     * @return the {@code n}th cell, from 0, that isn't in {@code occupied}
+     */
+    private static int nthFree(int n, long occupied) {
+        int cell = 0;
+        while (true) {
+            if ((occupied & (1L << cell)) == 0) {
+                if (n == 0) {
+                    return cell;
+                }
+                n--;
+            }
+            cell++;
+        }
+    }
+
+    /**
+     * Builds a database with a breadth-first search backwards from the goal. The search itself has to
+     * know where the blank is, but moving it through non-pattern cells is free, so a search state is the
+     * pattern tiles plus the region of free cells the blank is in. Each entry gets the depth at which
+     * any of its states is first reached. Each layer is split across {@code threads} workers.
+     * <p/>
+     * The counts are built on the heap and the database wraps them without a copy. To keep them off the
+     * heap afterwards, generate straight to a file with {@link #generate(int, int, int[], int, File)}.
+     */
+    public static PatternDatabase generate(int width, int height, int[] tiles, int threads)
+            throws InterruptedException {
+        Generator generator = search(width, height, tiles, threads);
+        return new PatternDatabase(width, height, tiles.clone(), ByteBuffer.wrap(generator.mCounts), 0);
+    }
+
+    /**
+     * Builds a database like {@link #generate(int, int, int[], int)} and writes it to {@code file}
+     * like {@link #write(File)}.
+     */
+    public static void generate(int width, int height, int[] tiles, int threads, File file)
+            throws IOException, InterruptedException {
+        Generator generator = search(width, height, tiles, threads);
+        File temp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+        try {
+            writeHeader(out, width, height, tiles, generator.mEntries);
+            out.write(generator.mCounts);
+        } finally {
+            out.close();
+        }
+        rename(temp, file);
+    }
+
+    private static Generator search(int width, int height, int[] tiles, int threads)
+            throws InterruptedException {
+        final Generator generator = new Generator(width, height, tiles);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            int[] frontier = generator.seed();
+            for (int depth = 0; frontier.length > 0; depth++) {
+                final int[] current = frontier;
+                final int next = depth + 1;
+                int chunk = (current.length + threads - 1) / threads;
+                List<Callable<States>> layer = new ArrayList<Callable<States>>(threads);
+                for (int start = 0; start < current.length; start += chunk) {
+                    final int from = start;
+                    final int to = Math.min(current.length, start + chunk);
+                    layer.add(new Callable<States>() {
+                        @Override
+                        public States call() {
+                            return generator.expand(current, from, to, next);
+                        }
+                    });
+                }
+                List<States> found = new ArrayList<States>(threads);
+                int size = 0;
+                for (Future<States> result : executor.invokeAll(layer)) {
+                    found.add(result.get());
+                    size += result.get().mSize;
+                }
+                frontier = new int[size];
+                size = 0;
+                for (States states : found) {
+                    System.arraycopy(states.mItems, 0, frontier, size, states.mSize);
+                    size += states.mSize;
+                }
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        generator.finish();
+        return generator;
+    }
+
+    /**
+     * Breadth-first search state. A search state is numbered by its entry and the lowest cell of the
+     * blank's region, counted among the free cells. States are claimed with a compare-and-set on their
+     * bit, so workers never block each other.
+     */
+    private static class Generator {
+        final int mCells;
+        final int mK;
+        final int mFree;
+        final int mEntries;
+        final int mWidth;
+        final int[] mNeighbors;
+        final int[] mGoal;
+        final long mBoard; // Every cell
+        final long mNotFirstColumn;
+        final long mNotLastColumn;
+        final byte[] mCounts;
+        AtomicLongArray mSeen;
+
+        Generator(int width, int height, int[] tiles) {
+            mCells = width * height;
+            if (mCells > 64) {
+                throw new IllegalArgumentException("Pattern databases are limited to 64 cells");
+            }
+            mK = tiles.length;
+            mFree = mCells - mK;
+            mEntries = entryCount(mCells, mK);
+            if ((long) mEntries * mFree > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException(mK + " tiles on " + mCells + " cells is too many states");
+            }
+            mWidth = width;
+            mNeighbors = Solver.neighborTable(width, height);
+            mBoard = mCells == 64 ? -1L : (1L << mCells) - 1;
+            long firstColumn = 0;
+            for (int row = 0; row < height; row++) {
+                firstColumn |= 1L << (row * width);
+            }
+            mNotFirstColumn = mBoard & ~firstColumn;
+            mNotLastColumn = mBoard & ~(firstColumn << (width - 1));
+            mCounts = new byte[mEntries];
+            Arrays.fill(mCounts, (byte) UNVISITED);
+            mSeen = new AtomicLongArray((int) (((long) mEntries * mFree + 63) / 64));
+            mGoal = tiles.clone();
+        }
+
+        /**
+         * @return the first frontier: the goal, with the blank in the last cell
+         */
+        int[] seed() {
+            long occupied = occupancy(mGoal);
+            long region = region(mCells - 1, occupied);
+            int entry = rank(mGoal, mCells);
+            mCounts[entry] = 0;
+            int state = state(entry, region, occupied);
+            claim(state);
+            return new int[]{state};
+        }
+
+        /**
+         * Drops the set of seen states once the search is done, so only the counts stay on the heap.
+         */
+        void finish() {
+            mSeen = null;
+        }
+
+        /**
+         * Expands the states {@code [from, to)} of {@code frontier}, which are all {@code depth - 1}
+         * pattern moves from the goal.
+         *
+         * @return the states this call claimed for the next layer
+         */
+        States expand(int[] frontier, int from, int to, int depth) {
+            int[] positions = new int[mK];
+            States found = new States();
+            for (int i = from; i < to; i++) {
+                int entry = frontier[i] / mFree;
+                unrank(entry, mCells, positions);
+                long occupied = occupancy(positions);
+                int blank = nthFree(frontier[i] % mFree, occupied);
+                long region = region(blank, occupied);
+                for (int slot = 0; slot < mK; slot++) {
+                    int tile = positions[slot];
+                    for (int direction = 0; direction < 4; direction++) {
+                        int target = mNeighbors[tile * 4 + direction];
+                        if (target < 0 || (region & (1L << target)) == 0) {
+                            continue;
+                        }
+                        // The blank ends up where the tile was
+                        positions[slot] = target;
+                        long moved = occupied ^ (1L << tile) ^ (1L << target);
+                        int next = rank(positions, mCells);
+                        int state = state(next, region(tile, moved), moved);
+                        if (claim(state)) {
+                            found.add(state);
+                            if ((mCounts[next] & 0xFF) == UNVISITED) {
+                                mCounts[next] = (byte) depth; // Racing writers all write the same depth
+                            }
+                        }
+                    }
+                    positions[slot] = tile;
+                }
+            }
+            return found;
+        }
+
+        /**
+         * @return the cells the blank at {@code blank} can reach without moving a pattern tile, found by
+         * growing the region a step in every direction at once
+         */
+        private long region(int blank, long occupied) {
+            long free = mBoard & ~occupied;
+            long region = 1L << blank;
+            while (true) {
+                long grown = (region | (region << 1) & mNotFirstColumn | (region >>> 1) & mNotLastColumn
+                        | region << mWidth | region >>> mWidth) & free;
+                if (grown == region) {
+                    return region;
+                }
+                region = grown;
+            }
+        }
+
+        private int state(int entry, long region, long occupied) {
+            int lowest = Long.numberOfTrailingZeros(region);
+            int freeIndex = lowest - Long.bitCount(occupied & ((1L << lowest) - 1));
+            return entry * mFree + freeIndex;
+        }
+
+        private boolean claim(int state) {
+            int word = state >>> 6;
+            long bit = 1L << (state & 63);
+            while (true) {
+                long old = mSeen.get(word);
+                if ((old & bit) != 0) {
+                    return false;
+                }
+                if (mSeen.compareAndSet(word, old, old | bit)) {
+                    return true;
+                }
+            }
+        }
+    }
+
+    /**
+     * A growable list of search states.
+     */
+    private static class States {
+        int[] mItems = new int[64];
+        int mSize;
+
+        void add(int state) {
+            if (mSize == mItems.length) {
+                mItems = Arrays.copyOf(mItems, mSize * 2);
+            }
+            mItems[mSize++] = state;
+        }
+    }
+
+    /**
+     * Writes to a temporary file next to {@code file} and renames it into place.
+     */
+    public void write(File file) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+        try {
+            writeHeader(out, mWidth, mHeight, mTiles, mEntries);
+            for (int i = 0; i < mEntries; i++) {
+                out.writeByte(mData.get(mDataOffset + i));
+            }
+        } finally {
+            out.close();
+        }
+        rename(temp, file);
+    }
+
+    private static void writeHeader(DataOutputStream out, int width, int height, int[] tiles, int entries)
+            throws IOException {
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeByte(width);
+        out.writeByte(height);
+        out.writeByte(tiles.length);
+        for (int tile : tiles) {
+            out.writeByte(tile);
+        }
+        out.writeInt(entries);
+    }
+
+    private static void rename(File temp, File file) throws IOException {
+        if (!temp.renameTo(file)) {
+            throw new IOException("Couldn't rename " + temp + " to " + file);
+        }
+    }
+
+    /**
+     * Maps a file written by {@link #write(File)}. The header is checked first, and the file must be
+     * exactly as long as the entry count it gives, so a truncated or padded file is never mapped.
+     */
+    public static PatternDatabase map(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            if (raf.length() < 12 || raf.readInt() != MAGIC || raf.readByte() != VERSION) {
+                throw new IOException(file + " is not a version " + VERSION + " pattern database");
+            }
+            int width = raf.readByte();
+            int height = raf.readByte();
+            int count = raf.readByte();
+            if (width < 2 || height < 2 || width * height > 64 || count < 1 || count >= width * height) {
+                throw new IOException(file + " has a bad header");
+            }
+            int[] tiles = new int[count];
+            for (int i = 0; i < count; i++) {
+                tiles[i] = raf.readByte();
+            }
+            int entries = raf.readInt();
+            long dataOffset = raf.getFilePointer();
+            if (entries != entryCount(width * height, count) || raf.length() != dataOffset + entries) {
+                throw new IOException(file + " is truncated or has the wrong entry count");
+            }
+            ByteBuffer data = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            // The mapping stays valid after the channel is closed
+            return new PatternDatabase(width, height, tiles, data, (int) dataOffset);
+        } catch (EOFException e) {
+            throw new IOException(file + " is truncated", e);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Maps the databases for {@code partition} from {@code directory}, generating and writing any that
+     * are missing or unreadable first.
+     */
+    public static PatternDatabase[] load(File directory, int width, int height, int[][] partition, int threads)
+            throws IOException, InterruptedException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Couldn't create " + directory);
+        }
+        PatternDatabase[] databases = new PatternDatabase[partition.length];
+        for (int i = 0; i < partition.length; i++) {
+            File file = new File(directory, fileName(width, height, partition[i]));
+            if (file.exists()) {
+                try {
+                    databases[i] = map(file);
+                    continue;
+                } catch (IOException e) {
+                    // Left over from an older version or a failed write, so build it again
+                    if (!file.delete()) {
+                        throw e;
+                    }
+                }
+            }
+            generate(width, height, partition[i], threads, file);
+            databases[i] = map(file);
+        }
+        deleteOthers(directory, width, height, partition);
+        return databases;
+    }
+
+    /**
+     * Deletes files for this board size from earlier partitions, which would otherwise sit unused.
+     */
+    private static void deleteOthers(File directory, int width, int height, int[][] partition) {
+        Set<String> current = new HashSet<String>();
+        for (int[] tiles : partition) {
+            current.add(fileName(width, height, tiles));
+        }
+        String prefix = fileName(width, height, new int[0]);
+        prefix = prefix.substring(0, prefix.length() - ".bin".length()) + "_";
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (name.startsWith(prefix) && !current.contains(name)) {
+                file.delete(); // Best effort; a file left behind only costs space
+            }
+        }
+    }
+
+    static String fileName(int width, int height, int[] tiles) {
+        StringBuilder builder = new StringBuilder("pdb_").append(width).append('x').append(height);
+        for (int tile : tiles) {
+            builder.append('_').append(tile);
+        }
+        return builder.append(".bin").toString();
+    }
+
+    /**
+     * @return the disjoint patterns used by default: 6-6-3 for 4x4, 5-5-5-5-4 for 5x5, and runs of up
+     * to 5 tiles in row-major order otherwise
+     */
+    public static int[][] defaultPartition(int width, int height) {
+        if (width == 4 && height == 4) {
+            return new int[][]{{0, 4, 5, 8, 9, 12}, {6, 7, 10, 11, 13, 14}, {1, 2, 3}};
+        } else if (width == 5 && height == 5) {
+            return new int[][]{{0, 1, 5, 6, 10}, {2, 3, 4, 7, 8}, {9, 13, 14, 18, 19}, {11, 12, 15, 16, 17},
+                    {20, 21, 22, 23}};
+        }
+        int tiles = width * height - 1;
+        int group = 5;
+        int[][] partition = new int[(tiles + group - 1) / group][];
+        for (int i = 0; i < partition.length; i++) {
+            partition[i] = new int[Math.min(group, tiles - i * group)];
+            for (int j = 0; j < partition[i].length; j++) {
+                partition[i][j] = i * group + j;
+            }
+        }
+        return partition;
+    }
+}
@@ -0,0 +1,79 @@
+package io.intrepid.russell.tilepuzzle.core;
+
+import java.util.Arrays;
+
+/**
+ * Sum of disjoint {@link PatternDatabase} counts. Moving a tile outside a pattern doesn't change that
+ * pattern's count, so an update is one re-rank of the pattern holding the moved tile and one lookup.
+ */
+public class PatternDatabaseHeuristic implements Heuristic {
+    private final PatternDatabase[] mDatabases;
+    private final int mMissingValue;
+    private final int[] mPatternOf; // tile value -> pattern, or -1 if no pattern holds it
+    private final int[] mSlotOf; // tile value -> index within its pattern
+    private final int[][] mPositions; // Where each pattern's tiles are
+    private final int[] mCounts;
+    private int mTotal;
+
+    /**
+     * @param databases patterns for the same board dimensions, with no tile in more than one
+     */
+    public PatternDatabaseHeuristic(PatternDatabase... databases) {
+        mDatabases = databases;
+        int width = databases[0].getWidth();
+        int height = databases[0].getHeight();
+        mMissingValue = width * height - 1;
+        mPatternOf = new int[mMissingValue + 1];
+        mSlotOf = new int[mMissingValue + 1];
+        Arrays.fill(mPatternOf, -1);
+        mPositions = new int[databases.length][];
+        mCounts = new int[databases.length];
+        for (int i = 0; i < databases.length; i++) {
+            PatternDatabase database = databases[i];
+            if (database.getWidth() != width || database.getHeight() != height) {
+                throw new IllegalArgumentException("Pattern databases are for different board sizes");
+            }
+            int[] tiles = database.getTiles();
+            for (int slot = 0; slot < tiles.length; slot++) {
+                if (tiles[slot] >= mMissingValue || mPatternOf[tiles[slot]] >= 0) {
+                    throw new IllegalArgumentException("Tile " + tiles[slot] + " is the blank or in two patterns");
+                }
+                mPatternOf[tiles[slot]] = i;
+                mSlotOf[tiles[slot]] = slot;
+            }
+            mPositions[i] = new int[tiles.length];
+        }
+    }
+
+    @Override
+    public int reset(int[] tiles) {
+        for (int position = 0; position < tiles.length; position++) {
+            int value = tiles[position];
+            if (value != mMissingValue && mPatternOf[value] >= 0) {
+                mPositions[mPatternOf[value]][mSlotOf[value]] = position;
+            }
+        }
+        mTotal = 0;
+        for (int i = 0; i < mDatabases.length; i++) {
+            mCounts[i] = mDatabases[i].distance(mPositions[i]);
+            mTotal += mCounts[i];
+        }
+        return mTotal;
+    }
+
+    @Override
+    public int move(int value, int from, int to) {
+        int pattern = mPatternOf[value];
+        if (pattern < 0) {
+            return mTotal;
+        }
+        int[] positions = mPositions[pattern];
+        positions[mSlotOf[value]] = to;
+        PatternDatabase database = mDatabases[pattern];
+        int previous = mCounts[pattern];
+        int count = database.get(database.rank(positions));
+        mCounts[pattern] = count;
+        mTotal += count - previous;
+        return mTotal;
+    }
+}
@@ -0,0 +1,501 @@
+package io.intrepid.russell.tilepuzzle.core;
+
+import java.util.Arrays;
+
+/**
+ * Solves boards of any size in polynomial time, for boards too big to solve optimally.
+ * <p/>
+ * The board is reduced a line at a time. Each step places the top row or the left column of what's
+ * left, whichever is longer, until at most 3x3 remains. That part is then solved optimally. A tile is
+ * walked to its place one cell at a time, with the blank routed around it and around everything already
+ * placed by breadth-first search. The last two tiles of a line go in with the usual corner trick: the
+ * first is parked in the corner and the second under it, and then two moves drop both into place.
+ * <p/>
+ * The moves are then shortened by a bounded local search. Moves that undo the one before are
+ * cancelled. Each window of {@link #WINDOW} moves is replaced by the shortest sequence with the same
+ * effect if that's shorter, found with a small depth-limited search capped at
+ * {@link #WINDOW_NODE_BUDGET} nodes. Passes repeat while they help, up to {@link #MAX_PASSES}.
+ * <p/>
+ * Apart from the solution itself, memory is a few arrays of one entry per tile. A solver is single use
+ * and not thread safe.
+ */
+public class ReductionSolver {
+    static final int WINDOW = 10;
+    static final int WINDOW_NODE_BUDGET = 2000;
+    static final int MAX_PASSES = 4;
+
+    // Reduction stops once what's left is at most this many rows and columns
+    private static final int RESIDUAL_SIDE = 3;
+
+    // With the first tile of a row's last pair parked in the corner, the blank beside it and the second
+    // tile right under the blank, the blank is boxed in. These moves place both tiles from there,
+    // staying within the last two columns and three rows. Columns use the same moves transposed.
+    private static final int[] UNBOX_ROW = directions("RDDLURULDDRULURD");
+    private static final int[] UNBOX_COLUMN = directions("DRRULDLURRDLULDR");
+
+    private final int mWidth;
+    private final int mHeight;
+    private final int mMissingValue;
+    private final int[] mStart;
+    private final int[] mNeighbors; // position * 4 + direction, -1 if off the board
+    private final int mLowerBound;
+
+    // The board as the moves are made
+    private final int[] mTiles;
+    private final int[] mPositions; // value -> position
+    private int mBlank;
+
+    // Reduction
+    private final boolean[] mLocked;
+    private final int[] mQueue;
+    private final int[] mVisited; // Stamp of the search that last reached each position
+    private final int[] mReachedBy; // Direction of the last step into each position
+    private final int[] mDistance; // From the target of the tile being placed, -1 if unreachable
+    private int mStamp;
+    private int mTop;
+    private int mLeft;
+    private int[] mMoves = new int[256];
+    private int mMoveCount;
+    private int mReducedLength;
+
+    // Windowed search
+    private final int[] mGoalPositions; // value -> position after the window
+    private final int[] mWindowPath = new int[WINDOW];
+    private long mNodes;
+    private long mWindowNodes;
+
+    public ReductionSolver(Board board) {
+        if (!board.isSolvable()) {
+            throw new IllegalArgumentException("Board can't be solved:\n" + board);
+        }
+        mWidth = board.getWidth();
+        mHeight = board.getHeight();
+        int count = board.getTileCount();
+        mMissingValue = board.getMissingValue();
+        mStart = board.toArray();
+        mNeighbors = Solver.neighborTable(mWidth, mHeight);
+        mTiles = new int[count];
+        mPositions = new int[count];
+        mLocked = new boolean[count];
+        mQueue = new int[count];
+        mVisited = new int[count];
+        mReachedBy = new int[count];
+        mDistance = new int[count];
+        mGoalPositions = new int[count];
+        mLowerBound = manhattan(mStart);
+    }
+
+    /**
+     * @return the Manhattan distance of the board, which no solution can be shorter than
+     */
+    public int getLowerBound() {
+        return mLowerBound;
+    }
+
+    /**
+     * @return how long the solution was before the local search, once {@link #solve()} has run
+     */
+    public int getReducedLength() {
+        return mReducedLength;
+    }
+
+    /**
+     * @return a solution, usually somewhat longer than optimal; see {@link #getLowerBound()} for how much
+     * at most
+     */
+    public Solution solve() {
+        long start = System.nanoTime();
+        reset();
+        mTop = 0;
+        mLeft = 0;
+        while (mHeight - mTop > RESIDUAL_SIDE || mWidth - mLeft > RESIDUAL_SIDE) {
+            if (mHeight - mTop >= mWidth - mLeft) {
+                placeRow();
+            } else {
+                placeColumn();
+            }
+        }
+        solveResidual();
+        mReducedLength = mMoveCount;
+
+        for (int pass = 0; pass < MAX_PASSES; pass++) {
+            int before = mMoveCount;
+            cancelInverses();
+            shortenWindows(pass % 2 == 0 ? 0 : WINDOW / 2);
+            if (mMoveCount == before) {
+                break;
+            }
+        }
+        cancelInverses();
+
+        int[] directions = new int[mMoveCount];
+        System.arraycopy(mMoves, 0, directions, 0, mMoveCount);
+        return new Solution(directions, mNodes, System.nanoTime() - start);
+    }
+
+    private void reset() {
+        System.arraycopy(mStart, 0, mTiles, 0, mStart.length);
+        for (int position = 0; position < mTiles.length; position++) {
+            mPositions[mTiles[position]] = position;
+        }
+        mBlank = mPositions[mMissingValue];
+    }
+
+    /**
+     * Places the top row of what's left, from the left, and then drops its last two tiles in together.
+     */
+    private void placeRow() {
+        int row = mTop * mWidth;
+        for (int col = mLeft; col < mWidth - 2; col++) {
+            placeTile(row + col, row + col);
+            mLocked[row + col] = true;
+        }
+        int first = row + mWidth - 2;
+        int second = first + 1;
+        if (mTiles[first] != first || mTiles[second] != second) {
+            placeTile(first, second);
+            mLocked[second] = true;
+            if (tryPlaceTile(second, second + mWidth)) {
+                mLocked[second + mWidth] = true;
+                routeBlank(first, -1);
+                move(Board.RIGHT);
+                move(Board.DOWN);
+                mLocked[second + mWidth] = false;
+            } else {
+                moves(UNBOX_ROW);
+            }
+        }
+        mLocked[first] = true;
+        mLocked[second] = true;
+        mTop++;
+    }
+
+    /**
+     * Places the left column of what's left, from the top, and then drops its last two tiles in together.
+     */
+    private void placeColumn() {
+        for (int row = mTop; row < mHeight - 2; row++) {
+            int position = row * mWidth + mLeft;
+            placeTile(position, position);
+            mLocked[position] = true;
+        }
+        int first = (mHeight - 2) * mWidth + mLeft;
+        int second = first + mWidth;
+        if (mTiles[first] != first || mTiles[second] != second) {
+            placeTile(first, second);
+            mLocked[second] = true;
+            if (tryPlaceTile(second, second + 1)) {
+                mLocked[second + 1] = true;
+                routeBlank(first, -1);
+                move(Board.DOWN);
+                move(Board.RIGHT);
+                mLocked[second + 1] = false;
+            } else {
+                moves(UNBOX_COLUMN);
+            }
+        }
+        mLocked[first] = true;
+        mLocked[second] = true;
+        mLeft++;
+    }
+
+    /**
+     * Walks tile {@code value} to {@code target} through unlocked positions, one cell at a time.
+     */
+    private void placeTile(int value, int target) {
+        if (!tryPlaceTile(value, target)) {
+            throw new IllegalStateException("Blank boxed in placing " + value + " at " + target);
+        }
+    }
+
+    /**
+     * Like {@link #placeTile}, but stops if the tile cuts the blank off from where it has to go next.
+     * That only happens to the second tile of a pair, in the position {@link #UNBOX_ROW} starts from.
+     *
+     * @return false if the blank was boxed in
+     */
+    private boolean tryPlaceTile(int value, int target) {
+        if (mPositions[value] == target) {
+            return true;
+        }
+        // Distances to the target, so every step can go downhill
+        int[] distance = mDistance;
+        Arrays.fill(distance, -1);
+        int head = 0;
+        int tail = 0;
+        mQueue[tail++] = target;
+        distance[target] = 0;
+        while (head < tail) {
+            int position = mQueue[head++];
+            for (int direction = 0; direction < 4; direction++) {
+                int next = mNeighbors[position * 4 + direction];
+                if (next >= 0 && !mLocked[next] && distance[next] < 0) {
+                    distance[next] = distance[position] + 1;
+                    mQueue[tail++] = next;
+                }
+            }
+        }
+        while (mPositions[value] != target) {
+            int position = mPositions[value];
+            int step = -1;
+            for (int direction = 0; direction < 4 && step < 0; direction++) {
+                int next = mNeighbors[position * 4 + direction];
+                if (next >= 0 && distance[next] >= 0 && distance[next] == distance[position] - 1) {
+                    step = next;
+                }
+            }
+            if (!routeBlank(step, position)) {
+                return false;
+            }
+            move(directionBetween(step, position));
+        }
+        return true;
+    }
+
+    /**
+     * Moves the blank to {@code target} the shortest way through unlocked positions, not passing
+     * {@code avoid}.
+     *
+     * @return false, without moving, if there is no way
+     */
+    private boolean routeBlank(int target, int avoid) {
+        if (mBlank == target) {
+            return true;
+        }
+        int stamp = ++mStamp;
+        int head = 0;
+        int tail = 0;
+        mQueue[tail++] = mBlank;
+        mVisited[mBlank] = stamp;
+        while (head < tail && mVisited[target] != stamp) {
+            int position = mQueue[head++];
+            for (int direction = 0; direction < 4; direction++) {
+                int next = mNeighbors[position * 4 + direction];
+                if (next >= 0 && next != avoid && !mLocked[next] && mVisited[next] != stamp) {
+                    mVisited[next] = stamp;
+                    mReachedBy[next] = direction;
+                    mQueue[tail++] = next;
+                }
+            }
+        }
+        if (mVisited[target] != stamp) {
+            return false;
+        }
+        // Walk back to the blank, then make the moves forward
+        int length = 0;
+        for (int position = target; position != mBlank; ) {
+            int direction = mReachedBy[position];
+            mQueue[length++] = direction;
+            position = mNeighbors[position * 4 + Board.opposite(direction)];
+        }
+        while (length > 0) {
+            move(mQueue[--length]);
+        }
+        return true;
+    }
+
+    /**
+     * Solves the part left after reduction optimally, on a board of its own.
+     */
+    private void solveResidual() {
+        int width = mWidth - mLeft;
+        int height = mHeight - mTop;
+        int[] values = new int[width * height];
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                int value = mTiles[(mTop + row) * mWidth + mLeft + col];
+                values[row * width + col] = value == mMissingValue ? values.length - 1
+                        : (value / mWidth - mTop) * width + value % mWidth - mLeft;
+            }
+        }
+        // Directions mean the same on the small board
+        Solution solution = new Solver(Board.create(width, height, values)).solve();
+        mNodes += solution.getNodesExpanded();
+        for (int i = 0; i < solution.length(); i++) {
+            move(solution.getDirection(i));
+        }
+    }
+
+    private void moves(int[] directions) {
+        for (int direction : directions) {
+            move(direction);
+        }
+    }
+
+    private void move(int direction) {
+        moveBlank(direction);
+        if (mMoveCount == mMoves.length) {
+            int[] longer = new int[mMoves.length * 2];
+            System.arraycopy(mMoves, 0, longer, 0, mMoveCount);
+            mMoves = longer;
+        }
+        mMoves[mMoveCount++] = direction;
+    }
+
+    private void moveBlank(int direction) {
+        int position = mNeighbors[mBlank * 4 + direction];
+        int value = mTiles[position];
+        mTiles[mBlank] = value;
+        mPositions[value] = mBlank;
+        mTiles[position] = mMissingValue;
+        mPositions[mMissingValue] = position;
+        mBlank = position;
+    }
+
+    /**
+     * @return the direction the blank moves to go from {@code from} to the neighboring {@code to}
+     */
+    private int directionBetween(int from, int to) {
+        for (int direction = 0; direction < 4; direction++) {
+            if (mNeighbors[from * 4 + direction] == to) {
+                return direction;
+            }
+        }
+        throw new IllegalArgumentException(from + " and " + to + " aren't neighbors");
+    }
+
+    /**
+     * Drops every move that undoes the one before it, repeatedly, in one pass.
+     */
+    private void cancelInverses() {
+        int length = 0;
+        for (int i = 0; i < mMoveCount; i++) {
+            int direction = mMoves[i];
+            if (length > 0 && mMoves[length - 1] == Board.opposite(direction)) {
+                length--;
+            } else {
+                mMoves[length++] = direction;
+            }
+        }
+        mMoveCount = length;
+    }
+
+    /**
+     * Replays the moves, replacing windows that have a shorter equivalent. The moves are rewritten in
+     * place, which works because the output never gets ahead of the input.
+     *
+     * @param offset moves to keep before the first window, so passes can straddle earlier boundaries
+     */
+    private void shortenWindows(int offset) {
+        reset();
+        int read = 0;
+        int write = 0;
+        for (; read < offset && read < mMoveCount; read++) {
+            moveBlank(mMoves[read]);
+            mMoves[write++] = mMoves[read];
+        }
+        while (read + WINDOW <= mMoveCount) {
+            int length = shortestEquivalent(read);
+            if (length >= 0) {
+                for (int i = 0; i < length; i++) {
+                    moveBlank(mWindowPath[i]);
+                    mMoves[write++] = mWindowPath[i];
+                }
+                read += WINDOW;
+            } else {
+                for (int i = 0; i < WINDOW / 2; i++) {
+                    moveBlank(mMoves[read]);
+                    mMoves[write++] = mMoves[read++];
+                }
+            }
+        }
+        while (read < mMoveCount) {
+            mMoves[write++] = mMoves[read++];
+        }
+        mMoveCount = write;
+    }
+
+    /**
+     * @return the length of a sequence shorter than the window of moves starting at {@code start}, with
+     * the same effect from the current board, left in {@link #mWindowPath}; or -1 if none was found
+     * within the node budget
+     */
+    private int shortestEquivalent(int start) {
+        // Where every tile ends up after the window
+        for (int i = start; i < start + WINDOW; i++) {
+            moveBlank(mMoves[i]);
+        }
+        System.arraycopy(mPositions, 0, mGoalPositions, 0, mPositions.length);
+        for (int i = start + WINDOW - 1; i >= start; i--) {
+            moveBlank(Board.opposite(mMoves[i]));
+        }
+
+        int estimate = 0;
+        for (int value = 0; value < mMissingValue; value++) {
+            estimate += distance(mPositions[value], mGoalPositions[value]);
+        }
+        mWindowNodes = 0;
+        // Every sequence with the same effect has the window's parity, so bounds go up in twos
+        for (int bound = estimate; bound < WINDOW; bound += 2) {
+            int result = searchWindow(0, bound, -1, estimate);
+            if (result >= 0) {
+                mNodes += mWindowNodes;
+                return result;
+            } else if (mWindowNodes > WINDOW_NODE_BUDGET) {
+                break;
+            }
+        }
+        mNodes += mWindowNodes;
+        return -1;
+    }
+
+    /**
+     * Depth-first search toward {@link #mGoalPositions} within {@code bound} moves.
+     *
+     * @return the length of the path found, or -1
+     */
+    private int searchWindow(int depth, int bound, int previous, int estimate) {
+        if (estimate == 0) {
+            return depth;
+        }
+        if (depth + estimate > bound || ++mWindowNodes > WINDOW_NODE_BUDGET) {
+            return -1;
+        }
+        int blank = mBlank;
+        for (int direction = 0; direction < 4; direction++) {
+            if (direction == (previous ^ 1)) {
+                continue;
+            }
+            int position = mNeighbors[blank * 4 + direction];
+            if (position < 0) {
+                continue;
+            }
+            int value = mTiles[position];
+            int goal = mGoalPositions[value];
+            int next = estimate - distance(position, goal) + distance(blank, goal);
+            moveBlank(direction);
+            mWindowPath[depth] = direction;
+            int result = searchWindow(depth + 1, bound, direction, next);
+            moveBlank(direction ^ 1);
+            if (result >= 0) {
+                return result;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param moves one of U, D, L and R per move, as {@link Solution#toString()} writes them
+     */
+    private static int[] directions(String moves) {
+        int[] directions = new int[moves.length()];
+        for (int i = 0; i < directions.length; i++) {
+            directions[i] = "UDLR".indexOf(moves.charAt(i));
+        }
+        return directions;
+    }
+
+    private int distance(int from, int to) {
+        return Math.abs(from / mWidth - to / mWidth) + Math.abs(from % mWidth - to % mWidth);
+    }
+
+    private int manhattan(int[] tiles) {
+        int sum = 0;
+        for (int position = 0; position < tiles.length; position++) {
+            if (tiles[position] != mMissingValue) {
+                sum += distance(position, tiles[position]);
+            }
+        }
+        return sum;
+    }
+}
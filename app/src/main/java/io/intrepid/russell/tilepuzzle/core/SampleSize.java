@@ -0,0 +1,33 @@
+package io.intrepid.russell.tilepuzzle.core;
+
+/**
+ * Picks a {@code BitmapFactory.Options.inSampleSize}, kept free of Android types so it can be tested
+ * and benchmarked on the JVM.
+ */
+public final class SampleSize {
+
+    private SampleSize() {
+    }
+
+    /**
+     * cf https://developer.android.com/training/displaying-bitmaps/load-bitmap.html
+     *
+     * @return the largest power of 2 that keeps both dimensions larger than the requested ones
+     */
+    public static int calculate(int width, int height, int reqWidth, int reqHeight) {
+        int inSampleSize = 1;
+
+        if (height > reqHeight || width > reqWidth) {
+
+            final int halfHeight = height / 2;
+            final int halfWidth = width / 2;
+
+            while ((halfHeight / inSampleSize) > reqHeight
+                    && (halfWidth / inSampleSize) > reqWidth) {
+                inSampleSize *= 2;
+            }
+        }
+
+        return inSampleSize;
+    }
+}
@@ -0,0 +1,56 @@
+package io.intrepid.russell.tilepuzzle.core;
+
+/**
+ * A sequence of blank moves (see {@link Board#UP} etc.) that solves a board, and what it cost to find.
+ */
+public class Solution {
+    private final int[] mDirections;
+    private final long mNodesExpanded;
+    private final long mElapsedNanos;
+
+    public Solution(int[] directions, long nodesExpanded, long elapsedNanos) {
+        mDirections = directions;
+        mNodesExpanded = nodesExpanded;
+        mElapsedNanos = elapsedNanos;
+    }
+
+    public int length() {
+        return mDirections.length;
+    }
+
+    public int getDirection(int index) {
+        return mDirections[index];
+    }
+
+    public int[] getDirections() {
+        return mDirections.clone();
+    }
+
+    public long getNodesExpanded() {
+        return mNodesExpanded;
+    }
+
+    public long getElapsedNanos() {
+        return mElapsedNanos;
+    }
+
+    /**
+     * Applies every move to {@code board}.
+     */
+    public void applyTo(Board board) {
+        for (int direction : mDirections) {
+            if (!board.moveBlank(direction)) {
+                throw new IllegalStateException("Solution doesn't fit board at direction " + direction);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(mDirections.length);
+        for (int direction : mDirections) {
+            builder.append("UDLR".charAt(direction));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,184 @@
+package io.intrepid.russell.tilepuzzle.core;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Finds optimal solutions with iterative-deepening A*, guided by a {@link Heuristic}.
+ * <p/>
+ * The search works on its own copy of the board and never allocates while expanding nodes. A
+ * solver is single use and not thread safe, except for {@link #cancel()} which may be called from
+ * any thread.
+ */
+public class Solver {
+    static final int FOUND = -1;
+    static final int CANCELLED = -2;
+
+    // How many expansions between checks of the cancelled flag
+    private static final int CANCEL_CHECK_MASK = 0xFFF;
+
+    private final int mMissingValue;
+    private final int[] mTiles;
+    private final int[] mNeighbors; // position * 4 + direction, -1 if off the board
+    private final Heuristic mHeuristic;
+
+    private int mBlank;
+    private int[] mPath = new int[64];
+    private int mPathLength;
+    private long mNodes;
+    private volatile boolean mCancelled;
+    private final AtomicBoolean mStop; // Shared with other solvers searching the same tree, or null
+
+    /**
+     * Creates a solver guided by Manhattan distance and linear conflicts.
+     */
+    public Solver(Board board) {
+        this(board, new ManhattanHeuristic(board.getWidth(), board.getHeight()));
+    }
+
+    /**
+     * @param heuristic a fresh heuristic for this board's dimensions, which must not be shared
+     */
+    public Solver(Board board, Heuristic heuristic) {
+        this(board, heuristic, null);
+    }
+
+    /**
+     * @param stop also stops the search when set, so one flag can stop several solvers at once
+     */
+    Solver(Board board, Heuristic heuristic, AtomicBoolean stop) {
+        if (!board.isSolvable()) {
+            throw new IllegalArgumentException("Board can't be solved:\n" + board);
+        }
+        mMissingValue = board.getMissingValue();
+        mTiles = board.toArray();
+        mBlank = board.getBlankPosition();
+        mHeuristic = heuristic;
+        mNeighbors = neighborTable(board.getWidth(), board.getHeight());
+        mStop = stop;
+    }
+
+    /**
+     * Stops a running {@link #solve()} as soon as possible.
+     */
+    public void cancel() {
+        mCancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return mCancelled || mStop != null && mStop.get();
+    }
+
+    /**
+     * @return an optimal solution, or null if {@link #cancel()} was called first
+     */
+    public Solution solve() {
+        long start = System.nanoTime();
+        mNodes = 0;
+        int estimate = mHeuristic.reset(mTiles);
+        int bound = estimate;
+        while (true) {
+            if (mPath.length <= bound) {
+                mPath = new int[bound * 2];
+            }
+            int result = search(0, bound, -1, estimate);
+            if (result == FOUND) {
+                return new Solution(getPath(0), mNodes, System.nanoTime() - start);
+            } else if (result == CANCELLED) {
+                return null;
+            }
+            bound = result;
+        }
+    }
+
+    /**
+     * Runs one bounded pass as though this board were a node {@code depth} moves into a bigger search,
+     * reached by moving the blank in {@code previous}.
+     *
+     * @return FOUND, CANCELLED, or the smallest f-cost that exceeded {@code bound}; after FOUND,
+     * {@link #getPath(int)} has the moves from here
+     */
+    int search(int depth, int bound, int previous) {
+        if (mPath.length <= bound) {
+            mPath = new int[bound * 2];
+        }
+        return search(depth, bound, previous, mHeuristic.reset(mTiles));
+    }
+
+    /**
+     * @return the moves found by the last pass, from {@code depth} on
+     */
+    int[] getPath(int depth) {
+        int[] path = new int[mPathLength - depth];
+        System.arraycopy(mPath, depth, path, 0, path.length);
+        return path;
+    }
+
+    long getNodes() {
+        return mNodes;
+    }
+
+    /**
+     * @return FOUND, CANCELLED, or the smallest f-cost that exceeded {@code bound}
+     */
+    private int search(int g, int bound, int previous, int h) {
+        int f = g + h;
+        if (f > bound) {
+            return f;
+        }
+        if (h == 0) {
+            mPathLength = g;
+            return FOUND;
+        }
+        if ((++mNodes & CANCEL_CHECK_MASK) == 0 && isCancelled()) {
+            return CANCELLED;
+        }
+
+        int min = Integer.MAX_VALUE;
+        int blank = mBlank;
+        int[] tiles = mTiles;
+        int backtrack = previous ^ 1; // Board.opposite, inlined
+        for (int direction = 0; direction < 4; direction++) {
+            if (direction == backtrack) {
+                continue;
+            }
+            int position = mNeighbors[blank * 4 + direction];
+            if (position < 0) {
+                continue;
+            }
+            int value = tiles[position];
+            tiles[blank] = value;
+            tiles[position] = mMissingValue;
+            mBlank = position;
+            mPath[g] = direction;
+
+            int result = search(g + 1, bound, direction, mHeuristic.move(value, position, blank));
+
+            mHeuristic.move(value, blank, position);
+            mBlank = blank;
+            tiles[position] = value;
+            tiles[blank] = mMissingValue;
+
+            if (result < 0) {
+                return result;
+            }
+            if (result < min) {
+                min = result;
+            }
+        }
+        return min;
+    }
+
+    static int[] neighborTable(int width, int height) {
+        int count = width * height;
+        int[] neighbors = new int[count * 4];
+        for (int position = 0; position < count; position++) {
+            int row = position / width;
+            int col = position % width;
+            neighbors[position * 4 + Board.UP] = row > 0 ? position - width : -1;
+            neighbors[position * 4 + Board.DOWN] = row < height - 1 ? position + width : -1;
+            neighbors[position * 4 + Board.LEFT] = col > 0 ? position - 1 : -1;
+            neighbors[position * 4 + Board.RIGHT] = col < width - 1 ? position + 1 : -1;
+        }
+        return neighbors;
+    }
+}
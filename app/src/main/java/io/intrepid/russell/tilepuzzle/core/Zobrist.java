@@ -0,0 +1,46 @@
+package io.intrepid.russell.tilepuzzle.core;
+
+import java.util.Random;
+
+/**
+ * Random 64-bit keys for every (value, position) pair. A board's hash is the xor of the keys of its
+ * tiles, so a move changes it by xoring in four keys and two boards with the same tiles always hash the
+ * same. Keys are seeded, so hashes are also the same from run to run.
+ * <p/>
+ * Tables are shared by every board with the same number of tiles.
+ */
+final class Zobrist {
+    private static final long SEED = 0x5a6f6272697374L; // "Zobrist"
+    private static final Zobrist[] sTables = new Zobrist[ByteBoard.MAX_TILES + 1];
+
+    private final int mCount;
+    private final long[] mKeys; // value * count + position
+
+    private Zobrist(int count) {
+        mCount = count;
+        mKeys = new long[count * count];
+        Random random = new Random(SEED + count);
+        for (int i = 0; i < mKeys.length; i++) {
+            mKeys[i] = random.nextLong();
+        }
+    }
+
+    static synchronized Zobrist forTileCount(int count) {
+        if (sTables[count] == null) {
+            sTables[count] = new Zobrist(count);
+        }
+        return sTables[count];
+    }
+
+    long key(int value, int position) {
+        return mKeys[value * mCount + position];
+    }
+
+    /**
+     * @return what to xor into a hash when {@code value1} at {@code position1} and {@code value2} at
+     * {@code position2} trade places
+     */
+    long swap(int value1, int position1, int value2, int position2) {
+        return key(value1, position1) ^ key(value1, position2) ^ key(value2, position2) ^ key(value2, position1);
+    }
+}
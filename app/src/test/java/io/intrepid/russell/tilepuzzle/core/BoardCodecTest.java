@@ -0,0 +1,105 @@
+package io.intrepid.russell.tilepuzzle.core;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class BoardCodecTest {
+
+    @Test
+    public void rank_isDenseAndUnique() throws Exception {
+        // Every 2x3 board reachable from solved gets its own rank below the state count
+        BoardCodec codec = new BoardCodec(2, 3);
+        assertEquals(BigInteger.valueOf(360), codec.getStateCount());
+        Set<Long> hashes = new HashSet<Long>();
+        for (long rank = 0; rank < 360; rank++) {
+            Board board = codec.unrank(rank);
+            assertTrue(board.isSolvable());
+            assertEquals(rank, codec.rank(board));
+            hashes.add(board.getHash());
+        }
+        assertEquals(360, hashes.size());
+    }
+
+    @Test
+    public void rank_solvedIsBlankTimesHalfFactorial() throws Exception {
+        // The solved board's other tiles are in order, so only the blank position counts
+        assertEquals(15 * (1307674368000L / 2), // 15!/2
+                new BoardCodec(4, 4).rank(Board.create(4, 4)));
+    }
+
+    @Test
+    public void rank_matchesBigRank() throws Exception {
+        Random random = new Random(24);
+        for (int[] size : new int[][]{{3, 3}, {4, 4}, {4, 5}}) {
+            BoardCodec codec = new BoardCodec(size[0], size[1]);
+            for (int i = 0; i < 50; i++) {
+                Board board = SolverTest.randomWalk(size[0], size[1], 300, random);
+                long rank = codec.rank(board);
+                assertEquals(BigInteger.valueOf(rank), codec.bigRank(board));
+                assertEquals(board.toString(), codec.unrank(rank).toString());
+            }
+        }
+    }
+
+    @Test
+    public void bigRank_roundTrip() throws Exception {
+        BoardGenerator generator = new BoardGenerator(24);
+        for (int size = 5; size <= 16; size++) {
+            BoardCodec codec = new BoardCodec(size, size);
+            for (int i = 0; i < 5; i++) {
+                Board board = generator.generate(size, size);
+                BigInteger rank = codec.bigRank(board);
+                assertTrue(rank.compareTo(codec.getStateCount()) < 0);
+                assertEquals(board.toString(), codec.unrank(rank).toString());
+            }
+        }
+    }
+
+    @Test
+    public void unrank_largestRank() throws Exception {
+        BoardCodec codec = new BoardCodec(5, 5);
+        BigInteger last = codec.getStateCount().subtract(BigInteger.ONE);
+        Board board = codec.unrank(last);
+        assertTrue(board.isSolvable());
+        assertEquals(last, codec.bigRank(board));
+    }
+
+    @Test
+    public void encode_roundTrip() throws Exception {
+        BoardCodec codec = new BoardCodec(4, 4);
+        Board board = new BoardGenerator(5).generate(4, 4);
+        String code = codec.encode(board);
+        assertTrue(code, code.startsWith("4x4-"));
+        assertTrue(code, code.length() <= 4 + 9); // 16!/2 is 9 digits in base 36
+        assertEquals(board.toString(), BoardCodec.decode(code).toString());
+
+        Board big = new BoardGenerator(5).generate(7, 3);
+        assertEquals(big.toString(), BoardCodec.decode(new BoardCodec(7, 3).encode(big)).toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decode_rejectsOutOfRange() throws Exception {
+        BoardCodec.decode("2x2-" + BigInteger.valueOf(12).toString(36));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decode_rejectsGarbage() throws Exception {
+        BoardCodec.decode("0x4-zz");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rank_rejectsUnsolvable() throws Exception {
+        new BoardCodec(3, 3).rank(Board.create(3, 3, new int[]{1, 0, 2, 3, 4, 5, 6, 7, 8}));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rank_tooBigForLong() throws Exception {
+        new BoardCodec(5, 5).rank(Board.create(5, 5));
+    }
+}
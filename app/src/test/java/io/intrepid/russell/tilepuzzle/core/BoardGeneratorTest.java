@@ -0,0 +1,66 @@
+package io.intrepid.russell.tilepuzzle.core;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class BoardGeneratorTest {
+
+    @Test
+    public void generate_isSolvableAndUnsolved() throws Exception {
+        BoardGenerator generator = new BoardGenerator(1);
+        for (int size = 2; size <= 8; size++) {
+            for (int i = 0; i < 200; i++) {
+                Board board = generator.generate(size, size);
+                assertTrue(board.isSolvable());
+                assertFalse(board.isSolved());
+                assertEquals(0, board.getMoves());
+            }
+        }
+    }
+
+    @Test
+    public void generate_isReproducible() throws Exception {
+        BoardGenerator first = new BoardGenerator(42);
+        BoardGenerator second = new BoardGenerator(42);
+        for (int i = 0; i < 20; i++) {
+            assertArrayEquals(first.generate(4, 4).toArray(), second.generate(4, 4).toArray());
+        }
+    }
+
+    @Test
+    public void generate_isUniformOn2x3() throws Exception {
+        // 6!/2 = 360 solvable layouts, one of them solved
+        BoardGenerator generator = new BoardGenerator(7);
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        int draws = 359 * 200;
+        for (int i = 0; i < draws; i++) {
+            String key = generator.generate(3, 2).toString();
+            Integer count = counts.get(key);
+            counts.put(key, count == null ? 1 : count + 1);
+        }
+        assertEquals(359, counts.size());
+        for (int count : counts.values()) {
+            assertTrue("count " + count, count > 120 && count < 280);
+        }
+    }
+
+    @Test
+    public void generate_respectsEstimateBand() throws Exception {
+        BoardGenerator generator = new BoardGenerator(3);
+        for (int i = 0; i < 20; i++) {
+            Board board = generator.generate(4, 4, 30, 34);
+            int estimate = new ManhattanHeuristic(4, 4).reset(board.toArray());
+            assertTrue(estimate >= 30 && estimate <= 34);
+            assertTrue(board.isSolvable());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void generate_impossibleBand() throws Exception {
+        new BoardGenerator(3).generate(3, 3, 100, 200);
+    }
+}
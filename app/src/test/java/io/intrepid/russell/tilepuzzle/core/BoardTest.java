@@ -0,0 +1,167 @@
+package io.intrepid.russell.tilepuzzle.core;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class BoardTest {
+
+    @Test
+    public void create_isSolved() throws Exception {
+        for (int size = 2; size <= 16; size++) {
+            Board board = Board.create(size, size);
+            assertTrue(board.isSolved());
+            assertEquals(size * size - 1, board.getBlankPosition());
+            assertEquals(0, board.getMisplacedCount());
+        }
+    }
+
+    @Test
+    public void create_usesPackedStorageUpTo4x4() throws Exception {
+        assertTrue(Board.create(4, 4) instanceof LongBoard);
+        assertTrue(Board.create(5, 3) instanceof LongBoard);
+        assertTrue(Board.create(5, 4) instanceof ByteBoard);
+        assertTrue(Board.create(16, 16) instanceof ByteBoard);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void create_rejectsDuplicates() throws Exception {
+        Board.create(2, 2, new int[]{0, 1, 1, 3});
+    }
+
+    @Test
+    public void move_onlyAdjacentTiles() throws Exception {
+        Board board = Board.create(3, 3);
+        assertFalse(board.move(0));
+        assertFalse(board.move(6)); // Same column, two rows up
+        assertFalse(board.move(4)); // Diagonal
+        assertTrue(board.move(5));
+        assertEquals(5, board.getBlankPosition());
+        assertEquals(1, board.getMoves());
+        assertEquals(2, board.getMisplacedCount());
+        assertFalse(board.isSolved());
+    }
+
+    @Test
+    public void move_doesNotWrapRows() throws Exception {
+        Board board = Board.create(3, 3, new int[]{0, 1, 2, 8, 3, 4, 5, 6, 7});
+        assertFalse(board.move(2));
+        assertTrue(board.move(4));
+        board = Board.create(3, 3, new int[]{0, 1, 2, 3, 4, 5, 6, 7, 8});
+        assertFalse(board.canMove(9));
+        assertFalse(board.canMove(-1));
+    }
+
+    @Test
+    public void moveBlank_roundTrip() throws Exception {
+        for (int size = 2; size <= 6; size++) {
+            Board board = Board.create(size, size);
+            assertFalse(board.moveBlank(Board.DOWN));
+            assertFalse(board.moveBlank(Board.RIGHT));
+            assertTrue(board.moveBlank(Board.UP));
+            assertTrue(board.moveBlank(Board.LEFT));
+            assertTrue(board.moveBlank(Board.opposite(Board.LEFT)));
+            assertTrue(board.moveBlank(Board.opposite(Board.UP)));
+            assertTrue(board.isSolved());
+            assertEquals(4, board.getMoves());
+        }
+    }
+
+    @Test
+    public void misplacedCount_matchesRescan() throws Exception {
+        Board board = new BoardGenerator(1).generate(4, 4);
+        int[] directions = {Board.UP, Board.LEFT, Board.UP, Board.RIGHT, Board.DOWN, Board.LEFT, Board.UP};
+        for (int i = 0; i < 200; i++) {
+            board.moveBlank(directions[i % directions.length]);
+            assertEquals(rescan(board), board.getMisplacedCount());
+        }
+    }
+
+    @Test
+    public void isSolvable_matchesParity() throws Exception {
+        assertTrue(Board.create(4, 4).isSolvable());
+        assertFalse(Board.create(4, 4, new int[]{1, 0, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15}).isSolvable());
+        // Moving the blank up a row on an even width board changes the inversions by an odd amount
+        assertTrue(Board.create(4, 4, new int[]{0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 15, 12, 13, 14, 11}).isSolvable());
+        assertTrue(Board.create(3, 3, new int[]{7, 6, 5, 4, 3, 2, 1, 0, 8}).isSolvable());
+        assertFalse(Board.create(3, 3, new int[]{7, 6, 5, 4, 3, 2, 0, 1, 8}).isSolvable());
+    }
+
+    @Test
+    public void inversions_matchesPairCount() throws Exception {
+        for (int trial = 0; trial < 50; trial++) {
+            int[] values = new BoardGenerator(trial).generate(5, 5).toArray();
+            long expected = 0;
+            for (int i = 0; i < values.length; i++) {
+                for (int j = i + 1; j < values.length; j++) {
+                    if (values[i] != 24 && values[j] != 24 && values[j] < values[i]) {
+                        expected++;
+                    }
+                }
+            }
+            assertEquals(expected, Board.inversions(values, 24, new int[values.length + 1]));
+        }
+    }
+
+    @Test
+    public void copy_isIndependent() throws Exception {
+        Board board = Board.create(5, 5);
+        Board copy = board.copy();
+        assertTrue(copy.moveBlank(Board.UP));
+        assertTrue(board.isSolved());
+        assertFalse(copy.isSolved());
+    }
+
+    @Test
+    public void slide_matchesSingleSteps() throws Exception {
+        for (Board board : new Board[]{new BoardGenerator(10).generate(4, 4), new BoardGenerator(11).generate(6, 5)}) {
+            for (int position = 0; position < board.getTileCount(); position++) {
+                Board slid = board.copy();
+                Board stepped = board.copy();
+                int direction = board.directionToward(position);
+                int count = slid.slide(position);
+                if (direction < 0) {
+                    assertEquals(0, count);
+                    assertEquals(board.toString(), slid.toString());
+                    continue;
+                }
+                for (int i = 0; i < count; i++) {
+                    assertTrue(stepped.moveBlank(direction));
+                }
+                assertEquals(position, slid.getBlankPosition());
+                assertEquals(stepped.toString(), slid.toString());
+                assertEquals(stepped.getMoves(), slid.getMoves());
+                assertEquals(rescan(slid), slid.getMisplacedCount());
+            }
+        }
+    }
+
+    @Test
+    public void hash_incrementalMatchesFresh() throws Exception {
+        Random random = new Random(17);
+        for (int size : new int[]{3, 4, 6}) {
+            Board board = Board.create(size, size);
+            for (int i = 0; i < 300; i++) {
+                board.moveBlank(random.nextInt(4));
+                if (i % 50 == 0) {
+                    board.swapTiles(0, 1);
+                }
+                assertEquals(Board.create(size, size, board.toArray()).getHash(), board.getHash());
+                assertEquals(board.getHash(), board.copy().getHash());
+            }
+            assertNotEquals(Board.create(size, size).getHash(), board.getHash());
+        }
+    }
+
+    private static int rescan(Board board) {
+        int misplaced = 0;
+        for (int i = 0; i < board.getTileCount(); i++) {
+            if (board.get(i) != i) {
+                misplaced++;
+            }
+        }
+        return misplaced;
+    }
+}
@@ -0,0 +1,99 @@
+package io.intrepid.russell.tilepuzzle.core;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class DistanceTableTest {
+
+    @Test
+    public void generate_stateCounts() throws Exception {
+        assertEquals(12, DistanceTable.generate(2, 2).getStateCount());
+        assertEquals(360, DistanceTable.generate(2, 3).getStateCount());
+        assertEquals(181440, DistanceTable.generate(3, 3).getStateCount());
+    }
+
+    @Test
+    public void distance_matchesSolver() throws Exception {
+        DistanceTable table = DistanceTable.generate(3, 3);
+        Random random = new Random(18);
+        for (int i = 0; i < 40; i++) {
+            Board board = SolverTest.randomWalk(3, 3, 200, random);
+            int optimal = new Solver(board).solve().length();
+            assertEquals(optimal, table.distance(board));
+
+            Solution solution = table.solve(board);
+            assertEquals(optimal, solution.length());
+            solution.applyTo(board);
+            assertTrue(board.isSolved());
+        }
+    }
+
+    @Test
+    public void distance_hardest3x3() throws Exception {
+        // One of the two 3x3 positions that take 31 moves, past what a nibble holds
+        Board board = Board.create(3, 3, new int[]{7, 5, 6, 1, 4, 3, 2, 8, 0});
+        DistanceTable table = DistanceTable.generate(3, 3);
+        assertEquals(31, table.distance(board));
+        assertEquals(31, table.solve(board).length());
+    }
+
+    @Test
+    public void bestDirection() throws Exception {
+        DistanceTable table = DistanceTable.generate(2, 2);
+        Board board = Board.create(2, 2);
+        assertEquals(-1, table.bestDirection(board));
+        board.moveBlank(Board.UP);
+        board.moveBlank(Board.LEFT);
+        assertEquals(2, table.distance(board));
+        assertEquals(Board.RIGHT, table.bestDirection(board));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void distance_wrongSize() throws Exception {
+        DistanceTable.generate(2, 2).distance(Board.create(3, 3));
+    }
+
+    @Test
+    public void writeRead_roundTrip() throws Exception {
+        DistanceTable table = DistanceTable.generate(3, 3);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        table.write(out);
+        assertEquals(16 + 181440 / 2, out.size());
+        DistanceTable read = DistanceTable.read(new ByteArrayInputStream(out.toByteArray()));
+        Board board = SolverTest.randomWalk(3, 3, 100, new Random(5));
+        assertEquals(table.distance(board), read.distance(board));
+    }
+
+    @Test
+    public void shippedTables_matchGenerated() throws Exception {
+        // Unit tests run from the module directory
+        for (int[] size : new int[][]{{2, 2}, {3, 3}}) {
+            File file = new File("src/main/res/raw/distances_" + size[0] + "x" + size[1] + ".bin");
+            if (!file.exists()) {
+                continue; // Run from somewhere else
+            }
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            DistanceTable.generate(size[0], size[1]).write(expected);
+            InputStream in = new FileInputStream(file);
+            try {
+                ByteArrayOutputStream actual = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) > 0) {
+                    actual.write(buffer, 0, read);
+                }
+                assertArrayEquals(file.getName(), expected.toByteArray(), actual.toByteArray());
+            } finally {
+                in.close();
+            }
+        }
+    }
+}
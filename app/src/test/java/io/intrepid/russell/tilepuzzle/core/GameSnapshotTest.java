@@ -0,0 +1,108 @@
+package io.intrepid.russell.tilepuzzle.core;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class GameSnapshotTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void roundTrip_nibblePacked() throws Exception {
+        Board board = new BoardGenerator(1).generate(4, 4);
+        board.setMoves(57);
+        GameSnapshot snapshot = new GameSnapshot(board, 0x7f060001, new int[]{0, 3, 1, 2, 2});
+        assertEquals(31 + 2, snapshot.encodedSize());
+
+        GameSnapshot copy = roundTrip(snapshot);
+        assertArrayEquals(board.toArray(), copy.getValues());
+        assertEquals(57, copy.getMoves());
+        assertEquals(0x7f060001, copy.getImageId());
+        assertArrayEquals(new int[]{0, 3, 1, 2, 2}, copy.getHistory());
+        assertEquals(board.toString(), copy.toBoard().toString());
+    }
+
+    @Test
+    public void roundTrip_bytePerTileAndOddSizes() throws Exception {
+        for (int[] size : new int[][]{{3, 3}, {5, 3}, {5, 5}, {16, 16}}) {
+            Board board = new BoardGenerator(size[0] * 31 + size[1]).generate(size[0], size[1]);
+            GameSnapshot copy = roundTrip(new GameSnapshot(board, 1, new int[0]));
+            assertEquals(size[0], copy.getWidth());
+            assertEquals(size[1], copy.getHeight());
+            assertArrayEquals(board.toArray(), copy.getValues());
+        }
+    }
+
+    @Test
+    public void roundTrip_imageUri() throws Exception {
+        Board board = new BoardGenerator(5).generate(3, 3);
+        String uri = "content://media/external/images/media/42?caf\u00e9";
+        GameSnapshot copy = roundTrip(new GameSnapshot(board, 0, uri, new int[]{1, 0}));
+        assertEquals(uri, copy.getImageUri());
+        assertArrayEquals(board.toArray(), copy.getValues());
+        assertArrayEquals(new int[]{1, 0}, copy.getHistory());
+
+        assertNull(roundTrip(new GameSnapshot(board, 0, new int[0])).getImageUri());
+    }
+
+    @Test
+    public void writeAndRead_file() throws Exception {
+        Board board = new BoardGenerator(2).generate(4, 4);
+        File file = new File(mFolder.getRoot(), "slot_0.bin");
+        new GameSnapshot(board, 3, new int[]{1}).write(file);
+        assertEquals(31 + 1, file.length());
+        assertArrayEquals(board.toArray(), GameSnapshot.read(file).getValues());
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+
+        // Overwriting replaces the old save
+        board.moveBlank(board.getBlankPosition() % 4 == 0 ? Board.RIGHT : Board.LEFT);
+        new GameSnapshot(board, 3, new int[]{1, 2}).write(file);
+        assertArrayEquals(board.toArray(), GameSnapshot.read(file).getValues());
+    }
+
+    @Test(expected = IOException.class)
+    public void read_rejectsFlippedBit() throws Exception {
+        File file = new File(mFolder.getRoot(), "corrupt.bin");
+        new GameSnapshot(new BoardGenerator(3).generate(4, 4), 3, new int[0]).write(file);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.seek(20);
+            int b = raf.read();
+            raf.seek(20);
+            raf.write(b ^ 0x10);
+        } finally {
+            raf.close();
+        }
+        GameSnapshot.read(file);
+    }
+
+    @Test(expected = IOException.class)
+    public void read_rejectsTruncated() throws Exception {
+        File file = new File(mFolder.getRoot(), "short.bin");
+        new GameSnapshot(new BoardGenerator(4).generate(4, 4), 3, new int[0]).write(file);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(file.length() - 5);
+        } finally {
+            raf.close();
+        }
+        GameSnapshot.read(file);
+    }
+
+    private static GameSnapshot roundTrip(GameSnapshot snapshot) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(snapshot.encodedSize());
+        snapshot.encode(buffer);
+        assertFalse(buffer.hasRemaining());
+        buffer.flip();
+        return GameSnapshot.decode(buffer);
+    }
+}
@@ -0,0 +1,98 @@
+package io.intrepid.russell.tilepuzzle.core;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.Assert.*;
+
+public class HintEngineTest {
+
+    private static HintEngine engine(final int width, final int height, int capacity) {
+        return new HintEngine(new ParallelSolver.HeuristicFactory() {
+            @Override
+            public Heuristic newHeuristic() {
+                return new ManhattanHeuristic(width, height);
+            }
+        }, width, height, 2, capacity);
+    }
+
+    @Test
+    public void followingHints_searchesOnce() throws Exception {
+        Board board = SolverTest.randomWalk(4, 4, 60, new Random(4));
+        int optimal = new Solver(board).solve().length();
+        HintEngine hints = engine(4, 4, HintEngine.DEFAULT_CAPACITY);
+
+        int moves = 0;
+        while (!board.isSolved()) {
+            int direction = hints.hint(board);
+            assertEquals(optimal - moves, hints.getKnownDistance(board));
+            assertTrue(board.moveBlank(direction));
+            moves++;
+        }
+        assertEquals(optimal, moves);
+        assertEquals(-1, hints.hint(board));
+        assertEquals(1, hints.getMisses());
+        assertEquals(optimal - 1, hints.getHits());
+    }
+
+    @Test
+    public void offTheLine_searchesAgainAndStaysOptimal() throws Exception {
+        Random random = new Random(9);
+        Board board = SolverTest.randomWalk(3, 3, 80, random);
+        HintEngine hints = engine(3, 3, HintEngine.DEFAULT_CAPACITY);
+        hints.hint(board);
+        int direction;
+        do {
+            direction = random.nextInt(4);
+        } while (direction == hints.getKnownHint(board) || board.neighbor(direction) < 0);
+        board.moveBlank(direction); // Off the hinted line
+
+        assertEquals(-1, hints.getKnownHint(board));
+        hints.hint(board);
+        assertEquals(new Solver(board).solve().length(), hints.getKnownDistance(board));
+    }
+
+    @Test
+    public void table_evictsLeastRecentlyUsed() throws Exception {
+        Board board = SolverTest.randomWalk(3, 3, 80, new Random(5));
+        HintEngine hints = engine(3, 3, 4);
+        hints.hint(board);
+        assertEquals(4, hints.size());
+        assertEquals(-1, hints.getKnownDistance(board)); // The start of a longer line went first
+    }
+
+    @Test
+    public void hint_timesOut() throws Exception {
+        HintEngine hints = engine(5, 5, HintEngine.DEFAULT_CAPACITY);
+        assertEquals(-3, hints.hint(new BoardGenerator(17).generate(5, 5), 50));
+        assertEquals(0, hints.size());
+    }
+
+    @Test
+    public void cancel_stopsOverlappingSearches() throws Exception {
+        final HintEngine hints = engine(5, 5, HintEngine.DEFAULT_CAPACITY);
+        final AtomicIntegerArray results = new AtomicIntegerArray(2);
+        Thread[] searches = new Thread[2];
+        for (int i = 0; i < searches.length; i++) {
+            final int index = i;
+            final Board board = new BoardGenerator(20 + i).generate(5, 5);
+            searches[i] = new Thread() {
+                @Override
+                public void run() {
+                    results.set(index, hints.hint(board)); // Far too deep to finish
+                }
+            };
+            searches[i].setDaemon(true);
+            searches[i].start();
+        }
+        Thread.sleep(200);
+        hints.cancel();
+        for (int i = 0; i < searches.length; i++) {
+            searches[i].join(5000);
+            assertFalse(searches[i].isAlive());
+            assertEquals(-2, results.get(i));
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package io.intrepid.russell.tilepuzzle.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MetricsTest {
+
+    @Test
+    public void histogram_percentilesWithinBucket() throws Exception {
+        Metrics.Histogram histogram = Metrics.histogram("test.percentiles");
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i * 1000000L); // 1 to 100 ms
+        }
+        assertEquals(100, histogram.getCount());
+        assertEquals(5050 * 1000000L, histogram.getTotalNanos());
+        assertEquals(100 * 1000000L, histogram.getMaxNanos());
+
+        long median = histogram.getPercentileNanos(50);
+        assertTrue(median >= 50 * 1000000L && median < 100 * 1000000L);
+        assertEquals(100 * 1000000L, histogram.getPercentileNanos(100));
+    }
+
+    @Test
+    public void histogram_bucketsDoubleFromMicroseconds() throws Exception {
+        assertEquals(0, Metrics.Histogram.bucket(999));
+        assertEquals(1, Metrics.Histogram.bucket(1000));
+        assertEquals(2, Metrics.Histogram.bucket(2000));
+        assertEquals(2, Metrics.Histogram.bucket(3999));
+        assertEquals(Metrics.Histogram.BUCKETS - 1, Metrics.Histogram.bucket(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void registry_returnsSameMetricAndReportsIt() throws Exception {
+        Metrics.Counter counter = Metrics.counter("test.counter");
+        assertSame(counter, Metrics.counter("test.counter"));
+        counter.add(3);
+        counter.increment();
+        assertEquals(4, counter.get());
+        assertTrue(Metrics.report().contains("test.counter 4\n"));
+
+        Metrics.reset();
+        assertEquals(0, counter.get());
+        assertSame(counter, Metrics.counter("test.counter"));
+    }
+}
@@ -0,0 +1,112 @@
+package io.intrepid.russell.tilepuzzle.core;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MoveLogTest {
+
+    @Test
+    public void record_packsAcrossWords() throws Exception {
+        Random random = new Random(8);
+        int[] directions = new int[1000];
+        MoveLog log = new MoveLog();
+        for (int i = 0; i < directions.length; i++) {
+            directions[i] = random.nextInt(4);
+            log.record(directions[i]);
+        }
+        assertEquals(directions.length, log.size());
+        for (int i = 0; i < directions.length; i++) {
+            assertEquals(directions[i], log.get(i));
+        }
+        assertArrayEquals(directions, new MoveLog(directions).toArray());
+    }
+
+    @Test
+    public void undoRedo_restoresBoardsAndMoveCount() throws Exception {
+        Board board = new BoardGenerator(5).generate(4, 4);
+        Board start = board.copy();
+        MoveLog log = new MoveLog();
+        Random random = new Random(5);
+        String[] seen = new String[201];
+        seen[0] = board.toString();
+        for (int i = 1; i < seen.length; i++) {
+            int direction;
+            do {
+                direction = random.nextInt(4);
+            } while (board.neighbor(direction) < 0);
+            board.moveBlank(direction);
+            log.record(direction);
+            seen[i] = board.toString();
+        }
+
+        for (int i = seen.length - 1; i > 0; i--) {
+            assertTrue(log.undo(board));
+            assertEquals(seen[i - 1], board.toString());
+            assertEquals(i - 1, board.getMoves());
+        }
+        assertFalse(log.undo(board));
+        for (int i = 1; i < seen.length; i++) {
+            assertTrue(log.redo(board));
+            assertEquals(seen[i], board.toString());
+        }
+        assertFalse(log.redo(board));
+        assertEquals(start.toString(), log.rewind(board).toString());
+        assertEquals(seen[seen.length - 1], board.toString());
+    }
+
+    @Test
+    public void record_dropsRedoTail() throws Exception {
+        Board board = Board.create(3, 3);
+        MoveLog log = new MoveLog();
+        board.moveBlank(Board.UP);
+        log.record(Board.UP);
+        board.moveBlank(Board.LEFT);
+        log.record(Board.LEFT);
+        log.undo(board);
+        assertTrue(log.canRedo());
+
+        board.moveBlank(Board.UP);
+        log.record(Board.UP);
+        assertFalse(log.canRedo());
+        assertArrayEquals(new int[]{Board.UP, Board.UP}, log.toArray());
+    }
+
+    @Test
+    public void multiTileMetric_countsRuns() throws Exception {
+        MoveLog log = new MoveLog(new int[]{Board.UP, Board.UP, Board.LEFT, Board.DOWN, Board.DOWN, Board.DOWN});
+        assertEquals(6, log.getMoveCount(MoveLog.SINGLE_TILE_METRIC));
+        assertEquals(3, log.getMoveCount(MoveLog.MULTI_TILE_METRIC));
+
+        Board board = Board.create(4, 4);
+        board.moveBlank(Board.UP);
+        board.moveBlank(Board.UP);
+        board.moveBlank(Board.LEFT);
+        board.moveBlank(Board.DOWN);
+        board.moveBlank(Board.DOWN);
+        board.moveBlank(Board.DOWN);
+        log.undo(board);
+        assertEquals(3, log.getMoveCount(MoveLog.MULTI_TILE_METRIC));
+        log.undo(board);
+        log.undo(board);
+        assertEquals(2, log.getMoveCount(MoveLog.MULTI_TILE_METRIC));
+        log.redo(board);
+        assertEquals(3, log.getMoveCount(MoveLog.MULTI_TILE_METRIC));
+        assertEquals(Board.DOWN, log.getLastDirection());
+        assertEquals(Board.DOWN, log.getNextDirection());
+    }
+
+    @Test
+    public void directionOf_matchesNeighbor() throws Exception {
+        Board board = new BoardGenerator(6).generate(5, 3);
+        for (int direction = 0; direction < 4; direction++) {
+            int position = board.neighbor(direction);
+            if (position >= 0) {
+                assertEquals(direction, board.directionOf(position));
+            }
+        }
+        assertEquals(-1, board.directionOf(board.getBlankPosition()));
+    }
+}
@@ -0,0 +1,80 @@
+package io.intrepid.russell.tilepuzzle.core;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ParallelSolverTest {
+
+    private static ParallelSolver.HeuristicFactory manhattan(final int width, final int height) {
+        return new ParallelSolver.HeuristicFactory() {
+            @Override
+            public Heuristic newHeuristic() {
+                return new ManhattanHeuristic(width, height);
+            }
+        };
+    }
+
+    @Test
+    public void solve_matchesSequentialLength() throws Exception {
+        Random random = new Random(16);
+        for (int threads : new int[]{1, 4}) {
+            for (int i = 0; i < 10; i++) {
+                Board board = SolverTest.randomWalk(3, 3, 100, random);
+                Solution expected = new Solver(board).solve();
+                Solution solution = new ParallelSolver(board, manhattan(3, 3), threads).solve();
+                assertEquals(expected.length(), solution.length());
+                Board solved = board.copy();
+                solution.applyTo(solved);
+                assertTrue(solved.isSolved());
+            }
+        }
+    }
+
+    @Test
+    public void solve_4x4() throws Exception {
+        Board board = SolverTest.randomWalk(4, 4, 80, new Random(2));
+        Solution expected = new Solver(board).solve();
+        Solution solution = new ParallelSolver(board, manhattan(4, 4), 4).solve();
+        assertEquals(expected.length(), solution.length());
+        solution.applyTo(board);
+        assertTrue(board.isSolved());
+    }
+
+    @Test
+    public void solve_shorterThanSplitDepth() throws Exception {
+        assertEquals(0, new ParallelSolver(Board.create(4, 4), manhattan(4, 4), 2).solve().length());
+
+        Board board = Board.create(4, 4);
+        board.moveBlank(Board.UP);
+        board.moveBlank(Board.LEFT);
+        Solution solution = new ParallelSolver(board, manhattan(4, 4), 8).solve();
+        assertArrayEquals(new int[]{Board.RIGHT, Board.DOWN}, solution.getDirections());
+    }
+
+    @Test
+    public void solve_cancelled() throws Exception {
+        ParallelSolver solver = new ParallelSolver(SolverTest.randomWalk(4, 4, 200, new Random(3)),
+                manhattan(4, 4), 2);
+        solver.cancel();
+        assertNull(solver.solve());
+    }
+
+    @Test
+    public void solve_timesOut() throws Exception {
+        // Deep enough that Manhattan distance alone takes far longer than this
+        ParallelSolver solver = new ParallelSolver(new BoardGenerator(16).generate(5, 5), manhattan(5, 5), 2);
+        assertNull(solver.solve(50));
+        assertTrue(solver.isTimedOut());
+    }
+
+    @Test
+    public void solve_finishesWithinTimeout() throws Exception {
+        ParallelSolver solver = new ParallelSolver(SolverTest.randomWalk(3, 3, 100, new Random(6)),
+                manhattan(3, 3), 2);
+        assertNotNull(solver.solve(60000));
+        assertFalse(solver.isTimedOut());
+    }
+}
@@ -0,0 +1,148 @@
+package io.intrepid.russell.tilepuzzle.core;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PatternDatabaseTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void rank_roundTrip() throws Exception {
+        int cells = 16;
+        int[] positions = new int[4];
+        for (int index = 0; index < PatternDatabase.entryCount(cells, 4); index += 7) {
+            PatternDatabase.unrank(index, cells, positions);
+            assertEquals(index, PatternDatabase.rank(positions, cells));
+        }
+    }
+
+    @Test
+    public void distance_singleTileIsManhattan() throws Exception {
+        // Alone, a tile needs exactly its Manhattan distance, wherever the blank starts
+        PatternDatabase database = PatternDatabase.generate(4, 3, new int[]{5}, 1);
+        for (int position = 0; position < 12; position++) {
+            int manhattan = Math.abs(position % 4 - 1) + Math.abs(position / 4 - 1);
+            assertEquals(manhattan, database.distance(new int[]{position}));
+        }
+    }
+
+    @Test
+    public void distance_swappedNeighborsNeedMoreThanManhattan() throws Exception {
+        // 0 and 1 swapped in the top row: one has to step out of the way, so 4 moves rather than 2
+        PatternDatabase database = PatternDatabase.generate(3, 3, new int[]{0, 1}, 1);
+        assertEquals(0, database.distance(new int[]{0, 1}));
+        assertEquals(4, database.distance(new int[]{1, 0}));
+    }
+
+    @Test
+    public void heuristic_isAdmissibleAndMatchesSolver() throws Exception {
+        PatternDatabase[] databases = PatternDatabase.load(mFolder.getRoot(), 3, 3,
+                PatternDatabase.defaultPartition(3, 3), 2);
+        Random random = new Random(5);
+        for (int i = 0; i < 20; i++) {
+            Board board = SolverTest.randomWalk(3, 3, 100, random);
+            int estimate = new PatternDatabaseHeuristic(databases).reset(board.toArray());
+            Solution optimal = new Solver(board.copy()).solve();
+            assertTrue(estimate <= optimal.length());
+            Solution solution = new Solver(board.copy(), new PatternDatabaseHeuristic(databases)).solve();
+            assertEquals(optimal.length(), solution.length());
+        }
+    }
+
+    @Test
+    public void heuristic_incrementalMatchesReset() throws Exception {
+        PatternDatabase[] databases = PatternDatabase.load(mFolder.getRoot(), 4, 3,
+                PatternDatabase.defaultPartition(4, 3), 4);
+        PatternDatabaseHeuristic incremental = new PatternDatabaseHeuristic(databases);
+        PatternDatabaseHeuristic fresh = new PatternDatabaseHeuristic(databases);
+        Board board = Board.create(4, 3);
+        incremental.reset(board.toArray());
+        Random random = new Random(9);
+        for (int i = 0; i < 2000; i++) {
+            int blank = board.getBlankPosition();
+            int position = board.neighbor(random.nextInt(4));
+            if (position < 0) {
+                continue;
+            }
+            int value = board.get(position);
+            board.move(position);
+            assertEquals(fresh.reset(board.toArray()), incremental.move(value, position, blank));
+        }
+    }
+
+    @Test
+    public void write_mapsBackIdentically() throws Exception {
+        PatternDatabase generated = PatternDatabase.generate(3, 3, new int[]{0, 1, 2, 3}, 3);
+        File file = mFolder.newFile("pattern.bin");
+        generated.write(file);
+        PatternDatabase mapped = PatternDatabase.map(file);
+        assertArrayEquals(generated.getTiles(), mapped.getTiles());
+        assertEquals(generated.getEntryCount(), mapped.getEntryCount());
+        for (int i = 0; i < generated.getEntryCount(); i++) {
+            assertEquals(generated.get(i), mapped.get(i));
+        }
+        assertEquals(generated.getEntryCount() + 16, file.length());
+    }
+
+    @Test
+    public void generateToFile_matchesHeap() throws Exception {
+        int[] tiles = {0, 1, 4, 5, 8};
+        PatternDatabase generated = PatternDatabase.generate(4, 3, tiles, 2);
+        File file = new File(mFolder.getRoot(), "streamed.bin");
+        PatternDatabase.generate(4, 3, tiles, 2, file);
+        PatternDatabase mapped = PatternDatabase.map(file);
+        assertEquals(generated.getEntryCount(), mapped.getEntryCount());
+        for (int i = 0; i < generated.getEntryCount(); i++) {
+            assertEquals(generated.get(i), mapped.get(i));
+        }
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+    }
+
+    @Test(expected = IOException.class)
+    public void map_rejectsTruncated() throws Exception {
+        File file = mFolder.newFile("pattern.bin");
+        PatternDatabase.generate(3, 3, new int[]{0, 1, 2, 3}, 1).write(file);
+        truncate(file, file.length() - 1);
+        PatternDatabase.map(file);
+    }
+
+    @Test
+    public void load_regeneratesTruncated() throws Exception {
+        int[][] partition = PatternDatabase.defaultPartition(3, 3);
+        PatternDatabase.load(mFolder.getRoot(), 3, 3, partition, 1);
+        File file = new File(mFolder.getRoot(), PatternDatabase.fileName(3, 3, partition[0]));
+        long length = file.length();
+        truncate(file, length / 2);
+        PatternDatabase[] databases = PatternDatabase.load(mFolder.getRoot(), 3, 3, partition, 1);
+        assertEquals(length, file.length());
+        assertEquals(0, databases[0].distance(new int[]{0, 1, 2, 3, 4}));
+    }
+
+    private static void truncate(File file, long length) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(length);
+        } finally {
+            raf.close();
+        }
+    }
+
+    @Test
+    public void load_deletesOldPartitions() throws Exception {
+        File old = mFolder.newFile(PatternDatabase.fileName(3, 3, new int[]{0, 1, 2, 3}));
+        File otherSize = mFolder.newFile(PatternDatabase.fileName(3, 4, new int[]{0, 1, 2, 3}));
+        PatternDatabase.load(mFolder.getRoot(), 3, 3, PatternDatabase.defaultPartition(3, 3), 1);
+        assertFalse(old.exists());
+        assertTrue(otherSize.exists());
+    }
+}
@@ -0,0 +1,76 @@
+package io.intrepid.russell.tilepuzzle.core;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ReductionSolverTest {
+
+    @Test
+    public void solve_solvedBoardIsEmpty() throws Exception {
+        assertEquals(0, new ReductionSolver(Board.create(6, 6)).solve().length());
+    }
+
+    @Test
+    public void solve_everySize() throws Exception {
+        BoardGenerator generator = new BoardGenerator(23);
+        for (int width = 2; width <= 9; width++) {
+            for (int height = 2; height <= 9; height++) {
+                for (int i = 0; i < 3; i++) {
+                    Board board = generator.generate(width, height);
+                    assertSolves(board);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void solve_smallBoardsMatchOptimal() throws Exception {
+        // Small enough that everything is the optimal residual search
+        Random random = new Random(3);
+        for (int i = 0; i < 20; i++) {
+            Board board = SolverTest.randomWalk(3, 3, 100, random);
+            assertEquals(new Solver(board.copy()).solve().length(), new ReductionSolver(board).solve().length());
+        }
+    }
+
+    @Test
+    public void solve_16x16() throws Exception {
+        Board board = new BoardGenerator(16).generate(16, 16);
+        ReductionSolver solver = new ReductionSolver(board.copy());
+        Solution solution = solver.solve();
+        assertSolves(board);
+        assertTrue(solution.length() >= solver.getLowerBound());
+        assertTrue(solution.length() <= solver.getReducedLength());
+        // Well under a second even on a slow machine; typically a few milliseconds
+        assertTrue(solution.getElapsedNanos() < 1000000000L);
+    }
+
+    @Test
+    public void localSearch_shortensReduction() throws Exception {
+        BoardGenerator generator = new BoardGenerator(5);
+        long reduced = 0;
+        long shortened = 0;
+        for (int i = 0; i < 10; i++) {
+            ReductionSolver solver = new ReductionSolver(generator.generate(8, 8));
+            shortened += solver.solve().length();
+            reduced += solver.getReducedLength();
+        }
+        assertTrue(shortened + " vs " + reduced, shortened < reduced);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void solver_rejectsUnsolvable() throws Exception {
+        new ReductionSolver(Board.create(3, 3, new int[]{1, 0, 2, 3, 4, 5, 6, 7, 8}));
+    }
+
+    private static void assertSolves(Board board) {
+        ReductionSolver solver = new ReductionSolver(board.copy());
+        Solution solution = solver.solve();
+        assertTrue(solution.length() >= solver.getLowerBound());
+        solution.applyTo(board);
+        assertTrue(board.toString(), board.isSolved());
+    }
+}
@@ -0,0 +1,126 @@
+package io.intrepid.russell.tilepuzzle.core;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SolverTest {
+
+    @Test
+    public void solve_solvedBoardIsEmpty() throws Exception {
+        Solution solution = new Solver(Board.create(4, 4)).solve();
+        assertEquals(0, solution.length());
+    }
+
+    @Test
+    public void solve_hardest3x3() throws Exception {
+        // 8 6 7 / 2 5 4 / 3 _ 1 in the usual 1-based labelling takes 31 moves
+        Board board = Board.create(3, 3, new int[]{7, 5, 6, 1, 4, 3, 2, 8, 0});
+        Solution solution = new Solver(board).solve();
+        assertEquals(31, solution.length());
+        solution.applyTo(board);
+        assertTrue(board.isSolved());
+    }
+
+    @Test
+    public void solve_matchesBreadthFirstDistances() throws Exception {
+        Map<String, Integer> distances = breadthFirst(3, 3);
+        Random random = new Random(42);
+        for (int i = 0; i < 30; i++) {
+            Board board = randomWalk(3, 3, 100, random);
+            Solution solution = new Solver(board.copy()).solve();
+            assertEquals((int) distances.get(board.toString()), solution.length());
+            solution.applyTo(board);
+            assertTrue(board.isSolved());
+        }
+    }
+
+    @Test
+    public void solve_nonSquare() throws Exception {
+        Map<String, Integer> distances = breadthFirst(4, 2);
+        Random random = new Random(7);
+        for (int i = 0; i < 10; i++) {
+            Board board = randomWalk(4, 2, 100, random);
+            Solution solution = new Solver(board.copy()).solve();
+            assertEquals((int) distances.get(board.toString()), solution.length());
+        }
+    }
+
+    @Test
+    public void solve_4x4() throws Exception {
+        Board board = randomWalk(4, 4, 60, new Random(1));
+        Solution solution = new Solver(board.copy()).solve();
+        solution.applyTo(board);
+        assertTrue(board.isSolved());
+    }
+
+    @Test
+    public void solve_cancelled() throws Exception {
+        Solver solver = new Solver(randomWalk(4, 4, 200, new Random(3)));
+        solver.cancel();
+        assertNull(solver.solve());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void solver_rejectsUnsolvable() throws Exception {
+        new Solver(Board.create(3, 3, new int[]{1, 0, 2, 3, 4, 5, 6, 7, 8}));
+    }
+
+    @Test
+    public void heuristic_incrementalMatchesReset() throws Exception {
+        Random random = new Random(11);
+        for (int size = 3; size <= 7; size++) {
+            Board board = Board.create(size, size);
+            ManhattanHeuristic incremental = new ManhattanHeuristic(size, size);
+            ManhattanHeuristic fresh = new ManhattanHeuristic(size, size);
+            incremental.reset(board.toArray());
+            for (int i = 0; i < 500; i++) {
+                int blank = board.getBlankPosition();
+                int position = board.neighbor(random.nextInt(4));
+                if (position < 0) {
+                    continue;
+                }
+                int value = board.get(position);
+                board.move(position);
+                assertEquals(fresh.reset(board.toArray()), incremental.move(value, position, blank));
+            }
+        }
+    }
+
+    static Board randomWalk(int width, int height, int steps, Random random) {
+        Board board = Board.create(width, height);
+        for (int i = 0; i < steps; i++) {
+            board.moveBlank(random.nextInt(4));
+        }
+        board.setMoves(0);
+        return board;
+    }
+
+    private static Map<String, Integer> breadthFirst(int width, int height) {
+        Map<String, Integer> distances = new HashMap<String, Integer>();
+        ArrayDeque<Board> queue = new ArrayDeque<Board>();
+        Board start = Board.create(width, height);
+        distances.put(start.toString(), 0);
+        queue.add(start);
+        while (!queue.isEmpty()) {
+            Board board = queue.poll();
+            int distance = distances.get(board.toString());
+            for (int direction = 0; direction < 4; direction++) {
+                Board next = board.copy();
+                if (next.moveBlank(direction)) {
+                    String key = next.toString();
+                    if (!distances.containsKey(key)) {
+                        distances.put(key, distance + 1);
+                        queue.add(next);
+                    }
+                }
+            }
+        }
+        return distances;
+    }
+}
@@ -0,0 +1,102 @@
+package io.intrepid.russell.tilepuzzle.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import io.intrepid.russell.tilepuzzle.core.Board;
+import io.intrepid.russell.tilepuzzle.core.BoardGenerator;
+import io.intrepid.russell.tilepuzzle.core.MoveLog;
+
+/**
+ * What the game does on every tap: find the tapped tile's direction, move it, log it and check for a win,
+ * plus dealing a new board.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BoardBenchmark {
+    private static final int TAPS = 1024; // Power of two, for masking
+
+    @Param({"3", "4", "5", "8", "16"})
+    public int size;
+
+    private Board mBoard;
+    private BoardGenerator mGenerator;
+    private MoveLog mLog;
+    private int[] mDirections;
+    private int[] mPositions;
+    private int mTap;
+
+    @Setup
+    public void setUp() {
+        mGenerator = new BoardGenerator(size);
+        mBoard = mGenerator.generate(size, size);
+        mLog = new MoveLog();
+        Random random = new Random(size);
+        mDirections = new int[TAPS];
+        mPositions = new int[TAPS];
+        for (int i = 0; i < TAPS; i++) {
+            mDirections[i] = random.nextInt(4);
+            mPositions[i] = random.nextInt(size * size);
+        }
+    }
+
+    /**
+     * A tap on a tile next to the blank, as the board view reports it
+     */
+    @Benchmark
+    public int tapAdjacent() {
+        int position = mBoard.neighbor(mDirections[mTap++ & (TAPS - 1)]);
+        int direction = mBoard.directionOf(position);
+        if (direction >= 0) {
+            mBoard.moveBlank(direction);
+        }
+        return mBoard.getBlankPosition();
+    }
+
+    /**
+     * A tap anywhere, sliding a row or column segment when it lines up with the blank
+     */
+    @Benchmark
+    public int slide() {
+        return mBoard.slide(mPositions[mTap++ & (TAPS - 1)]);
+    }
+
+    @Benchmark
+    public boolean isSolved() {
+        return mBoard.isSolved();
+    }
+
+    @Benchmark
+    public Board shuffle() {
+        mGenerator.shuffle(mBoard);
+        return mBoard;
+    }
+
+    @Benchmark
+    public int recordAndUndo() {
+        int direction = mDirections[mTap++ & (TAPS - 1)];
+        if (mBoard.moveBlank(direction)) {
+            mLog.record(direction);
+        }
+        if ((mTap & 1) == 0) {
+            mLog.undo(mBoard);
+        }
+        return mLog.getPosition();
+    }
+}
@@ -0,0 +1,61 @@
+package io.intrepid.russell.tilepuzzle.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+
+import io.intrepid.russell.tilepuzzle.core.Board;
+import io.intrepid.russell.tilepuzzle.core.BoardCodec;
+import io.intrepid.russell.tilepuzzle.core.BoardGenerator;
+
+/**
+ * Ranking boards and back, as a long where the rank fits one and as a BigInteger on bigger boards.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CodecBenchmark {
+
+    @Param({"4", "5", "8", "16"})
+    public int size;
+
+    private BoardCodec mCodec;
+    private Board mBoard;
+    private BigInteger mRank;
+
+    @Setup
+    public void setUp() {
+        mCodec = new BoardCodec(size, size);
+        mBoard = new BoardGenerator(size).generate(size, size);
+        mRank = mCodec.bigRank(mBoard);
+    }
+
+    @Benchmark
+    public BigInteger rank() {
+        return mCodec.bigRank(mBoard);
+    }
+
+    @Benchmark
+    public Board unrank() {
+        return mCodec.unrank(mRank);
+    }
+
+    @Benchmark
+    public long rankLong() {
+        return size * size <= BoardCodec.MAX_LONG_TILES ? mCodec.rank(mBoard) : 0;
+    }
+}
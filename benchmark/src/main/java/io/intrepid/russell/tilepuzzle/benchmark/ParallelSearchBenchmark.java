@@ -0,0 +1,106 @@
+package io.intrepid.russell.tilepuzzle.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import io.intrepid.russell.tilepuzzle.core.Board;
+import io.intrepid.russell.tilepuzzle.core.Heuristic;
+import io.intrepid.russell.tilepuzzle.core.ParallelSolver;
+import io.intrepid.russell.tilepuzzle.core.PatternDatabase;
+import io.intrepid.russell.tilepuzzle.core.PatternDatabaseHeuristic;
+import io.intrepid.russell.tilepuzzle.core.Solution;
+import io.intrepid.russell.tilepuzzle.core.Solver;
+
+/**
+ * Speedup of {@link ParallelSolver} over the single-threaded {@link Solver} on one deep position at a
+ * time. Each invocation solves all the boards, so the score is comparable across thread counts; divide
+ * the {@code sequential} score by a {@code parallel} one for its speedup.
+ * <p/>
+ * The boards are 5x5, solved with the app's pattern databases, which the first run generates into
+ * {@code build/pattern-databases} (about a minute on one core). Uniformly random 5x5 boards are out of
+ * reach of an optimal search, so these come from long random walks whose estimate is in the same range
+ * as the deepest boards the app still solves optimally; the set takes several seconds on one core.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParallelSearchBenchmark {
+    private static final int WIDTH = 5;
+    private static final int HEIGHT = 5;
+    private static final int BOARDS = 6;
+    private static final int WALK = 400;
+    private static final int MIN_ESTIMATE = 38;
+    private static final int MAX_ESTIMATE = 42;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    private Board[] mBoards;
+    private PatternDatabase[] mDatabases;
+    private final ParallelSolver.HeuristicFactory mFactory = new ParallelSolver.HeuristicFactory() {
+        @Override
+        public Heuristic newHeuristic() {
+            return new PatternDatabaseHeuristic(mDatabases);
+        }
+    };
+
+    @Setup
+    public void setUp() throws IOException, InterruptedException {
+        mDatabases = PatternDatabase.load(new File("build/pattern-databases"), WIDTH, HEIGHT,
+                PatternDatabase.defaultPartition(WIDTH, HEIGHT), Runtime.getRuntime().availableProcessors());
+        Heuristic heuristic = mFactory.newHeuristic();
+        Random random = new Random(1);
+        mBoards = new Board[BOARDS];
+        for (int i = 0; i < BOARDS; i++) {
+            Board board;
+            int estimate;
+            do {
+                board = Board.create(WIDTH, HEIGHT);
+                for (int step = 0; step < WALK; step++) {
+                    board.moveBlank(random.nextInt(4));
+                }
+                estimate = heuristic.reset(board.toArray());
+            } while (estimate < MIN_ESTIMATE || estimate > MAX_ESTIMATE);
+            mBoards[i] = board;
+        }
+    }
+
+    @Benchmark
+    public int parallel() {
+        int moves = 0;
+        for (Board board : mBoards) {
+            Solution solution = new ParallelSolver(board, mFactory, threads).solve();
+            moves += solution.length();
+        }
+        return moves;
+    }
+
+    /**
+     * The baseline; it ignores {@link #threads}, so any of its four scores will do.
+     */
+    @Benchmark
+    public int sequential() {
+        int moves = 0;
+        for (Board board : mBoards) {
+            moves += new Solver(board, mFactory.newHeuristic()).solve().length();
+        }
+        return moves;
+    }
+}
@@ -0,0 +1,53 @@
+package io.intrepid.russell.tilepuzzle.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import io.intrepid.russell.tilepuzzle.core.Board;
+import io.intrepid.russell.tilepuzzle.core.BoardGenerator;
+import io.intrepid.russell.tilepuzzle.core.ReductionSolver;
+import io.intrepid.russell.tilepuzzle.core.Solution;
+
+/**
+ * The near-optimal solver on boards too big to solve optimally, over a fixed set of boards.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ReductionBenchmark {
+    private static final int BOARDS = 16;
+
+    @Param({"6", "10", "16"})
+    public int size;
+
+    private Board[] mBoards;
+    private int mNext;
+
+    @Setup
+    public void setUp() {
+        BoardGenerator generator = new BoardGenerator(2015);
+        mBoards = new Board[BOARDS];
+        for (int i = 0; i < BOARDS; i++) {
+            mBoards[i] = generator.generate(size, size);
+        }
+    }
+
+    @Benchmark
+    public Solution solve() {
+        return new ReductionSolver(mBoards[mNext++ % BOARDS]).solve();
+    }
+}
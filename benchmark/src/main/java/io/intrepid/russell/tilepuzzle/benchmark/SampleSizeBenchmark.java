@@ -0,0 +1,41 @@
+package io.intrepid.russell.tilepuzzle.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import io.intrepid.russell.tilepuzzle.core.SampleSize;
+
+/**
+ * Choosing a decode sample size for the bundled images at a range of board sizes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SampleSizeBenchmark {
+    // Dimensions of the bundled images: bruce, skiing, cartoon
+    private static final int[][] IMAGES = {{4000, 4000}, {3119, 1600}, {220, 165}};
+
+    @Param({"320", "720", "1440"})
+    public int target;
+
+    private int mNext;
+
+    @Benchmark
+    public int calculate() {
+        int[] image = IMAGES[mNext++ % IMAGES.length];
+        return SampleSize.calculate(image[0], image[1], target, target);
+    }
+}
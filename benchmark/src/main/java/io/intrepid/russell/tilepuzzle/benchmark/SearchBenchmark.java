@@ -0,0 +1,66 @@
+package io.intrepid.russell.tilepuzzle.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import io.intrepid.russell.tilepuzzle.core.Board;
+import io.intrepid.russell.tilepuzzle.core.BoardGenerator;
+import io.intrepid.russell.tilepuzzle.core.ManhattanHeuristic;
+import io.intrepid.russell.tilepuzzle.core.Solution;
+import io.intrepid.russell.tilepuzzle.core.Solver;
+
+/**
+ * The optimal solver with Manhattan distance and linear conflicts, over a fixed set of boards so every run
+ * searches the same trees. 4x4 boards are drawn from a middling estimate band to keep each solve short.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SearchBenchmark {
+    private static final int BOARDS = 16;
+
+    @Param({"3", "4"})
+    public int size;
+
+    private Board[] mBoards;
+    private int[] mTiles;
+    private ManhattanHeuristic mHeuristic;
+    private int mNext;
+
+    @Setup
+    public void setUp() {
+        BoardGenerator generator = new BoardGenerator(2015);
+        mBoards = new Board[BOARDS];
+        for (int i = 0; i < BOARDS; i++) {
+            mBoards[i] = size == 4
+                    ? generator.generate(size, size, 30, 36)
+                    : generator.generate(size, size);
+        }
+        mTiles = mBoards[0].toArray();
+        mHeuristic = new ManhattanHeuristic(size, size);
+    }
+
+    @Benchmark
+    public Solution solve() {
+        return new Solver(mBoards[mNext++ % BOARDS]).solve();
+    }
+
+    @Benchmark
+    public int estimate() {
+        return mHeuristic.reset(mTiles);
+    }
+}
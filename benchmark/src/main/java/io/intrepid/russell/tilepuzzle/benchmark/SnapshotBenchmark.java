@@ -0,0 +1,71 @@
+package io.intrepid.russell.tilepuzzle.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import io.intrepid.russell.tilepuzzle.core.Board;
+import io.intrepid.russell.tilepuzzle.core.BoardGenerator;
+import io.intrepid.russell.tilepuzzle.core.GameSnapshot;
+
+/**
+ * Saving and restoring a game in progress, with a move history of a realistic length.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SnapshotBenchmark {
+
+    @Param({"3", "4", "5", "8", "16"})
+    public int size;
+
+    @Param({"0", "500"})
+    public int historyLength;
+
+    private Board mBoard;
+    private GameSnapshot mSnapshot;
+    private ByteBuffer mBuffer;
+
+    @Setup
+    public void setUp() {
+        mBoard = new BoardGenerator(size).generate(size, size);
+        int[] history = new int[historyLength];
+        Random random = new Random(size);
+        for (int i = 0; i < history.length; i++) {
+            history[i] = random.nextInt(4);
+        }
+        mSnapshot = new GameSnapshot(mBoard, 1, history);
+        mBuffer = ByteBuffer.allocate(mSnapshot.encodedSize());
+    }
+
+    @Benchmark
+    public ByteBuffer save() {
+        mBuffer.clear();
+        new GameSnapshot(mBoard, 1, mSnapshot.getHistory()).encode(mBuffer);
+        return mBuffer;
+    }
+
+    @Benchmark
+    public Board restore() throws IOException {
+        mBuffer.clear();
+        mSnapshot.encode(mBuffer);
+        mBuffer.flip();
+        return GameSnapshot.decode(mBuffer).toBoard();
+    }
+}
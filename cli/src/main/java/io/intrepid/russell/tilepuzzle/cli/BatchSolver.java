@@ -0,0 +1,493 @@
+package io.intrepid.russell.tilepuzzle.cli;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+
+import io.intrepid.russell.tilepuzzle.core.Board;
+import io.intrepid.russell.tilepuzzle.core.BoardGenerator;
+import io.intrepid.russell.tilepuzzle.core.Heuristic;
+import io.intrepid.russell.tilepuzzle.core.ManhattanHeuristic;
+import io.intrepid.russell.tilepuzzle.core.PatternDatabase;
+import io.intrepid.russell.tilepuzzle.core.PatternDatabaseHeuristic;
+import io.intrepid.russell.tilepuzzle.core.Solution;
+import io.intrepid.russell.tilepuzzle.core.Solver;
+
+/**
+ * Solves many boards optimally, one per core at a time, and writes one result per line as they finish.
+ * <p/>
+ * Boards come from a file (or standard input) with one board per line: tile values in row-major order,
+ * separated by spaces or commas, optionally preceded by a {@code WxH} size. Or they are dealt by the
+ * same {@link BoardGenerator} the game uses. Only a few boards per thread are read ahead, so memory
+ * doesn't grow with the input. Results are in completion order and carry the input index.
+ * <p/>
+ * A summary of optimal lengths per board size goes to standard error at the end.
+ */
+public class BatchSolver {
+    private static final String USAGE = ""
+            + "usage: BatchSolver [options]\n"
+            + "  --input FILE       boards to solve, one per line; - for standard input (the default)\n"
+            + "  --generate N       deal N random boards instead of reading any\n"
+            + "  --size WxH         size of generated boards, and of input lines without one (default 4x4)\n"
+            + "  --seed S           seed for generated boards (default random)\n"
+            + "  --format csv|json  output format, json being one object per line (default csv)\n"
+            + "  --output FILE      where to write results (default standard output)\n"
+            + "  --threads N        solver threads (default one per core)\n"
+            + "  --databases DIR    use pattern databases from DIR, generating missing ones, instead of\n"
+            + "                     Manhattan distance and linear conflicts\n";
+
+    // Boards read ahead per thread, so a slow board doesn't leave other threads idle
+    private static final int READ_AHEAD_PER_THREAD = 4;
+
+    private final ForkJoinPool mPool;
+    private final Semaphore mInFlight;
+    private final int mMaxInFlight;
+    private final File mDatabaseDir;
+    private final Map<String, PatternDatabase[]> mDatabases = new HashMap<String, PatternDatabase[]>();
+    private final ResultWriter mWriter;
+    private final Map<String, Summary> mSummaries = new TreeMap<String, Summary>();
+    private int mErrors;
+
+    BatchSolver(int threads, File databaseDir, ResultWriter writer) {
+        mPool = new ForkJoinPool(threads);
+        mMaxInFlight = threads * READ_AHEAD_PER_THREAD;
+        mInFlight = new Semaphore(mMaxInFlight);
+        mDatabaseDir = databaseDir;
+        mWriter = writer;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.print(USAGE);
+            System.exit(2);
+            return;
+        }
+        if (options.mHelp) {
+            System.out.print(USAGE);
+            return;
+        }
+
+        BoardSource source;
+        if (options.mGenerate >= 0) {
+            source = new GeneratedBoards(options.mGenerate, options.mWidth, options.mHeight, options.mSeed);
+        } else {
+            InputStream in = "-".equals(options.mInput) ? System.in : new FileInputStream(options.mInput);
+            source = new BoardFile(in, options.mWidth, options.mHeight);
+        }
+        OutputStream out = options.mOutput == null ? System.out : new FileOutputStream(options.mOutput);
+        PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(out, "UTF-8")));
+        ResultWriter results = "json".equals(options.mFormat) ? new JsonWriter(writer) : new CsvWriter(writer);
+
+        BatchSolver solver = new BatchSolver(options.mThreads, options.mDatabaseDir, results);
+        long start = System.nanoTime();
+        try {
+            solver.solveAll(source);
+        } finally {
+            source.close();
+            writer.close();
+        }
+        solver.printSummary(System.nanoTime() - start, options.mThreads);
+        if (solver.mErrors > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Solves every board from {@code source}, returning once all results are written.
+     */
+    void solveAll(BoardSource source) throws IOException, InterruptedException {
+        mWriter.writeHeader();
+        int index = 0;
+        try {
+            Board board;
+            while (true) {
+                try {
+                    board = source.next();
+                } catch (IllegalArgumentException e) {
+                    error(index++, e.getMessage());
+                    continue;
+                }
+                if (board == null) {
+                    break;
+                }
+                Heuristic heuristic;
+                try {
+                    heuristic = heuristic(board);
+                } catch (IOException e) {
+                    throw new IOException("Couldn't load pattern databases for " + size(board), e);
+                }
+                mInFlight.acquire();
+                mPool.execute(new SolveTask(index++, board, heuristic));
+            }
+        } finally {
+            mInFlight.acquire(mMaxInFlight); // Every task gives its permit back when done
+            mInFlight.release(mMaxInFlight);
+            mPool.shutdown();
+        }
+    }
+
+    /**
+     * @return a fresh heuristic for {@code board}; databases are shared, but each heuristic isn't
+     */
+    private Heuristic heuristic(Board board) throws IOException, InterruptedException {
+        int width = board.getWidth();
+        int height = board.getHeight();
+        if (mDatabaseDir == null) {
+            return new ManhattanHeuristic(width, height);
+        }
+        String size = size(board);
+        PatternDatabase[] databases = mDatabases.get(size);
+        if (databases == null) {
+            System.err.println("Loading pattern databases for " + size);
+            databases = PatternDatabase.load(mDatabaseDir, width, height,
+                    PatternDatabase.defaultPartition(width, height), mPool.getParallelism());
+            mDatabases.put(size, databases);
+        }
+        return new PatternDatabaseHeuristic(databases);
+    }
+
+    @SuppressWarnings("serial") // Tasks are never serialized
+    private class SolveTask extends RecursiveAction {
+        private final int mIndex;
+        private final Board mBoard;
+        private final Heuristic mHeuristic;
+
+        SolveTask(int index, Board board, Heuristic heuristic) {
+            mIndex = index;
+            mBoard = board;
+            mHeuristic = heuristic;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                Solution solution = new Solver(mBoard, mHeuristic).solve();
+                synchronized (BatchSolver.this) {
+                    mWriter.write(mIndex, mBoard, solution);
+                    summary(mBoard).add(solution);
+                }
+            } catch (RuntimeException e) {
+                error(mIndex, e.getMessage());
+            } finally {
+                mInFlight.release();
+            }
+        }
+    }
+
+    private synchronized void error(int index, String message) {
+        mErrors++;
+        System.err.println("Board " + index + ": " + message);
+    }
+
+    private Summary summary(Board board) {
+        String size = size(board);
+        Summary summary = mSummaries.get(size);
+        if (summary == null) {
+            summary = new Summary();
+            mSummaries.put(size, summary);
+        }
+        return summary;
+    }
+
+    private synchronized void printSummary(long elapsedNanos, int threads) {
+        long boards = 0;
+        long nodes = 0;
+        for (Map.Entry<String, Summary> entry : mSummaries.entrySet()) {
+            Summary summary = entry.getValue();
+            boards += summary.mCount;
+            nodes += summary.mNodes;
+            System.err.println(entry.getKey() + ": " + summary);
+        }
+        double seconds = elapsedNanos / 1e9;
+        System.err.println(String.format("%d boards, %d errors, %.1f s on %d threads: %.1f boards/s, %.0f nodes/s",
+                boards, mErrors, seconds, threads, boards / seconds, nodes / seconds));
+    }
+
+    private static String size(Board board) {
+        return board.getWidth() + "x" + board.getHeight();
+    }
+
+    /**
+     * Optimal lengths seen for one board size
+     */
+    private static class Summary {
+        final Map<Integer, Integer> mLengths = new TreeMap<Integer, Integer>();
+        long mCount;
+        long mTotalLength;
+        long mNodes;
+        long mSolveNanos;
+
+        void add(Solution solution) {
+            Integer count = mLengths.get(solution.length());
+            mLengths.put(solution.length(), count == null ? 1 : count + 1);
+            mCount++;
+            mTotalLength += solution.length();
+            mNodes += solution.getNodesExpanded();
+            mSolveNanos += solution.getElapsedNanos();
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            builder.append(mCount).append(" boards, mean length ")
+                    .append(String.format("%.2f", (double) mTotalLength / mCount))
+                    .append(", mean ").append(mNodes / mCount).append(" nodes and ")
+                    .append(String.format("%.1f", mSolveNanos / 1e6 / mCount)).append(" ms; lengths");
+            for (Map.Entry<Integer, Integer> entry : mLengths.entrySet()) {
+                builder.append(' ').append(entry.getKey()).append(':').append(entry.getValue());
+            }
+            return builder.toString();
+        }
+    }
+
+    interface BoardSource {
+        /**
+         * @return the next board, or null when there are no more
+         * @throws IllegalArgumentException if the next board is malformed; the one after it can still
+         *                                  be read
+         */
+        Board next() throws IOException;
+
+        void close() throws IOException;
+    }
+
+    static class GeneratedBoards implements BoardSource {
+        private final BoardGenerator mGenerator;
+        private final int mWidth;
+        private final int mHeight;
+        private int mRemaining;
+
+        GeneratedBoards(int count, int width, int height, Long seed) {
+            mGenerator = seed != null ? new BoardGenerator(seed) : new BoardGenerator();
+            mRemaining = count;
+            mWidth = width;
+            mHeight = height;
+        }
+
+        @Override
+        public Board next() {
+            if (mRemaining == 0) {
+                return null;
+            }
+            mRemaining--;
+            return mGenerator.generate(mWidth, mHeight);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    static class BoardFile implements BoardSource {
+        private final BufferedReader mReader;
+        private final int mWidth;
+        private final int mHeight;
+
+        BoardFile(InputStream in, int width, int height) throws IOException {
+            mReader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+            mWidth = width;
+            mHeight = height;
+        }
+
+        @Override
+        public Board next() throws IOException {
+            String line;
+            do {
+                line = mReader.readLine();
+                if (line == null) {
+                    return null;
+                }
+                line = line.trim();
+            } while (line.isEmpty() || line.startsWith("#"));
+            return parse(line, mWidth, mHeight);
+        }
+
+        /**
+         * @param line {@code [WxH] v0 v1 ...}, with spaces or commas between values
+         */
+        static Board parse(String line, int width, int height) {
+            String[] tokens = line.split("[\\s,]+");
+            int first = 0;
+            if (tokens[0].indexOf('x') > 0) {
+                int[] size = parseSize(tokens[0]);
+                width = size[0];
+                height = size[1];
+                first = 1;
+            }
+            if (tokens.length - first != width * height) {
+                throw new IllegalArgumentException("Expected " + width * height + " values for " + width + "x"
+                        + height + " but got " + (tokens.length - first) + ": " + line);
+            }
+            int[] values = new int[width * height];
+            for (int i = 0; i < values.length; i++) {
+                try {
+                    values[i] = Integer.parseInt(tokens[first + i]);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Not a tile value: " + tokens[first + i]);
+                }
+            }
+            return Board.create(width, height, values);
+        }
+
+        @Override
+        public void close() throws IOException {
+            mReader.close();
+        }
+    }
+
+    static int[] parseSize(String size) {
+        String[] parts = size.split("x");
+        try {
+            if (parts.length == 2) {
+                return new int[]{Integer.parseInt(parts[0]), Integer.parseInt(parts[1])};
+            }
+        } catch (NumberFormatException e) {
+            // Fall through
+        }
+        throw new IllegalArgumentException("Size should look like 4x4: " + size);
+    }
+
+    abstract static class ResultWriter {
+        final PrintWriter mOut;
+
+        ResultWriter(PrintWriter out) {
+            mOut = out;
+        }
+
+        void writeHeader() {
+        }
+
+        /**
+         * Writes and flushes one result, so output streams as boards finish.
+         */
+        abstract void write(int index, Board board, Solution solution);
+
+        static String millis(Solution solution) {
+            return String.format("%.3f", solution.getElapsedNanos() / 1e6);
+        }
+
+        static String tiles(Board board, char separator) {
+            StringBuilder builder = new StringBuilder();
+            for (int position = 0; position < board.getTileCount(); position++) {
+                if (position > 0) {
+                    builder.append(separator);
+                }
+                builder.append(board.get(position));
+            }
+            return builder.toString();
+        }
+    }
+
+    static class CsvWriter extends ResultWriter {
+        CsvWriter(PrintWriter out) {
+            super(out);
+        }
+
+        @Override
+        void writeHeader() {
+            mOut.println("index,width,height,tiles,length,nodes,millis,moves");
+            mOut.flush();
+        }
+
+        @Override
+        void write(int index, Board board, Solution solution) {
+            mOut.println(index + "," + board.getWidth() + "," + board.getHeight() + "," + tiles(board, ' ') + ","
+                    + solution.length() + "," + solution.getNodesExpanded() + "," + millis(solution) + ","
+                    + solution);
+            mOut.flush();
+        }
+    }
+
+    static class JsonWriter extends ResultWriter {
+        JsonWriter(PrintWriter out) {
+            super(out);
+        }
+
+        @Override
+        void write(int index, Board board, Solution solution) {
+            mOut.println("{\"index\":" + index + ",\"width\":" + board.getWidth() + ",\"height\":"
+                    + board.getHeight() + ",\"tiles\":[" + tiles(board, ',') + "],\"length\":" + solution.length()
+                    + ",\"nodes\":" + solution.getNodesExpanded() + ",\"millis\":" + millis(solution)
+                    + ",\"moves\":\"" + solution + "\"}");
+            mOut.flush();
+        }
+    }
+
+    static class Options {
+        String mInput = "-";
+        int mGenerate = -1;
+        int mWidth = 4;
+        int mHeight = 4;
+        Long mSeed;
+        String mFormat = "csv";
+        String mOutput;
+        int mThreads = Runtime.getRuntime().availableProcessors();
+        File mDatabaseDir;
+        boolean mHelp;
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if ("--help".equals(arg) || "-h".equals(arg)) {
+                    options.mHelp = true;
+                    continue;
+                }
+                if (i + 1 == args.length) {
+                    throw new IllegalArgumentException("Missing value for " + arg);
+                }
+                String value = args[++i];
+                try {
+                    if ("--input".equals(arg)) {
+                        options.mInput = value;
+                    } else if ("--generate".equals(arg)) {
+                        options.mGenerate = Integer.parseInt(value);
+                    } else if ("--size".equals(arg)) {
+                        int[] size = parseSize(value);
+                        options.mWidth = size[0];
+                        options.mHeight = size[1];
+                    } else if ("--seed".equals(arg)) {
+                        options.mSeed = Long.parseLong(value);
+                    } else if ("--format".equals(arg)) {
+                        if (!"csv".equals(value) && !"json".equals(value)) {
+                            throw new IllegalArgumentException("Format should be csv or json: " + value);
+                        }
+                        options.mFormat = value;
+                    } else if ("--output".equals(arg)) {
+                        options.mOutput = value;
+                    } else if ("--threads".equals(arg)) {
+                        options.mThreads = Integer.parseInt(value);
+                    } else if ("--databases".equals(arg)) {
+                        options.mDatabaseDir = new File(value);
+                    } else {
+                        throw new IllegalArgumentException("Unknown option " + arg);
+                    }
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Not a number for " + arg + ": " + value);
+                }
+            }
+            if (options.mThreads < 1) {
+                throw new IllegalArgumentException("Need at least one thread");
+            }
+            return options;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package io.intrepid.russell.tilepuzzle.cli;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import io.intrepid.russell.tilepuzzle.core.DistanceTable;
+
+/**
+ * Regenerates the exact distance tables the app ships as raw resources. Only needed when the table
+ * format changes; the app's unit tests check the shipped files against a fresh search.
+ */
+public class DistanceTableWriter {
+    private static final int[][] SIZES = {{2, 2}, {3, 3}};
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("usage: DistanceTableWriter DIR");
+            System.exit(2);
+        }
+        File dir = new File(args[0]);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Can't create " + dir);
+        }
+        for (int[] size : SIZES) {
+            long start = System.nanoTime();
+            DistanceTable table = DistanceTable.generate(size[0], size[1]);
+            File file = new File(dir, "distances_" + size[0] + "x" + size[1] + ".bin");
+            OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+            try {
+                table.write(out);
+            } finally {
+                out.close();
+            }
+            System.err.printf("%s: %d states in %d ms%n", file, table.getStateCount(),
+                    (System.nanoTime() - start) / 1000000);
+        }
+    }
+}